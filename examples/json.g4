@@ -0,0 +1,22 @@
+json: value;
+value: obj | arr | STRING | NUMBER | TRUE | FALSE | NULL;
+obj: LB pairs RB | LB RB;
+pairs: pair | pairs COMMA pair;
+pair: STRING COLON value;
+arr: LS values RS | LS RS;
+values: value | values COMMA value;
+TRUE: 'true';
+FALSE: 'false';
+NULL: 'null';
+STRING: '"' (ESC | ~["\\\u0000-\u001f])* '"';
+fragment ESC: '\\' (["\\/bfnrt] | 'u' HEX HEX HEX HEX);
+fragment HEX: [0-9a-fA-F];
+NUMBER: '-'? INT ('.' [0-9]+)? ([eE] [+\-]? [0-9]+)?;
+fragment INT: '0' | [1-9] [0-9]*;
+LB: '{';
+RB: '}';
+LS: '[';
+RS: ']';
+COMMA: ',';
+COLON: ':';
+WS: [ \t\n\r]+ -> skip;
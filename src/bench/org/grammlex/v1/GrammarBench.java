@@ -0,0 +1,147 @@
+package org.grammlex.v1;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/* GrammarBench measures the phases of building tables for a small, a
+   medium and a large grammar with JMH. Run it with "make bench", which
+   also turns on the GC profiler, so every result comes with its
+   allocation rate in bytes per operation.
+
+   The small grammar is the classic expression grammar, the medium one
+   JSON and the large one a statement language with many statement kinds
+   and a long chain of binary operator precedence levels.
+
+   The benchmarks are in package org.grammlex.v1 so that they can call
+   the protected phases of Grammar and LR1Builder one at a time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GrammarBench {
+    static final String SMALL_GRAMMAR =
+            "e: e PLUS t | t;\n" +
+            "t: t STAR f | f;\n" +
+            "f: LP e RP | ID;\n";
+
+    static final String MEDIUM_GRAMMAR =
+            "json: value;\n" +
+            "value: obj | arr | STRING | NUMBER | TRUE | FALSE | NULL;\n" +
+            "obj: LB pairs RB | LB RB;\n" +
+            "pairs: pair | pairs COMMA pair;\n" +
+            "pair: STRING COLON value;\n" +
+            "arr: LS values RS | LS RS;\n" +
+            "values: value | values COMMA value;\n";
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private String grammarText;
+    private Grammar grammar;
+    private LR1Item startItem;
+    private LR1Builder builder;
+
+    /* A statement language with the given number of statement keywords
+       and binary operator precedence levels.
+     */
+    static String createLargeGrammar(int statements, int levels) {
+        StringBuilder text = new StringBuilder();
+        text.append("program: stmts;\n");
+        text.append("stmts: stmts stmt | stmt;\n");
+        text.append("stmt: IF LP e0 RP stmt | WHILE LP e0 RP stmt | LB stmts RB | e0 SEMI");
+        for (int i = 0; i < statements; i++) {
+            text.append(" | KW").append(i).append(" e0 SEMI");
+        }
+        text.append(";\n");
+        for (int i = 0; i < levels; i++) {
+            text.append('e').append(i).append(": e").append(i).append(" OP").append(i)
+                    .append(" e").append(i + 1).append(" | e").append(i + 1).append(";\n");
+        }
+        text.append('e').append(levels).append(": ID | NUM | LP e0 RP | e").append(levels)
+                .append(" LS e0 RS | e").append(levels).append(" LP e0 RP;\n");
+        return text.toString();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (size) {
+            case "small":
+                grammarText = SMALL_GRAMMAR;
+                break;
+            case "medium":
+                grammarText = MEDIUM_GRAMMAR;
+                break;
+            default:
+                grammarText = createLargeGrammar(40, 20);
+                break;
+        }
+        grammar = new Grammar(grammarText);
+        BitSet end = new BitSet();
+        end.set(grammar.getSymbols().getEndSymbol());
+        startItem = new LR1Item(grammar.getRules().get(0), 0, end);
+        builder = new LR1Builder(grammar, LR1Builder.MODE_LR1);
+        boolean created = builder.createStates();
+        if (!created) {
+            throw new IllegalStateException("The " + size + " grammar is not LR(1)");
+        }
+    }
+
+    @Benchmark
+    public Grammar grammarConstruction() {
+        return new Grammar(grammarText);
+    }
+
+    @Benchmark
+    public Grammar computeFirstSets() {
+        grammar.computeFirstSets();
+        return grammar;
+    }
+
+    @Benchmark
+    public Grammar computeFollowSets() {
+        grammar.computeFollowSets();
+        return grammar;
+    }
+
+    /* The closure of the start state, which holds the most items. */
+    @Benchmark
+    public LR1State closure() {
+        return new LR1State(grammar, Collections.singleton(startItem));
+    }
+
+    @Benchmark
+    public LR1Builder createStatesForCLR1() {
+        LR1Builder newBuilder = new LR1Builder(grammar, LR1Builder.MODE_LR1);
+        newBuilder.createStatesForCLR1(BuildListener.NONE);
+        return newBuilder;
+    }
+
+    /* The same build with its text trace, to show what the trace costs. */
+    @Benchmark
+    public StringBuilder createStatesForCLR1Traced() {
+        LR1Builder newBuilder = new LR1Builder(grammar, LR1Builder.MODE_LR1);
+        StringBuilder out = new StringBuilder();
+        newBuilder.createStatesForCLR1(new TextBuildListener(grammar, out));
+        return out;
+    }
+
+    @Benchmark
+    public StringBuilder outputTables() {
+        StringBuilder out = new StringBuilder();
+        builder.outputStates(out);
+        builder.outputActionTable(out);
+        builder.outputGotoTable(out);
+        return out;
+    }
+
+    @Benchmark
+    public ParseTables createParseTables() {
+        return builder.createParseTables();
+    }
+}
@@ -0,0 +1,106 @@
+package org.grammlex.v1;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+/* ScalingSweep builds the states of generated grammars of growing size
+   and prints one CSV row per size, so that the cost of the construction
+   can be plotted against the size of the grammar. Run it with
+   "make sweep SWEEP_ARGS=..." and these options:
+
+   --rules=10,20,40   The number of rules of each grammar, comma separated.
+   --fan-out=N        The most alternatives of a rule.
+   --depth=N          The number of levels of variables.
+   --modifiers=R      The rate of terms with *, + or ?.
+   --conflicts=R      The rate of ambiguous alternatives.
+   --seed=N           The seed of the first grammar; each size adds one.
+   --mode=MODE        The construction mode of LR1Builder.
+
+   The time is that of createStates and the peak heap is the most the
+   heap pools held while it ran, after a GC before it. Both are of a
+   single run, so they are rough next to the JMH benchmarks.
+ */
+public class ScalingSweep {
+    public static final String CSV_HEADER = "rules,fanOut,depth,modifierDensity,conflictRate,seed,mode,"
+            + "grammarRules,symbols,states,items,lr1,millis,peakHeapBytes";
+
+    public static void main(String[] args) {
+        List<Integer> sizes = new ArrayList<>();
+        GrammarGenerator settings = new GrammarGenerator(0);
+        long seed = 1;
+        String mode = LR1Builder.MODE_LR1;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--rules=")) {
+                for (String size : value.split(",")) {
+                    sizes.add(Integer.parseInt(size));
+                }
+            } else if (arg.startsWith("--fan-out=")) {
+                settings.setFanOut(Integer.parseInt(value));
+            } else if (arg.startsWith("--depth=")) {
+                settings.setDepth(Integer.parseInt(value));
+            } else if (arg.startsWith("--modifiers=")) {
+                settings.setModifierDensity(Double.parseDouble(value));
+            } else if (arg.startsWith("--conflicts=")) {
+                settings.setConflictRate(Double.parseDouble(value));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(value);
+            } else if (arg.startsWith("--mode=")) {
+                mode = value;
+            } else {
+                throw new IllegalArgumentException("ERROR: Unknown option: " + arg);
+            }
+        }
+        if (sizes.isEmpty()) {
+            for (int size = 10; size <= 320; size *= 2) {
+                sizes.add(size);
+            }
+        }
+        System.out.println(CSV_HEADER);
+        for (int size : sizes) {
+            GrammarGenerator generator = new GrammarGenerator(seed);
+            generator.setRules(size);
+            generator.setFanOut(settings.getFanOut());
+            generator.setDepth(settings.getDepth());
+            generator.setModifierDensity(settings.getModifierDensity());
+            generator.setConflictRate(settings.getConflictRate());
+            System.out.println(run(generator, mode));
+            seed++;
+        }
+    }
+
+    /* Build the states of one generated grammar and return its CSV row. */
+    public static String run(GrammarGenerator generator, String mode) {
+        Grammar grammar = new Grammar(generator.generate(new StringBuilder()).toString());
+        LR1Builder builder = new LR1Builder(grammar, mode);
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pools.add(pool);
+            }
+        }
+        System.gc();
+        for (MemoryPoolMXBean pool : pools) {
+            pool.resetPeakUsage();
+        }
+        long start = System.nanoTime();
+        boolean lr1 = builder.createStates();
+        long millis = (System.nanoTime() - start) / 1000000;
+        long peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+        int items = 0;
+        for (LR1State state : builder.getStates()) {
+            items += state.getItems().size();
+        }
+        return generator.getRules() + "," + generator.getFanOut() + "," + generator.getDepth() + ","
+                + generator.getModifierDensity() + "," + generator.getConflictRate() + ","
+                + generator.getSeed() + "," + mode + "," + grammar.getRules().size() + ","
+                + grammar.getSymbols().size() + "," + builder.getStates().size() + "," + items + ","
+                + lr1 + "," + millis + "," + peakHeapBytes;
+    }
+}
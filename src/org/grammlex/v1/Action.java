@@ -4,6 +4,8 @@ class Action {
     public static final int SHIFT = 0;
     public static final int REDUCE = 1;
     public static final int ACCEPT = 2;
+    // A cell of GLRTables with more than one action; the operand numbers them
+    public static final int CONFLICT = 3;
     private final int type;
     private final int operand;
 
@@ -12,6 +14,14 @@ class Action {
         this.operand = operand;
     }
 
+    public int getType() {
+        return type;
+    }
+
+    public int getOperand() {
+        return operand;
+    }
+
     @Override
     public String toString() {
         switch (type) {
@@ -21,6 +31,8 @@ class Action {
                 return  "SHIFT(" +  operand + ")";
             case ACCEPT:
                 return "ACCEPT";
+            case CONFLICT:
+                return "CONFLICT(" + operand + ")";
             default:
                 return "";
         }
@@ -34,6 +46,8 @@ class Action {
                 return  "SHIFT";
             case ACCEPT:
                 return "ACCEPT";
+            case CONFLICT:
+                return "CONFLICT";
             default:
                 return "";
         }
@@ -0,0 +1,205 @@
+package org.grammlex.v1;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/* A BuildCache keeps what Tool produces for a grammar on disk, so that a
+   later run with the same grammar and options can skip building it.
+
+   Entries are content addressed: the key is the SHA-256 of the tool
+   version, the options that change the output and the grammar text. Each
+   entry is one file named after its key, holding named texts and a CRC-32
+   of them. An entry that cannot be read or fails its checksum is a miss.
+   Entries are written to a temporary file and moved into place, so runs
+   that share the cache never see half an entry.
+
+   The cache is bounded by the total size of its entries. Reading an entry
+   updates its modification time, and writing one evicts the entries that
+   were least recently used until the cache fits again.
+ */
+public class BuildCache {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final String ENTRY_SUFFIX = ".entry";
+    public static final String DIR_PROPERTY = "grammlex.cache.dir";
+    private static final int ENTRY_MAGIC = 0x474C5843; // "GLXC"
+
+    private final Path dir;
+    private final long maxBytes;
+
+    public BuildCache(Path dir, long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("ERROR: Cache size must not be negative: " + maxBytes);
+        }
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /* The default cache directory, the grammlex.cache.dir system property
+       or ~/.cache/grammlex.
+     */
+    public static Path getDefaultDir() {
+        String dirProperty = System.getProperty(DIR_PROPERTY);
+        if (dirProperty != null) {
+            return Paths.get(dirProperty);
+        }
+        return Paths.get(System.getProperty("user.home"), ".cache", "grammlex");
+    }
+
+    /* Return the key of the given parts, which are hashed in order. */
+    public static String key(CharSequence... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (CharSequence part : parts) {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(part));
+                // The length keeps ("ab", "c") and ("a", "bc") apart
+                digest.update(Integer.toString(bytes.remaining()).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ':');
+                digest.update(bytes);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* Return the texts of an entry, or null if it is not in the cache. */
+    public Map<String, String> get(String key) {
+        Path path = dir.resolve(key + ENTRY_SUFFIX);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            return null;
+        }
+        return decode(bytes);
+    }
+
+    /* Store the texts of an entry, replacing any earlier entry. */
+    public void put(String key, Map<String, ? extends CharSequence> texts) throws IOException {
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            Files.write(temp, encode(texts));
+            Files.move(temp, dir.resolve(key + ENTRY_SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        evict();
+    }
+
+    /* Delete the least recently used entries until the cache fits. */
+    public void evict() throws IOException {
+        List<Path> entries = getEntries();
+        entries.sort(Comparator.comparing(BuildCache::lastModified));
+        long size = 0;
+        for (Path entry : entries) {
+            size += Files.size(entry);
+        }
+        for (Path entry : entries) {
+            if (size <= maxBytes) {
+                break;
+            }
+            size -= Files.size(entry);
+            Files.deleteIfExists(entry);
+        }
+    }
+
+    /* The entry files, in no particular order. */
+    public List<Path> getEntries() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> entries = new ArrayList<>();
+            files.filter(path -> path.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .forEach(entries::add);
+            return entries;
+        }
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    protected static byte[] encode(Map<String, ? extends CharSequence> texts) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            out.writeInt(texts.size());
+            for (Map.Entry<String, ? extends CharSequence> text : new TreeMap<>(texts).entrySet()) {
+                out.writeUTF(text.getKey());
+                byte[] bytes = text.getValue().toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            // A ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        byte[] bodyBytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(entry)) {
+            out.writeInt(ENTRY_MAGIC);
+            out.writeInt((int) crc.getValue());
+            out.write(bodyBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return entry.toByteArray();
+    }
+
+    /* Return the texts of an encoded entry, or null if it is damaged. */
+    protected static Map<String, String> decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != ENTRY_MAGIC) {
+                return null;
+            }
+            int checksum = in.readInt();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 8, bytes.length - 8);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            Map<String, String> texts = new HashMap<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                texts.put(name, new String(text, StandardCharsets.UTF_8));
+            }
+            return texts;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
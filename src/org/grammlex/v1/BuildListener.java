@@ -0,0 +1,63 @@
+package org.grammlex.v1;
+
+import java.util.List;
+import java.util.Set;
+
+/* A BuildListener is told what LR1Builder does while it creates the states
+   of an automaton: the start state, each state it processes and each
+   transition it adds. This class ignores every event, and NONE is the
+   listener of a build without a trace. A build only calls the listener
+   with objects it has made anyway, so a build for NONE formats nothing
+   and pays nothing for the events.
+
+   TextBuildListener writes the events as the trace of createStates, and
+   RecordingBuildListener keeps them for tools that look at the build.
+   A parallel build calls its listener from one thread, in the order of a
+   sequential build.
+ */
+public class BuildListener {
+    public static final BuildListener NONE = new BuildListener();
+
+    /* Kinds of transition: to a state that existed, to a new state, and,
+       for Pager's construction, to a state the kernel was merged into.
+     */
+    public static final int TO_EXISTING = 0;
+    public static final int TO_NEW = 1;
+    public static final int TO_MERGED = 2;
+
+    /* The start state was made from the item. */
+    public void startState(LR1Item item, LR1State state) {
+        // Nothing to do
+    }
+
+    /* The builder starts adding the transitions of a state. A state of
+       Pager's construction is processed again when a merge gave it new
+       lookaheads.
+     */
+    public void processState(int stateNum, int transitions) {
+        // Nothing to do
+    }
+
+    /* The builder added the transition of a state on symbol, whose kernel
+       is that of a state of the kind. The target is the state after
+       closure, or null for a transition of Pager's construction to an
+       existing state, which needs no closure. A new state is split from
+       splitFrom, a state with the same LR(0) core, or splitFrom is -1.
+     */
+    public void transition(int stateNum, int symbol, Set<LR1Item> kernel, LR1State target,
+                           int targetNum, int kind, int splitFrom) {
+        // Nothing to do
+    }
+
+    /* The builder added all the transitions of a state. */
+    public void stateProcessed(int stateNum) {
+        // Nothing to do
+    }
+
+    /* Pager's construction ended with the states, after merging kernels
+       into others, splitting states and removing unreachable ones.
+     */
+    public void minimalStates(List<LR1State> states, int merged, int split, int removed) {
+        // Nothing to do
+    }
+}
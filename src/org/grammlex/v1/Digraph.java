@@ -0,0 +1,84 @@
+package org.grammlex.v1;
+
+import java.util.*;
+
+/* Digraph computes, for every node x of a relation, the union of the
+   initial sets of all the nodes reachable from x. It is the digraph
+   algorithm of DeRemer and Pennello, "Efficient Computation of LALR(1)
+   Look-Ahead Sets" (TOPLAS, 1982), which is Tarjan's strongly connected
+   components algorithm: the components are finished in topological order,
+   so every node is visited once and every member of a cycle gets the same
+   set.
+
+   The nodes are numbered 0 to initial.size() - 1 and relation.get(x) lists
+   the nodes that x is related to. Grammar uses it for the nullable-prefix
+   relation of FIRST and the nullable-suffix relation of FOLLOW, and
+   LALR1Lookaheads for the reads and includes relations.
+ */
+public class Digraph {
+
+    private Digraph() {
+    }
+
+    /* Return the set of every node. The initial sets are not modified, but
+       the members of a cycle share one set.
+     */
+    public static List<BitSet> compute(List<BitSet> initial, List<List<Integer>> relation) {
+        List<BitSet> sets = new ArrayList<>();
+        for (BitSet set : initial) {
+            sets.add((BitSet) set.clone());
+        }
+        int[] depth = new int[sets.size()];
+        Deque<Integer> stack = new ArrayDeque<>();
+        for (int x = 0; x < sets.size(); x++) {
+            if (depth[x] == 0) {
+                traverse(x, sets, relation, depth, stack);
+            }
+        }
+        return sets;
+    }
+
+    /* Written with an explicit stack so that long chains cannot overflow
+       the call stack.
+     */
+    private static void traverse(int start, List<BitSet> sets, List<List<Integer>> relation,
+                                 int[] depth, Deque<Integer> stack) {
+        // Each frame is {node, depth when entered, next edge to follow}
+        Deque<int[]> frames = new ArrayDeque<>();
+        stack.push(start);
+        depth[start] = stack.size();
+        frames.push(new int[]{start, stack.size(), 0});
+        while (!frames.isEmpty()) {
+            int[] frame = frames.peek();
+            int x = frame[0];
+            List<Integer> edges = relation.get(x);
+            if (frame[2] < edges.size()) {
+                int y = edges.get(frame[2]++);
+                if (depth[y] == 0) {
+                    stack.push(y);
+                    depth[y] = stack.size();
+                    frames.push(new int[]{y, stack.size(), 0});
+                } else {
+                    depth[x] = Math.min(depth[x], depth[y]);
+                    sets.get(x).or(sets.get(y));
+                }
+                continue;
+            }
+            frames.pop();
+            if (depth[x] == frame[1]) {
+                // x is the root of a strongly connected component
+                int member;
+                do {
+                    member = stack.pop();
+                    depth[member] = Integer.MAX_VALUE;
+                    sets.set(member, sets.get(x));
+                } while (member != x);
+            }
+            if (!frames.isEmpty()) {
+                int parent = frames.peek()[0];
+                depth[parent] = Math.min(depth[parent], depth[x]);
+                sets.get(parent).or(sets.get(x));
+            }
+        }
+    }
+}
@@ -0,0 +1,772 @@
+package org.grammlex.v1;
+
+import java.util.Arrays;
+import java.util.function.IntSupplier;
+
+/* A GLRParser runs GLRTables against a sequence of tokens like an
+   LRParser, but follows every action of a conflict, so it parses any
+   context-free grammar, including ambiguous ones, and builds the parse
+   forest of all the parses of the input.
+
+   The stacks of the parses share their states in a graph-structured stack
+   (Tomita, "Efficient Parsing for Natural Language", 1986). A level of the
+   stack is the position after a token, and it has at most one node per
+   state. An edge goes from a node down to the node below it and is
+   labeled with the forest node of the symbol between them. Reductions are
+   done on all paths of the rule's length down from a node, and when a
+   reduction adds an edge to a node whose reductions were already done,
+   those reductions are done again through the new edge (Farshi's fix for
+   epsilon rules). The parse forest is shared and packed: a forest node is
+   a symbol over a span of tokens, made once, and each way of deriving it
+   is a packed node with a rule and the forest nodes of its symbols. The
+   cost is polynomial in the length of the input even when the number of
+   parses is exponential.
+
+   The stack and the forest are kept in int arrays, and what a level made
+   is found by hash only once there are two of it. On a deterministic
+   stretch of input, where the stack is one path and each cell has one
+   action, a reduction does the work of an LRParser plus one hash lookup
+   for its forest node, and nothing is allocated once the arrays have
+   grown. After a parse, reset() makes the same parser ready for the next
+   input, keeping its arrays.
+ */
+public class GLRParser {
+    public static final int NO_NODE = -1;
+    private static final int FOREST = 0;
+    private static final int EDGE = 1;
+    private static final int PACKED = 2;
+
+    private final GLRTables tables;
+    private int status;
+    private int level;
+    private int token;
+    private int errorLevel;
+    private int errorToken;
+    private int root;
+
+    // Stack nodes and their edges; the edges of a node are a linked list
+    private int[] nodeState = new int[64];
+    private int[] nodeLevel = new int[64];
+    private int[] nodeFirstEdge = new int[64];
+    private int[] nodeOrder = new int[64]; // the index in the frontier
+    private int nodeCount;
+    private int[] edgeSource = new int[64];
+    private int[] edgeTarget = new int[64];
+    private int[] edgeLabel = new int[64];
+    private int[] edgeNext = new int[64];
+    private int edgeCount;
+
+    // Forest nodes and their packed nodes, whose children are in one array
+    private int[] forestSymbol = new int[64];
+    private int[] forestStart = new int[64];
+    private int[] forestEnd = new int[64];
+    private int[] forestFirstPacked = new int[64];
+    private int forestCount;
+    private int[] packedForest = new int[64];
+    private int[] packedRule = new int[64];
+    private int[] packedChildren = new int[64];
+    private int[] packedNext = new int[64];
+    private int packedCount;
+    private int[] children = new int[64];
+    private int childCount;
+
+    // The nodes of the current level, and the node of each state on it
+    private int[] frontier = new int[16];
+    private int frontierSize;
+    private int processed;
+    private int[] shifting = new int[16];
+    private final int[] stateNodes;
+    private final int[] stateEpochs;
+    private int epoch;
+    // What the reductions made on the current level, found by hash: forest
+    // nodes by symbol and start, edges by their nodes and packed nodes by
+    // forest node, rule and children. An entry is an id times 3 plus its kind
+    private int[] slots = new int[64];
+    private int[] slotEpochs = new int[64];
+    private int slotCount;
+    // Reductions to do again through a new edge: node, rule and edge
+    private int[] tasks = new int[48];
+    private int taskCount;
+    private final int[] path;
+
+    public GLRParser(GLRTables tables) {
+        this.tables = tables;
+        stateNodes = new int[tables.getStateCount()];
+        stateEpochs = new int[tables.getStateCount()];
+        int maxLength = 0;
+        for (int rule = 0; rule < tables.getRuleCount(); rule++) {
+            maxLength = Math.max(maxLength, tables.getRuleLength(rule));
+        }
+        path = new int[maxLength];
+        reset();
+    }
+
+    /* Start over at the start state, dropping the stack and the forest. */
+    public void reset() {
+        nodeCount = 0;
+        edgeCount = 0;
+        forestCount = 0;
+        packedCount = 0;
+        childCount = 0;
+        taskCount = 0;
+        level = 0;
+        status = LRParser.NEED_MORE;
+        errorLevel = -1;
+        errorToken = -1;
+        root = NO_NODE;
+        epoch++;
+        slotCount = 0;
+        frontierSize = 0;
+        if (tables.getStateCount() == 0) {
+            status = LRParser.REJECTED;
+            return;
+        }
+        addNode(0);
+    }
+
+    /* Parse tokens until the input is accepted or rejected. Return whether
+       it was accepted.
+     */
+    public boolean parse(IntSupplier tokens) {
+        while (status == LRParser.NEED_MORE) {
+            feed(tokens.getAsInt());
+        }
+        return status == LRParser.ACCEPTED;
+    }
+
+    /* Take the next token, doing the reductions of every stack before the
+       shifts, and return the status. Once the input is accepted or
+       rejected, further tokens are ignored until reset.
+     */
+    public int feed(int token) {
+        if (status != LRParser.NEED_MORE) {
+            return status;
+        }
+        if (token < 0 || token >= tables.getSymbolCount()) {
+            return reject(token);
+        }
+        this.token = token;
+        reduceAll();
+        if (token == tables.getEndSymbol()) {
+            for (int i = 0; i < frontierSize; i++) {
+                if (hasAccept(nodeState[frontier[i]])) {
+                    accept(frontier[i]);
+                    return status;
+                }
+            }
+            return reject(token);
+        }
+        shiftAll();
+        if (frontierSize == 0) {
+            level--;
+            return reject(token);
+        }
+        return status;
+    }
+
+    protected void reduceAll() {
+        processed = 0;
+        taskCount = 0;
+        while (taskCount > 0 || processed < frontierSize) {
+            if (taskCount > 0) {
+                taskCount -= 3;
+                reducePaths(tasks[taskCount], tasks[taskCount + 1], tasks[taskCount + 2]);
+                continue;
+            }
+            int node = frontier[processed++];
+            int action = tables.getAction(nodeState[node], token);
+            if (GLRTables.isConflict(action)) {
+                for (int conflictAction : tables.getConflictActions(action)) {
+                    reduce(node, conflictAction);
+                }
+            } else {
+                reduce(node, action);
+            }
+        }
+    }
+
+    private void reduce(int node, int action) {
+        if (ParseTables.kindOf(action) == ParseTables.REDUCE) {
+            reducePaths(node, ParseTables.operandOf(action), NO_NODE);
+        }
+    }
+
+    /* Reduce a rule on every path of its length down from a node, or only
+       on the paths through an edge if one is given.
+     */
+    protected void reducePaths(int node, int rule, int edge) {
+        int length = tables.getRuleLength(rule);
+        if (edge != NO_NODE && length == 0) {
+            return;
+        }
+        walk(node, length, rule, edge == NO_NODE, edge);
+    }
+
+    private void walk(int node, int remaining, int rule, boolean throughEdge, int edge) {
+        if (!throughEdge && nodeLevel[node] < level) {
+            // The edge is on the current level, which the path has left
+            return;
+        }
+        if (remaining == 0) {
+            if (throughEdge) {
+                reduceTo(node, rule);
+            }
+            return;
+        }
+        for (int e = nodeFirstEdge[node]; e != NO_NODE; e = edgeNext[e]) {
+            path[remaining - 1] = edgeLabel[e];
+            walk(edgeTarget[e], remaining - 1, rule, throughEdge || e == edge, edge);
+        }
+    }
+
+    /* Reduce a rule whose symbols are in path down to a node: add its
+       derivation to the forest and the goto of the rule's variable on top
+       of the node.
+     */
+    protected void reduceTo(int base, int rule) {
+        int variable = tables.getRuleVar(rule);
+        int target = tables.getGoto(nodeState[base], variable);
+        if (target == -1) {
+            return;
+        }
+        int forest = getForestNode(variable, nodeLevel[base]);
+        addPacked(forest, rule, tables.getRuleLength(rule));
+        int node = stateEpochs[target] == epoch ? stateNodes[target] : addNode(target);
+        if (hasEdge(node, base)) {
+            return;
+        }
+        int edge = addEdge(node, base, forest);
+        if (edgeNext[edge] != NO_NODE) {
+            insertSlot(edge * 3 + EDGE);
+        }
+        if (nodeOrder[node] < processed) {
+            // Paths through the new edge can start at any node whose
+            // reductions were done
+            for (int i = 0; i < processed; i++) {
+                addTasks(frontier[i], edge);
+            }
+        }
+    }
+
+    /* Return whether a node of the current level has an edge to base. The
+       edges of a node are only hashed once it has two, so that a stretch
+       of input where the stack is one path does not hash them at all.
+     */
+    private boolean hasEdge(int node, int base) {
+        int first = nodeFirstEdge[node];
+        if (first == NO_NODE) {
+            return false;
+        }
+        if (edgeNext[first] == NO_NODE) {
+            if (edgeTarget[first] == base) {
+                return true;
+            }
+            insertSlot(first * 3 + EDGE);
+            return false;
+        }
+        int slot = findSlot(EDGE, node, base);
+        return slotEpochs[slot] == epoch;
+    }
+
+    private void addTasks(int node, int edge) {
+        int action = tables.getAction(nodeState[node], token);
+        if (GLRTables.isConflict(action)) {
+            for (int conflictAction : tables.getConflictActions(action)) {
+                addTask(node, conflictAction, edge);
+            }
+        } else {
+            addTask(node, action, edge);
+        }
+    }
+
+    private void addTask(int node, int action, int edge) {
+        if (ParseTables.kindOf(action) != ParseTables.REDUCE
+                || tables.getRuleLength(ParseTables.operandOf(action)) == 0) {
+            return;
+        }
+        if (taskCount + 3 > tasks.length) {
+            tasks = Arrays.copyOf(tasks, tasks.length * 2);
+        }
+        tasks[taskCount++] = node;
+        tasks[taskCount++] = ParseTables.operandOf(action);
+        tasks[taskCount++] = edge;
+    }
+
+    /* Shift the token from every node that can, onto the nodes of the
+       next level, which share one forest node for the token.
+     */
+    protected void shiftAll() {
+        if (shifting.length < frontierSize) {
+            shifting = new int[frontier.length];
+        }
+        int count = frontierSize;
+        System.arraycopy(frontier, 0, shifting, 0, count);
+        frontierSize = 0;
+        epoch++;
+        slotCount = 0;
+        level++;
+        int leaf = NO_NODE;
+        for (int i = 0; i < count; i++) {
+            int node = shifting[i];
+            int action = tables.getAction(nodeState[node], token);
+            if (GLRTables.isConflict(action)) {
+                for (int conflictAction : tables.getConflictActions(action)) {
+                    leaf = shift(node, conflictAction, leaf);
+                }
+            } else {
+                leaf = shift(node, action, leaf);
+            }
+        }
+    }
+
+    private int shift(int node, int action, int leaf) {
+        if (ParseTables.kindOf(action) != ParseTables.SHIFT) {
+            return leaf;
+        }
+        if (leaf == NO_NODE) {
+            leaf = addForestNode(token, level - 1, level);
+        }
+        int target = ParseTables.operandOf(action);
+        int next = stateEpochs[target] == epoch ? stateNodes[target] : NO_NODE;
+        if (next == NO_NODE) {
+            next = addNode(target);
+        }
+        addEdge(next, node, leaf);
+        return leaf;
+    }
+
+    private boolean hasAccept(int state) {
+        int action = tables.getAction(state, token);
+        if (GLRTables.isConflict(action)) {
+            for (int conflictAction : tables.getConflictActions(action)) {
+                if (ParseTables.kindOf(conflictAction) == ParseTables.ACCEPT) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return ParseTables.kindOf(action) == ParseTables.ACCEPT;
+    }
+
+    /* Accept at the node of S' -> S •, whose edge down to the start node
+       holds the forest of the whole input.
+     */
+    private void accept(int node) {
+        for (int e = nodeFirstEdge[node]; e != NO_NODE; e = edgeNext[e]) {
+            if (edgeTarget[e] == 0) {
+                root = edgeLabel[e];
+            }
+        }
+        status = LRParser.ACCEPTED;
+    }
+
+    private int reject(int token) {
+        status = LRParser.REJECTED;
+        errorLevel = level;
+        errorToken = token;
+        return status;
+    }
+
+    private int addNode(int state) {
+        if (nodeCount == nodeState.length) {
+            int length = nodeCount * 2;
+            nodeState = Arrays.copyOf(nodeState, length);
+            nodeLevel = Arrays.copyOf(nodeLevel, length);
+            nodeFirstEdge = Arrays.copyOf(nodeFirstEdge, length);
+            nodeOrder = Arrays.copyOf(nodeOrder, length);
+        }
+        int node = nodeCount++;
+        nodeState[node] = state;
+        nodeLevel[node] = level;
+        nodeFirstEdge[node] = NO_NODE;
+        stateNodes[state] = node;
+        stateEpochs[state] = epoch;
+        if (frontierSize == frontier.length) {
+            frontier = Arrays.copyOf(frontier, frontierSize * 2);
+        }
+        nodeOrder[node] = frontierSize;
+        frontier[frontierSize++] = node;
+        return node;
+    }
+
+    private int addEdge(int from, int to, int label) {
+        if (edgeCount == edgeTarget.length) {
+            int length = edgeCount * 2;
+            edgeSource = Arrays.copyOf(edgeSource, length);
+            edgeTarget = Arrays.copyOf(edgeTarget, length);
+            edgeLabel = Arrays.copyOf(edgeLabel, length);
+            edgeNext = Arrays.copyOf(edgeNext, length);
+        }
+        int edge = edgeCount++;
+        edgeSource[edge] = from;
+        edgeTarget[edge] = to;
+        edgeLabel[edge] = label;
+        edgeNext[edge] = nodeFirstEdge[from];
+        nodeFirstEdge[from] = edge;
+        return edge;
+    }
+
+    /* Return the forest node of a variable from start to the current
+       level, adding it if it is new.
+     */
+    private int getForestNode(int variable, int start) {
+        int slot = findSlot(FOREST, variable, start);
+        if (slotEpochs[slot] == epoch) {
+            return slots[slot] / 3;
+        }
+        int forest = addForestNode(variable, start, level);
+        putSlot(slot, forest * 3 + FOREST);
+        return forest;
+    }
+
+    /* Return the slot of the entry of a kind with the keys a and b, and for
+       a packed node the children in path, or the free slot for it. The
+       table grows here, so the slot stays valid for putSlot.
+     */
+    private int findSlot(int kind, int a, int b) {
+        if (slotCount * 2 >= slots.length) {
+            rehash(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        int slot = hash(kind, a, b, path, 0) & mask;
+        while (slotEpochs[slot] == epoch) {
+            int entry = slots[slot];
+            if (entry % 3 == kind && matches(kind, entry / 3, a, b)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /* Add an entry that is not in the table yet. */
+    private void insertSlot(int entry) {
+        if (slotCount * 2 >= slots.length) {
+            rehash(slots.length * 2);
+        }
+        putSlot(freeSlot(entryHash(entry)), entry);
+    }
+
+    private int freeSlot(int h) {
+        int mask = slots.length - 1;
+        int slot = h & mask;
+        while (slotEpochs[slot] == epoch) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int entryHash(int entry) {
+        int id = entry / 3;
+        switch (entry % 3) {
+            case FOREST:
+                return hash(FOREST, forestSymbol[id], forestStart[id], path, 0);
+            case EDGE:
+                return hash(EDGE, edgeSource[id], edgeTarget[id], path, 0);
+            default:
+                return hash(PACKED, packedForest[id], packedRule[id], children, packedChildren[id]);
+        }
+    }
+
+    private void putSlot(int slot, int entry) {
+        slots[slot] = entry;
+        slotEpochs[slot] = epoch;
+        slotCount++;
+    }
+
+    private boolean matches(int kind, int id, int a, int b) {
+        switch (kind) {
+            case FOREST:
+                return forestSymbol[id] == a && forestStart[id] == b;
+            case EDGE:
+                return edgeSource[id] == a && edgeTarget[id] == b;
+            default:
+                return packedForest[id] == a && packedRule[id] == b
+                        && samePath(packedChildren[id], tables.getRuleLength(b));
+        }
+    }
+
+    private void rehash(int length) {
+        int[] oldSlots = slots;
+        int[] oldEpochs = slotEpochs;
+        slots = new int[length];
+        slotEpochs = new int[length];
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldEpochs[i] == epoch) {
+                int slot = freeSlot(entryHash(oldSlots[i]));
+                slots[slot] = oldSlots[i];
+                slotEpochs[slot] = epoch;
+            }
+        }
+    }
+
+    private int hash(int kind, int a, int b, int[] symbols, int offset) {
+        int h = (kind * 31 + a) * 31 + b;
+        if (kind == PACKED) {
+            int length = tables.getRuleLength(b);
+            for (int i = 0; i < length; i++) {
+                h = h * 31 + symbols[offset + i];
+            }
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int addForestNode(int symbol, int start, int end) {
+        if (forestCount == forestSymbol.length) {
+            int length = forestCount * 2;
+            forestSymbol = Arrays.copyOf(forestSymbol, length);
+            forestStart = Arrays.copyOf(forestStart, length);
+            forestEnd = Arrays.copyOf(forestEnd, length);
+            forestFirstPacked = Arrays.copyOf(forestFirstPacked, length);
+        }
+        int forest = forestCount++;
+        forestSymbol[forest] = symbol;
+        forestStart[forest] = start;
+        forestEnd[forest] = end;
+        forestFirstPacked[forest] = NO_NODE;
+        return forest;
+    }
+
+    /* Add the derivation of a forest node by a rule with the symbols in
+       path, unless the node already has it.
+     */
+    private void addPacked(int forest, int rule, int length) {
+        // Like edges, packed nodes are only hashed once a forest node has two
+        int first = forestFirstPacked[forest];
+        if (first != NO_NODE) {
+            if (packedNext[first] == NO_NODE) {
+                if (packedRule[first] == rule && samePath(packedChildren[first], length)) {
+                    return;
+                }
+                insertSlot(first * 3 + PACKED);
+            } else {
+                int slot = findSlot(PACKED, forest, rule);
+                if (slotEpochs[slot] == epoch) {
+                    return;
+                }
+            }
+        }
+        if (packedCount == packedRule.length) {
+            int newLength = packedCount * 2;
+            packedForest = Arrays.copyOf(packedForest, newLength);
+            packedRule = Arrays.copyOf(packedRule, newLength);
+            packedChildren = Arrays.copyOf(packedChildren, newLength);
+            packedNext = Arrays.copyOf(packedNext, newLength);
+        }
+        if (childCount + length > children.length) {
+            children = Arrays.copyOf(children, Math.max(children.length * 2, childCount + length));
+        }
+        System.arraycopy(path, 0, children, childCount, length);
+        int packed = packedCount++;
+        packedForest[packed] = forest;
+        packedRule[packed] = rule;
+        packedChildren[packed] = childCount;
+        packedNext[packed] = forestFirstPacked[forest];
+        forestFirstPacked[forest] = packed;
+        childCount += length;
+        if (first != NO_NODE) {
+            insertSlot(packed * 3 + PACKED);
+        }
+    }
+
+    private boolean samePath(int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (children[offset + i] != path[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /* The number of tokens shifted so far. */
+    public int getLevel() {
+        return level;
+    }
+
+    /* The number of nodes of the current level, one per live stack top. */
+    public int getStackTopCount() {
+        return frontierSize;
+    }
+
+    /* The level and token of a rejected input, or -1. */
+    public int getErrorLevel() {
+        return errorLevel;
+    }
+
+    public int getErrorToken() {
+        return errorToken;
+    }
+
+    public int getStackNodeCount() {
+        return nodeCount;
+    }
+
+    public int getForestNodeCount() {
+        return forestCount;
+    }
+
+    /* The forest node of the start variable over the whole input once it
+       is accepted, or NO_NODE.
+     */
+    public int getForestRoot() {
+        return root;
+    }
+
+    /* The symbol of a forest node, a token for the leaves. */
+    public int getForestSymbol(int forest) {
+        return forestSymbol[forest];
+    }
+
+    /* The level before the first token of a forest node. */
+    public int getForestStart(int forest) {
+        return forestStart[forest];
+    }
+
+    /* The level after the last token of a forest node. */
+    public int getForestEnd(int forest) {
+        return forestEnd[forest];
+    }
+
+    /* The number of ways a forest node is derived: 0 for a token, 1 for an
+       unambiguous variable.
+     */
+    public int getAlternativeCount(int forest) {
+        int count = 0;
+        for (int p = forestFirstPacked[forest]; p != NO_NODE; p = packedNext[p]) {
+            count++;
+        }
+        return count;
+    }
+
+    public int getAlternativeRule(int forest, int alternative) {
+        return packedRule[getPacked(forest, alternative)];
+    }
+
+    /* Return the forest nodes of the symbols of an alternative. */
+    public int[] getAlternativeChildren(int forest, int alternative) {
+        int packed = getPacked(forest, alternative);
+        int offset = packedChildren[packed];
+        return Arrays.copyOfRange(children, offset, offset + tables.getRuleLength(packedRule[packed]));
+    }
+
+    private int getPacked(int forest, int alternative) {
+        int p = forestFirstPacked[forest];
+        for (int i = 0; i < alternative && p != NO_NODE; i++) {
+            p = packedNext[p];
+        }
+        if (p == NO_NODE) {
+            throw new IllegalArgumentException("ERROR: No alternative " + alternative + " of forest node " + forest);
+        }
+        return p;
+    }
+
+    /* Return the number of parse trees of the accepted input, 0 if it was
+       not accepted. The count saturates at Long.MAX_VALUE, which is also
+       the count of a forest with a cycle, from rules like A: A.
+     */
+    public long getTreeCount() {
+        if (root == NO_NODE) {
+            return 0;
+        }
+        long[] counts = new long[forestCount];
+        byte[] marks = new byte[forestCount]; // 1 while visited, 2 when counted
+        int[] stack = new int[16];
+        int top = 0;
+        stack[0] = root;
+        while (top >= 0) {
+            int forest = stack[top];
+            if (marks[forest] == 2) {
+                top--;
+            } else if (marks[forest] == 1) {
+                counts[forest] = countTrees(forest, counts);
+                marks[forest] = 2;
+                top--;
+            } else {
+                marks[forest] = 1;
+                for (int p = forestFirstPacked[forest]; p != NO_NODE; p = packedNext[p]) {
+                    int length = tables.getRuleLength(packedRule[p]);
+                    for (int i = 0; i < length; i++) {
+                        int child = children[packedChildren[p] + i];
+                        if (marks[child] == 1) {
+                            return Long.MAX_VALUE;
+                        }
+                        if (marks[child] == 0) {
+                            if (++top == stack.length) {
+                                stack = Arrays.copyOf(stack, stack.length * 2);
+                            }
+                            stack[top] = child;
+                        }
+                    }
+                }
+            }
+        }
+        return counts[root];
+    }
+
+    private long countTrees(int forest, long[] counts) {
+        if (forestFirstPacked[forest] == NO_NODE) {
+            return 1;
+        }
+        long sum = 0;
+        for (int p = forestFirstPacked[forest]; p != NO_NODE; p = packedNext[p]) {
+            long product = 1;
+            int length = tables.getRuleLength(packedRule[p]);
+            for (int i = 0; i < length; i++) {
+                long count = counts[children[packedChildren[p] + i]];
+                product = count != 0 && product > Long.MAX_VALUE / count ? Long.MAX_VALUE : product * count;
+            }
+            sum = sum > Long.MAX_VALUE - product ? Long.MAX_VALUE : sum + product;
+        }
+        return sum;
+    }
+
+    /* Output the forest of the accepted input, one line per alternative of
+       each variable node reachable from the root, as
+       "e[0,3]: e[0,1] PLUS[1,2] e[2,3]".
+     */
+    public StringBuilder outputForest(StringBuilder out) {
+        if (root == NO_NODE) {
+            return out;
+        }
+        boolean[] seen = new boolean[forestCount];
+        int[] queue = new int[forestCount];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        seen[root] = true;
+        while (head < tail) {
+            int forest = queue[head++];
+            for (int p = forestFirstPacked[forest]; p != NO_NODE; p = packedNext[p]) {
+                outputForestNode(out, forest).append(":");
+                int length = tables.getRuleLength(packedRule[p]);
+                if (length == 0) {
+                    out.append(" epsilon");
+                }
+                for (int i = 0; i < length; i++) {
+                    int child = children[packedChildren[p] + i];
+                    outputForestNode(out.append(" "), child);
+                    if (!seen[child] && forestFirstPacked[child] != NO_NODE) {
+                        seen[child] = true;
+                        queue[tail++] = child;
+                    }
+                }
+                out.append("\n");
+            }
+        }
+        return out;
+    }
+
+    private StringBuilder outputForestNode(StringBuilder out, int forest) {
+        return out.append(tables.getSymbolName(forestSymbol[forest])).append("[")
+                .append(forestStart[forest]).append(",").append(forestEnd[forest]).append("]");
+    }
+
+    public GLRTables getTables() {
+        return tables;
+    }
+}
@@ -0,0 +1,71 @@
+package org.grammlex.v1;
+
+import java.util.List;
+
+/* GLRTables are ParseTables that keep every action of a cell, for a
+   GLRParser, so that they also exist for grammars that are not LR(1).
+
+   A cell with one action is packed as usual. A cell with several, a
+   conflict, is packed as an ERROR whose operand is one more than the
+   number of the conflict, and the packed actions of the conflict are
+   kept in a separate list. An LRParser running these tables rejects an
+   input at a conflict, as it would at an empty cell. The conflicts only
+   exist in memory, so the tables are not for TableFile.
+ */
+public class GLRTables extends ParseTables {
+    private final int[][] conflicts;
+    private final int conflictStates;
+
+    protected GLRTables(Grammar grammar, List<Action[]> actionTable, List<int[]> gotoTable,
+                        List<int[]> conflicts) {
+        super(grammar, actionTable, gotoTable);
+        this.conflicts = conflicts.toArray(new int[0][]);
+        int states = 0;
+        for (Action[] row : actionTable) {
+            for (Action action : row) {
+                if (action != null && action.getType() == Action.CONFLICT) {
+                    states++;
+                    break;
+                }
+            }
+        }
+        conflictStates = states;
+    }
+
+    /* Return whether a packed action is a conflict. */
+    public static boolean isConflict(int action) {
+        return kindOf(action) == ERROR && operandOf(action) != 0;
+    }
+
+    /* Return the packed actions of a conflict. The array is the tables'
+       own, not a copy.
+     */
+    public int[] getConflictActions(int action) {
+        return conflicts[operandOf(action) - 1];
+    }
+
+    /* The number of cells with more than one action. */
+    public int getConflictCount() {
+        return conflicts.length;
+    }
+
+    /* The number of states with a conflict. */
+    public int getConflictStateCount() {
+        return conflictStates;
+    }
+
+    /* Return whether the tables have no conflict, so that an LRParser
+       parses with them like with the tables of createParseTables.
+     */
+    public boolean isDeterministic() {
+        return conflicts.length == 0;
+    }
+
+    @Override
+    public StringBuilder outputSummary(StringBuilder out) {
+        super.outputSummary(out);
+        out.append("Conflicts: ").append(conflicts.length).append(" cells in ")
+                .append(conflictStates).append(" states\n");
+        return out;
+    }
+}
@@ -1,5 +1,7 @@
 package org.grammlex.v1;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 /* Grammar
@@ -20,12 +22,39 @@ import java.util.*;
  * stream: documents*;
  * document: BOM? header_line value_line+ end_line;
  *
+ * Terminals can be defined with ANTLR lexer rules, which LexerDfa compiles
+ * into a scanner. A rule is a lexer rule if it is a fragment or its name
+ * starts upper case and its body has a literal, a set, a negation or a
+ * command, so that upper case parser rules such as "S: document*;" still
+ * work. Fragments are only used by other lexer rules and tokens with the
+ * skip or channel command are scanned but not passed to the parser.
+ * Example:
+ * ID: LETTER (LETTER | [0-9])*;
+ * fragment LETTER: [a-zA-Z_];
+ * WS: [ \t\r\n]+ -> skip;
+ *
+ * The text is read in one pass by a GrammarReader, which also skips
+ * comments, action blocks and header statements such as "parser grammar".
+ *
+ * Once the rules are parsed, every terminal and variable is given an int
+ * id in a SymbolTable and the rules carry those ids, so that the LR
+ * construction does not have to hash and compare names.
+ *
+ * A grammar can also be read as an edit of a previous grammar. The FIRST
+ * and FOLLOW sets of the variables the edit cannot have changed are then
+ * copied from the previous grammar, by name since the ids of the two
+ * grammars may differ, and only the others are computed.
  */
 public class Grammar {
     public static final String EPSILON = "epsilon";
     public static final String REPEAT_SUFFIX = "_repeat";
     public static final String REPEAT1_SUFFIX = "_repeat1";
     public static final String OPT_SUFFIX = "_opt";
+    public static final String FRAGMENT = "fragment";
+    public static final String PHASE_PARSE = "parse";
+    public static final String PHASE_FIRST = "first";
+    public static final String PHASE_FOLLOW = "follow";
+    private static final String MISSING_SEMICOLON = "ERROR: Missing semicolon? Leftover text at end of grammar.";
 
     private final List<Rule> extendedRules; // rules before modifiers are expanded
     private final List<Rule> rules; // low level rules suitable for LR(1)
@@ -34,11 +63,34 @@ public class Grammar {
     private final Set<String> repeats; // terms with *
     private final Set<String> repeat1s; // terms with +
     private final Set<String> optionals; // terms with ?
+    private final Map<String, String> lexerRules; // lexer rule bodies in order
+    private final Set<String> fragments; // lexer rules that are not tokens
+    private final Set<String> skippedTokens; // lexer rules not passed to the parser
+    private final Map<Rule, Integer> ruleIndexes;
+    private final List<List<Rule>> rulesByVar; // rules of each variable id
+    private int[] firstItemNumbers; // LR(0) item number of each rule with the dot first
+    private SymbolTable symbols;
     private String startVariable;
     private Map<String, Set<String>> firstSets;
     private Map<String, Set<String>> followSets;
+    private BitSet[] firstSymbols; // FIRST set of each symbol id, without epsilon
+    private boolean[] nullable; // whether each symbol id can reduce to epsilon
+    private BitSet[] followSymbols; // FOLLOW set of each variable id
+    private SuffixFirstTable suffixFirsts;
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>(); // wall time of each phase
+    private Set<String> affectedVariables; // variables an edit may have changed, or null
+    private final Map<String, String> modifiedTerms = new HashMap<>(); // variable of each term with a modifier
+    private String[] termBuffer = new String[16]; // terms of the alternative being read
+    private String[] ruleTermBuffer = new String[16]; // the same with the variables of modifiers
+
+    public Grammar(CharSequence grammarText) {
+        this(grammarText, null);
+    }
 
-    public Grammar(String grammarText) {
+    /* Read a grammar that is an edit of a previous grammar, or a new one if
+     * previous is null.
+     */
+    public Grammar(CharSequence grammarText, Grammar previous) {
         extendedRules = new ArrayList<>();
         rules = new ArrayList<>();
         terminals = new HashSet<>();
@@ -46,83 +98,206 @@ public class Grammar {
         repeats = new HashSet<>();
         repeat1s = new HashSet<>();
         optionals = new HashSet<>();
+        lexerRules = new LinkedHashMap<>();
+        fragments = new HashSet<>();
+        skippedTokens = new HashSet<>();
+        ruleIndexes = new HashMap<>();
+        rulesByVar = new ArrayList<>();
+        long start = System.nanoTime();
         parseRules(grammarText);
-        computeFirstSets();
-        computeFollowSets();
+        start = recordPhase(PHASE_PARSE, start);
+        if (previous != null) {
+            affectedVariables = findAffectedVariables(previous);
+        }
+        computeNullable();
+        computeFirstSets(previous);
+        suffixFirsts = new SuffixFirstTable(this);
+        start = recordPhase(PHASE_FIRST, start);
+        computeFollowSets(previous);
+        recordPhase(PHASE_FOLLOW, start);
     }
 
-    protected void parseRules(String grammarText) {
-        StringBuilder rule = new StringBuilder();
-        boolean inBlock = false;
-        boolean isFirstRule = true;
-        String[] specials = new String[]{"/", "@", "}", "parser ", "options ", "tokens "};
-        for (String line : grammarText.split("\n")) {
-            boolean special = false;
-            if (startsWithAny(line, specials)) {
-                special = true;
-            }
-            if (line.startsWith("@")) {
-                inBlock = true;
-            }
-            if (line.startsWith("}")) {
-                inBlock = false;
-            }
+    /* Record the time since start as the time of a phase and return now. */
+    protected long recordPhase(String phase, long start) {
+        long now = System.nanoTime();
+        phaseNanos.put(phase, now - start);
+        return now;
+    }
 
-            if (!inBlock && !special) {
-                rule.append(line);
-                if (line.endsWith(";")) {
-                    makeRule(rule.toString(), isFirstRule);
-                    isFirstRule = false;
-                    rule.setLength(0);
-                }
-            }
-        }
-        if (rule.length() != 0) {
-            throw new IllegalArgumentException("ERROR: Missing semicolon? Leftover text at end of grammar.");
+    /* Read the rules in one pass with a GrammarReader. */
+    protected void parseRules(CharSequence grammarText) {
+        GrammarReader reader = new GrammarReader(grammarText);
+        boolean isFirstRule = true;
+        while (reader.nextRule()) {
+            makeRule(reader, isFirstRule);
+            // Lexer rules can come before the start rule
+            isFirstRule = startVariable == null;
         }
         makeModifierRules();
+        // Lexer rules define tokens even if no parser rule uses them
+        for (String name : lexerRules.keySet()) {
+            if (!fragments.contains(name) && !skippedTokens.contains(name)) {
+                terminals.add(name);
+            }
+        }
         for (String variable : variables) {
             terminals.remove(variable);
         }
+        makeSymbols();
+    }
+
+    /* Number the symbols and give every rule its index and symbol ids.
+     * The rules are also indexed by variable, and every LR(0) item, a rule
+     * with a dot position, gets a number.
+     */
+    protected void makeSymbols() {
+        Set<String> allVariables = new HashSet<>(variables);
+        allVariables.add("S'");
+        symbols = new SymbolTable(terminals, allVariables);
+        for (int id = 0; id < symbols.size(); id++) {
+            rulesByVar.add(new ArrayList<>());
+        }
+        firstItemNumbers = new int[rules.size() + 1];
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = new Rule(rules.get(i).getVar(), rules.get(i).getTerms(), i, symbols);
+            rules.set(i, rule);
+            ruleIndexes.putIfAbsent(rule, i); // the first of equal alternatives
+            rulesByVar.get(rule.getVarSymbol()).add(rule);
+            firstItemNumbers[i + 1] = firstItemNumbers[i] + rule.getSymbols().length + 1;
+        }
     }
 
 
-    protected void makeRule(String rule, boolean isFirstRule) {
-        rule = rule.substring(0, rule.length() - 1);
-        String[] sides = rule.split(":", 2);
-        String leftSide = sides[0].trim();
+    /* Read a rule, from its left side to its semicolon. The terms of each
+     * alternative are read into a buffer, and the array of the extended
+     * rule is shared with the rule unless a term has a modifier.
+     */
+    protected void makeRule(GrammarReader reader, boolean isFirstRule) {
+        reader.next();
+        String leftSide = reader.getName();
+        boolean fragment = false;
+        int token = reader.next();
+        if (leftSide.equals(FRAGMENT) && token == GrammarReader.NAME) {
+            fragment = true;
+            leftSide = reader.getName();
+            token = reader.next();
+        }
+        if (token != GrammarReader.COLON) {
+            throw new IllegalArgumentException("ERROR: Missing colon in rule: " + reader.getRuleText());
+        }
+        if (fragment || (Character.isUpperCase(leftSide.charAt(0)) && reader.hasLexerBody())) {
+            String body = reader.readBody();
+            if (body == null) {
+                throw new IllegalArgumentException(MISSING_SEMICOLON);
+            }
+            makeLexerRule(leftSide, fragment, body);
+            return;
+        }
         variables.add(leftSide);
         if (isFirstRule) {
             startVariable = leftSide;
             rules.add(new Rule("S'", new String[]{startVariable}));
         }
-        String[] choices = sides[1].trim().split("\\|");
-        for (String choice : choices) {
-            String[] terms = choice.trim().split("\\s+");
-            extendedRules.add(new Rule(leftSide, terms.clone()));
-            int termIndex = 0;
-            for (String term : terms) {
-                // Epsilon is not a terminal
-                if (term.equals(Grammar.EPSILON))
-                    continue;
-
-                if (term.endsWith("*")) {
-                    terms[termIndex] = processWildcardTerm(term);
-                } else if (term.endsWith("+")) {
-                    terms[termIndex] = processPlusTerm(term);
-                } else if (term.endsWith("?")) {
-                    terms[termIndex] = processOptionalTerm(term);
+        int count = 0;
+        boolean modified = false;
+        while (true) {
+            token = reader.next();
+            if (token == GrammarReader.NAME) {
+                if (count == termBuffer.length) {
+                    termBuffer = Arrays.copyOf(termBuffer, count * 2);
+                    ruleTermBuffer = Arrays.copyOf(ruleTermBuffer, count * 2);
+                }
+                String term = reader.getName();
+                termBuffer[count] = term;
+                char modifier = reader.getModifier();
+                if (modifier != 0) {
+                    ruleTermBuffer[count] = processModifiedTerm(term, reader.getBaseName(), modifier);
+                    modified = true;
                 } else {
-                    terminals.add(term);
+                    // Epsilon is not a terminal
+                    if (!term.equals(Grammar.EPSILON)) {
+                        terminals.add(term);
+                    }
+                    ruleTermBuffer[count] = term;
+                }
+                count++;
+            } else if (token == GrammarReader.BAR || token == GrammarReader.SEMICOLON) {
+                // An empty alternative is epsilon
+                String[] terms = count == 0 ? new String[]{Grammar.EPSILON} : Arrays.copyOf(termBuffer, count);
+                extendedRules.add(new Rule(leftSide, terms));
+                rules.add(new Rule(leftSide, modified ? Arrays.copyOf(ruleTermBuffer, count) : terms));
+                if (token == GrammarReader.SEMICOLON) {
+                    return;
                 }
-                termIndex++;
+                count = 0;
+                modified = false;
+            } else if (token == GrammarReader.COLON) {
+                throw new IllegalArgumentException("ERROR: Missing semicolon? Colon in the body of rule: "
+                        + leftSide);
+            } else {
+                throw new IllegalArgumentException(MISSING_SEMICOLON);
+            }
+        }
+    }
+
+    /* Return the variable for a term with a modifier, such as x_repeat for
+     * x*, once for every distinct term.
+     */
+    protected String processModifiedTerm(String term, String baseTerm, char modifier) {
+        String variable = modifiedTerms.get(term);
+        if (variable == null) {
+            if (modifier == '*') {
+                variable = processWildcardTerm(baseTerm);
+            } else if (modifier == '+') {
+                variable = processPlusTerm(baseTerm);
+            } else {
+                variable = processOptionalTerm(baseTerm);
+            }
+            modifiedTerms.put(term, variable);
+        }
+        return variable;
+    }
+
+    protected void makeLexerRule(String name, boolean fragment, String body) {
+        if (fragment) {
+            fragments.add(name);
+        }
+        int commandIndex = findCommand(body);
+        if (commandIndex != -1) {
+            String command = body.substring(commandIndex + 2).trim();
+            if (!command.equals("skip") && !command.startsWith("channel")) {
+                throw new IllegalArgumentException("ERROR: Unsupported lexer command: " + command);
             }
-            rules.add(new Rule(leftSide, terms));
+            skippedTokens.add(name);
+            body = body.substring(0, commandIndex).trim();
         }
+        lexerRules.put(name, body);
+    }
+
+    /* Return the index of the -> of a lexer command, outside of literals
+     * and sets, or -1.
+     */
+    protected static int findCommand(String body) {
+        boolean inLiteral = false;
+        boolean inSet = false;
+        for (int i = 0; i < body.length() - 1; i++) {
+            char c = body.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '\'' && !inSet) {
+                inLiteral = !inLiteral;
+            } else if (c == '[' && !inLiteral) {
+                inSet = true;
+            } else if (c == ']' && !inLiteral) {
+                inSet = false;
+            } else if (!inLiteral && !inSet && c == '-' && body.charAt(i + 1) == '>') {
+                return i;
+            }
+        }
+        return -1;
     }
 
     protected String processWildcardTerm(String term) {
-        term = term.substring(0, term.length() - 1);
         repeats.add(term);
         terminals.add(term);
         term = term + Grammar.REPEAT_SUFFIX;
@@ -131,7 +306,6 @@ public class Grammar {
     }
 
     protected String processPlusTerm(String term) {
-        term = term.substring(0, term.length() - 1);
         repeat1s.add(term);
         terminals.add(term);
         term = term + Grammar.REPEAT1_SUFFIX;
@@ -140,7 +314,6 @@ public class Grammar {
     }
 
     protected String processOptionalTerm(String term) {
-        term = term.substring(0, term.length() - 1);
         optionals.add(term);
         terminals.add(term);
         term = term + Grammar.OPT_SUFFIX;
@@ -170,238 +343,446 @@ public class Grammar {
 
     }
 
-    /* Compute the FIRST set for each variable.
+    /* Find the variables that can reduce to the empty string. Each rule
+     * counts its symbols that are not known to be nullable and its variable
+     * is nullable once the count is zero, so every occurrence of a symbol
+     * is visited at most once.
+     */
+    protected void computeNullable() {
+        nullable = new boolean[symbols.size()];
+        int[] remaining = new int[rules.size()];
+        List<List<Integer>> occurrences = new ArrayList<>(); // rules of each symbol id
+        for (int id = 0; id < symbols.size(); id++) {
+            occurrences.add(new ArrayList<>());
+        }
+        Deque<Integer> work = new ArrayDeque<>();
+        for (Rule rule : rules) {
+            remaining[rule.getIndex()] = rule.getSymbols().length;
+            for (int symbol : rule.getSymbols()) {
+                occurrences.get(symbol).add(rule.getIndex());
+            }
+            markNullable(rule, remaining, work);
+        }
+        while (!work.isEmpty()) {
+            for (int ruleIndex : occurrences.get(work.pop())) {
+                remaining[ruleIndex]--;
+                markNullable(rules.get(ruleIndex), remaining, work);
+            }
+        }
+    }
+
+    private void markNullable(Rule rule, int[] remaining, Deque<Integer> work) {
+        if (remaining[rule.getIndex()] == 0 && !nullable[rule.getVarSymbol()]) {
+            nullable[rule.getVarSymbol()] = true;
+            work.push(rule.getVarSymbol());
+        }
+    }
+
+    /* Compute the FIRST set for each symbol.
      * https://en.wikipedia.org/wiki/LL_parser#Constructing_an_LL(1)_parsing_table
+     *
+     * The FIRST set of a terminal is itself. For a rule A -> u X v where u
+     * is nullable, FIRST(A) includes FIRST(X). Digraph takes the union over
+     * that relation one strongly connected component at a time, in
+     * topological order, so every set is final after one visit instead of
+     * looping until no set changes.
      */
     protected void computeFirstSets() {
-        firstSets = new HashMap<>();
-        for (String s : variables) {
-            Set<String> temp = new HashSet<>();
-            firstSets.put(s, temp);
+        computeFirstSets(null);
+    }
+
+    /* Compute the FIRST sets, copying those of the variables that are not
+     * affected by the edit from the previous grammar, if there is one. A
+     * copied set is final, so it needs no edges.
+     */
+    protected void computeFirstSets(Grammar previous) {
+        List<BitSet> initial = new ArrayList<>();
+        List<List<Integer>> relation = new ArrayList<>();
+        boolean[] copied = new boolean[symbols.size()];
+        for (int id = 0; id < symbols.size(); id++) {
+            BitSet first = new BitSet();
+            if (symbols.isTerminal(id)) {
+                first.set(id);
+            } else if (previous != null && !affectedVariables.contains(symbols.getName(id))) {
+                first = translate(previous.firstSymbols[previous.symbols.getId(symbols.getName(id))],
+                        previous.symbols);
+                copied[id] = true;
+            }
+            initial.add(first);
+            relation.add(new ArrayList<>());
         }
+        for (Rule rule : rules) {
+            if (copied[rule.getVarSymbol()]) {
+                continue;
+            }
+            List<Integer> edges = relation.get(rule.getVarSymbol());
+            for (int symbol : rule.getSymbols()) {
+                edges.add(symbol);
+                if (!nullable[symbol]) {
+                    break;
+                }
+            }
+        }
+        firstSymbols = Digraph.compute(initial, relation).toArray(new BitSet[0]);
 
-        /* computing the first set of a variable requires the first
-         * set of other variables, which is chicken or egg first?,
-         * so we start just computing with empty first sets and
-         * progressively fill in those sets and loop until we
-         * can no longer add any more elements.
+        /* The FIRST sets by name include epsilon as an indication that the
+         * variable is nullable - it can all reduce to an empty string.
+         * Epsilon is not actually processed as an input when parsing, so
+         * it is not a terminal and the symbol sets leave it out.
          */
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            for (String variable : variables) {
-                Set<String> firstSet = new HashSet<>();
-                // for every rule A -> terms*, add first(terms*)
-                for (Rule rule : rules) {
-                    if (rule.getVar().equals(variable)) {
-                        firstSet.addAll(computeFirst(rule.getTerms(), 0));
-                    }
-                }
-                // as long as a first set expanded, keep looping
-                if (!firstSets.get(variable).containsAll(firstSet)) {
-                    changed = true;
-                    firstSets.get(variable).addAll(firstSet);
-                }
+        firstSets = new HashMap<>();
+        for (String variable : variables) {
+            int id = symbols.getId(variable);
+            Set<String> firstSet = new HashSet<>(symbols.getNames(firstSymbols[id]));
+            if (nullable[id]) {
+                firstSet.add(Grammar.EPSILON);
             }
+            firstSets.put(variable, firstSet);
         }
         firstSets.put("S'", firstSets.get(startVariable));
     }
 
-    /* Compute the first set for a list of terms starting at index.
-     * Note that this implementation includes epsilon in the first
-     * set as an indication that the sequence is nullable - it can all
-     * reduce to an empty string. However, in this case the first set
-     * does not consist only of terminals which can be confusing because
-     * epsilon is not actually processed as an input when parsing.
-     * In other words, epsilon is not a terminal.
-     * Some implementations exclude epsilon from the first set and
-     * separately indicate whether the term or terms are nullable.
+    public static boolean isEpsilonRule(String[] terms) {
+        return terms.length == 1 && terms[0].equals(Grammar.EPSILON);
+    }
+
+    /* Compute the FOLLOW set for each variable.
+     * https://en.wikipedia.org/wiki/LL_parser#Constructing_an_LL(1)_parsing_table
+     *
+     * For a rule A -> u B v, FOLLOW(B) includes FIRST(v), and if v can
+     * reduce to the empty string whatever can follow A can follow B, so
+     * FOLLOW(B) includes FOLLOW(A). FIRST(v) comes from the
+     * SuffixFirstTable, and Digraph takes the union over the FOLLOW(A)
+     * relation as it does for the FIRST sets.
      */
-    protected Set<String> computeFirst(String[] terms, int index) {
-        Set<String> first = new HashSet<>();
+    protected void computeFollowSets() {
+        computeFollowSets(null);
+    }
 
-        // if the first term is a terminal or epsilon that is the first set.
-        // Stop here. Nothing after epsilon and Anything after that terminal is not first.
-        if (terminals.contains(terms[index]) || terms[index].equals(Grammar.EPSILON)) {
-            first.add(terms[index]);
-            return first;
+    /* Compute the FOLLOW sets, copying those the edit cannot have changed
+     * from the previous grammar, if there is one. See findFollowChanges.
+     */
+    protected void computeFollowSets(Grammar previous) {
+        List<BitSet> initial = new ArrayList<>();
+        List<List<Integer>> relation = new ArrayList<>();
+        BitSet changes = previous == null ? null : findFollowChanges(previous);
+        boolean[] copied = new boolean[symbols.size()];
+        for (int id = 0; id < symbols.size(); id++) {
+            if (changes != null && symbols.isVariable(id) && !changes.get(id)) {
+                initial.add(translate(previous.followSymbols[previous.symbols.getId(symbols.getName(id))],
+                        previous.symbols));
+                copied[id] = true;
+            } else {
+                initial.add(new BitSet());
+            }
+            relation.add(new ArrayList<>());
         }
+        if (!rules.isEmpty() && !copied[rules.get(0).getVarSymbol()]) {
+            initial.get(rules.get(0).getVarSymbol()).set(symbols.getEndSymbol());
+        }
+        for (Rule rule : rules) {
+            int[] ruleSymbols = rule.getSymbols();
+            for (int i = 0; i < ruleSymbols.length; i++) {
+                if (symbols.isVariable(ruleSymbols[i]) && !copied[ruleSymbols[i]]
+                        && suffixFirsts.addFirst(rule, i + 1, initial.get(ruleSymbols[i]))) {
+                    relation.get(ruleSymbols[i]).add(rule.getVarSymbol());
+                }
+            }
+        }
+        followSymbols = Digraph.compute(initial, relation).toArray(new BitSet[0]);
 
-        // if the first term is a variable, add its first set and proceed
-        if (variables.contains(terms[index])) {
-            first.addAll(firstSets.get(terms[index]));
+        followSets = new HashMap<>();
+        for (String variable : variables) {
+            followSets.put(variable,
+                    new HashSet<>(symbols.getNames(followSymbols[symbols.getId(variable)])));
+        }
+        followSets.put("S'", new HashSet<>(symbols.getNames(followSymbols[symbols.getId("S'")])));
+    }
+
+    /* Return the ids of the variables whose FOLLOW set the edit may have
+     * changed. These are the variables used by a rule of an affected
+     * variable, or by a previous rule of a changed one, and then every
+     * variable used by a rule of one of those, since whatever can follow a
+     * variable can follow the last variable of its rules.
+     */
+    protected BitSet findFollowChanges(Grammar previous) {
+        BitSet changes = new BitSet();
+        Deque<Integer> work = new ArrayDeque<>();
+        for (Rule rule : rules) {
+            if (affectedVariables.contains(rule.getVar())) {
+                addFollowChanges(rule.getTerms(), changes, work);
+            }
+        }
+        for (Rule rule : previous.rules) {
+            if (affectedVariables.contains(rule.getVar())) {
+                addFollowChanges(rule.getTerms(), changes, work);
+            }
+        }
+        while (!work.isEmpty()) {
+            for (Rule rule : rulesByVar.get(work.pop())) {
+                addFollowChanges(rule.getTerms(), changes, work);
+            }
         }
+        return changes;
+    }
 
-        // if the variable was nullable (reduces to epsilon) and there
-        // are more terms, then compute first for remaining terms.
-        // Otherwise return with what we got from the variable.
-        if (first.contains(Grammar.EPSILON) && (index != terms.length - 1)) {
-            first.remove(Grammar.EPSILON);
-            first.addAll(computeFirst(terms, index + 1));
+    private void addFollowChanges(String[] terms, BitSet changes, Deque<Integer> work) {
+        for (String term : terms) {
+            int id = symbols.getId(term);
+            if (id != -1 && symbols.isVariable(id) && !changes.get(id)) {
+                changes.set(id);
+                work.push(id);
+            }
         }
-        return first;
     }
 
-    /* Compute the FOLLOW set for each variable.
-     * https://en.wikipedia.org/wiki/LL_parser#Constructing_an_LL(1)_parsing_table
+    /* Return the variables whose rules differ between a previous grammar
+     * and this one, including the variables only one of them has. The
+     * variables of modifiers, such as x_repeat, and S' are variables too.
      */
-    protected void computeFollowSets() {
-        followSets = new HashMap<>();
-        for (String s : variables) {
-            Set<String> temp = new HashSet<>();
-            followSets.put(s, temp);
-        }
-        Set<String> start = new HashSet<>();
-        start.add("$");
-        followSets.put("S'", start);
-
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            for (String variable : variables) {
-                // Go through every rule looking for this variable.
-                // If the rule contains the variable, use the rule to figure
-                // out what terminals can follow the variable.
-                for (Rule rule : rules) {
-                    if (computeFollowSet(variable, rule)) {
-                        changed = true;
-                    }
+    public Set<String> findChangedVariables(Grammar previous) {
+        Set<String> names = new HashSet<>();
+        for (SymbolTable table : Arrays.asList(symbols, previous.symbols)) {
+            for (int id = 0; id < table.size(); id++) {
+                if (table.isVariable(id)) {
+                    names.add(table.getName(id));
                 }
             }
         }
+        Set<String> changed = new HashSet<>();
+        for (String name : names) {
+            if (!getRulesByVar(name).equals(previous.getRulesByVar(name))) {
+                changed.add(name);
+            }
+        }
+        return changed;
     }
 
-    protected boolean computeFollowSet(String variable, Rule rule) {
-        boolean changed = false;
-        for (int i = 0; i < rule.getTerms().length; i++) {
-            if (rule.getTerms()[i].equals(variable)) {
-                Set<String> addToFollow;
-                if (i == rule.getTerms().length - 1) {
-                    // A -> uB
-                    // The variable we care about (B) is at the end of this rule
-                    // so we can presume that whatever follows A can follow B.
-                    // So add follow(A) to follow(B)
-                    // (We are using the variable first for that purpose)
-                    addToFollow = followSets.get(rule.getVar());
-                } else {
-                    // A -> uBv
-                    // there is something after B in this rule so
-                    // include first(v) in the follow set of B.
-                    addToFollow = computeFirst(rule.getTerms(), i + 1);
-                    // Moreover, if the remaining terms of the rule (v) can
-                    // reduce to empty string (epsilon) then whatever can
-                    // follow A can follow B, so add follow(A) to follow(B)
-                    // as well.
-                    if (addToFollow.contains(Grammar.EPSILON)) {
-                        addToFollow.remove(Grammar.EPSILON);
-                        addToFollow.addAll(followSets.get(rule.getVar()));
-                    }
-                }
-                if (!followSets.get(variable).containsAll(addToFollow)) {
-                    changed = true;
-                    followSets.get(variable).addAll(addToFollow);
+    /* Return the changed variables and every variable with a rule that uses
+     * one of them, directly or through other variables. Only these can
+     * have a FIRST set, nullability or closure that differs from the
+     * previous grammar.
+     */
+    public Set<String> findAffectedVariables(Grammar previous) {
+        Set<String> affected = findChangedVariables(previous);
+        List<List<Integer>> users = new ArrayList<>(); // variables with a rule using each symbol
+        for (int id = 0; id < symbols.size(); id++) {
+            users.add(new ArrayList<>());
+        }
+        for (Rule rule : rules) {
+            for (int symbol : rule.getSymbols()) {
+                users.get(symbol).add(rule.getVarSymbol());
+            }
+        }
+        Deque<String> work = new ArrayDeque<>(affected);
+        while (!work.isEmpty()) {
+            int id = symbols.getId(work.pop());
+            if (id == -1) {
+                continue;
+            }
+            for (int user : users.get(id)) {
+                if (affected.add(symbols.getName(user))) {
+                    work.push(symbols.getName(user));
                 }
             }
         }
-        return changed;
+        return affected;
+    }
+
+    /* Return the rules of a variable by name, or none. */
+    protected List<Rule> getRulesByVar(String name) {
+        int id = symbols.getId(name);
+        if (id == -1 || symbols.isTerminal(id)) {
+            return Collections.emptyList();
+        }
+        return rulesByVar.get(id);
     }
 
-    public StringBuilder outputGrammar(StringBuilder out) {
-        out.append("Extended Rules:\n");
-        outputExtendedRules(out).append("\n");
+    /* Return a set of symbol ids of another SymbolTable as ids of this
+     * grammar, leaving out the names this grammar does not have.
+     */
+    public BitSet translate(BitSet ids, SymbolTable from) {
+        BitSet translated = new BitSet();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            int newId = symbols.getId(from.getName(id));
+            if (newId != -1) {
+                translated.set(newId);
+            }
+        }
+        return translated;
+    }
 
-        out.append("Rules:\n");
-        outputRules(out).append("\n");
+    /* The output methods write to any Appendable, such as a StringBuilder
+       or a Writer, and return it. An IOException of a Writer is thrown as
+       an UncheckedIOException.
+     */
+    public <T extends Appendable> T outputGrammar(T out) {
+        try {
+            out.append("Extended Rules:\n");
+            outputExtendedRules(out).append("\n");
 
-        out.append("Start Variable: ").append(startVariable).append("\n\n");
+            out.append("Rules:\n");
+            outputRules(out).append("\n");
 
-        out.append("Variables:\n");
-        outputVariables(out).append("\n");
+            out.append("Start Variable: ").append(startVariable).append("\n\n");
 
-        out.append("Terminals:\n");
-        outputTerminals(out).append("\n");
+            out.append("Variables:\n");
+            outputVariables(out).append("\n");
 
-        out.append("First Sets:\n");
-        outputFirstSets(out).append("\n");
+            out.append("Terminals:\n");
+            outputTerminals(out).append("\n");
 
-        out.append("Follow Sets:\n");
+            out.append("First Sets:\n");
+            outputFirstSets(out).append("\n");
 
+            out.append("Follow Sets:\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         return outputFollowSets(out);
     }
 
-    public StringBuilder outputExtendedRules(StringBuilder out) {
-        for (Rule eRule : extendedRules) {
-            out.append(eRule).append("\n");
+    public <T extends Appendable> T outputExtendedRules(T out) {
+        try {
+            for (Rule eRule : extendedRules) {
+                out.append(eRule.toString()).append("\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         return out;
     }
 
-    public StringBuilder outputRules(StringBuilder out) {
-        for (int i = 0; i < rules.size(); i++) {
-            out.append(i).append(": ");
-            out.append(rules.get(i)).append("\n");
+    public <T extends Appendable> T outputRules(T out) {
+        try {
+            for (int i = 0; i < rules.size(); i++) {
+                out.append(Integer.toString(i)).append(": ");
+                out.append(rules.get(i).toString()).append("\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         return out;
     }
 
-    public StringBuilder  outputVariables(StringBuilder out) {
-        for (String variable : variables) {
-            out.append(variable).append("\n");
-        }
-        return out;
+    public <T extends Appendable> T outputVariables(T out) {
+        return outputLines(out, variables);
     }
 
-    public StringBuilder outputTerminals(StringBuilder out) {
-        for (String terminal : terminals) {
-            out.append(terminal).append("\n");
-        }
-        return out;
+    public <T extends Appendable> T outputTerminals(T out) {
+        return outputLines(out, terminals);
     }
 
-    public StringBuilder outputFirstSets(StringBuilder out) {
-        firstSets.forEach((variable, firstSet)
-                -> out.append(variable).append(": ").append(firstSet).append("\n"));
-        return out;
+    public <T extends Appendable> T outputFirstSets(T out) {
+        return outputSets(out, firstSets);
+    }
+
+    public <T extends Appendable> T outputFollowSets(T out) {
+        return outputSets(out, followSets);
     }
 
-    public StringBuilder outputFollowSets(StringBuilder out) {
-        followSets.forEach((variable, followSet)
-                -> out.append(variable).append(": ").append(followSet).append("\n"));
+    protected static <T extends Appendable> T outputLines(T out, Collection<String> lines) {
+        try {
+            for (String line : lines) {
+                out.append(line).append("\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         return out;
     }
 
-    protected static boolean startsWithAny(String str, String[] prefixes) {
-        for (String prefix : prefixes) {
-            if (str.startsWith(prefix)) {
-                return true;
+    protected static <T extends Appendable> T outputSets(T out, Map<String, ?> sets) {
+        try {
+            for (Map.Entry<String, ?> set : sets.entrySet()) {
+                out.append(set.getKey()).append(": ").append(String.valueOf(set.getValue())).append("\n");
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return false;
+        return out;
     }
 
     public List<Rule> getRules() {
         return rules;
     }
 
-    public Set<Rule> getRulesByVar(String variable) {
-        Set<Rule> variableRules = new HashSet<>();
-        for (Rule rule : rules) {
-            if (rule.getVar().equals(variable)) {
-                variableRules.add(rule);
-            }
-        }
-        return variableRules;
+    public List<Rule> getRulesByVar(int varSymbol) {
+        return Collections.unmodifiableList(rulesByVar.get(varSymbol));
+    }
+
+    /* Return the number of the LR(0) item of a rule of this grammar with the
+     * dot at the given position. The numbers run from 0 to
+     * getLR0ItemCount() - 1.
+     */
+    public int getLR0ItemNumber(Rule rule, int dotPosition) {
+        return firstItemNumbers[rule.getIndex()] + dotPosition;
+    }
+
+    public int getLR0ItemCount() {
+        return firstItemNumbers[rules.size()];
     }
 
     public int findRuleIndex(Rule rule) {
-        for (int i = 0; i < rules.size(); i++) {
-            if (rules.get(i).equals(rule)) {
-                return i;
+        int index = rule.getIndex();
+        if (index >= 0 && index < rules.size() && rules.get(index) == rule) {
+            return index;
+        }
+        return ruleIndexes.getOrDefault(rule, -1);
+    }
+
+    /* Return the index of the rule of this grammar that is the same
+     * alternative as a rule of a previous grammar, or -1. Rules are equal by
+     * name, so of equal alternatives of a variable, the rule is the one with
+     * as many equal rules before it as the previous rule had.
+     */
+    public int findRuleIndex(Rule rule, Grammar previous) {
+        int index = findRuleIndex(rule);
+        if (index == -1 || previous.ruleIndexes.get(rule) == rule.getIndex()) {
+            return index;
+        }
+        int before = 0;
+        for (Rule previousRule : previous.getRulesByVar(rule.getVar())) {
+            if (previousRule.getIndex() < rule.getIndex() && previousRule.equals(rule)) {
+                before++;
+            }
+        }
+        for (Rule newRule : getRulesByVar(rule.getVar())) {
+            if (newRule.equals(rule) && before-- == 0) {
+                return newRule.getIndex();
             }
         }
         return -1;
     }
 
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /* The FIRST set of a symbol id, without epsilon. The set is shared:
+     * Digraph gives every symbol of a cycle the same BitSet, so it must not
+     * be modified. Clone it to change it.
+     */
+    public BitSet getFirstSymbols(int symbol) {
+        return firstSymbols[symbol];
+    }
+
+    /* The FOLLOW set of a variable id, shared like a FIRST set, so it must
+     * not be modified either.
+     */
+    public BitSet getFollowSymbols(int varSymbol) {
+        return followSymbols[varSymbol];
+    }
+
+    /* FIRST and nullable of the rest of every rule from every position. */
+    public SuffixFirstTable getSuffixFirstTable() {
+        return suffixFirsts;
+    }
+
+    public boolean isNullable(int symbol) {
+        return nullable[symbol];
+    }
+
     public Set<String> getVariables() {
         return variables;
     }
@@ -410,7 +791,46 @@ public class Grammar {
         return terminals;
     }
 
+    /* The body of every lexer rule by name, in the order of the grammar,
+     * which is the order of priority between rules that match the same
+     * text.
+     */
+    public Map<String, String> getLexerRules() {
+        return lexerRules;
+    }
+
+    public boolean isFragment(String lexerRule) {
+        return fragments.contains(lexerRule);
+    }
+
+    public boolean isSkipped(String lexerRule) {
+        return skippedTokens.contains(lexerRule);
+    }
+
+    public String getStartVariable() {
+        return startVariable;
+    }
+
+    /* The wall time in nanoseconds of the phases of reading the grammar:
+       PHASE_PARSE, PHASE_FIRST (with nullable symbols) and PHASE_FOLLOW.
+     */
+    public Map<String, Long> getPhaseNanos() {
+        return Collections.unmodifiableMap(phaseNanos);
+    }
+
+    /* The variables whose FIRST sets were computed rather than copied from
+     * a previous grammar, see findAffectedVariables, or null if there was
+     * no previous grammar.
+     */
+    public Set<String> getAffectedVariables() {
+        return affectedVariables;
+    }
+
     public Map<String, Set<String>> getFirstSets() {
         return firstSets;
     }
+
+    public Map<String, Set<String>> getFollowSets() {
+        return followSets;
+    }
 }
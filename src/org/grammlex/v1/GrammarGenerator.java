@@ -0,0 +1,179 @@
+package org.grammlex.v1;
+
+import java.util.*;
+
+/* GrammarGenerator writes random grammars in the format Grammar reads, for
+   tests and for studies of how the construction scales. The same seed and
+   settings always give the same grammar.
+
+   The settings are:
+
+   rules            the number of variables, r0 to rN, with r0 the start
+   fanOut           the most alternatives of a variable
+   depth            the number of levels the variables below r0 are
+                    spread over; the alternatives of a variable only use
+                    the variables of the next level, so depth is how deep
+                    rules nest
+   modifierDensity  the chance that a term gets a *, + or ? modifier
+   conflictRate     the chance that an alternative is ambiguous
+
+   Alternatives start with a keyword of their own, some are left
+   recursive, and a term with a modifier is followed by a separator of its
+   own, so that a parser can always tell what to do from the next token:
+   with a conflictRate of 0 the grammars are LR(1). An ambiguous
+   alternative is "v: v v", which gives the grammar a conflict when v is
+   used.
+
+   Every variable can be reached from r0: the last variable of a level
+   gets one more alternative with the variables of the next level that no
+   other alternative used.
+ */
+public class GrammarGenerator {
+    private static final String[] MODIFIERS = {"*", "+", "?"};
+    private static final int MAX_TERMS = 3;
+    private static final int TERMINALS = 8;
+    private static final double RECURSION_RATE = 0.2;
+    private static final double VARIABLE_RATE = 0.5;
+
+    private final long seed;
+    private int rules = 10;
+    private int fanOut = 3;
+    private int depth = 3;
+    private double modifierDensity = 0.2;
+    private double conflictRate = 0.0;
+
+    public GrammarGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public void setRules(int rules) {
+        if (rules < 1) {
+            throw new IllegalArgumentException("ERROR: Rule count must be at least 1: " + rules);
+        }
+        this.rules = rules;
+    }
+
+    public void setFanOut(int fanOut) {
+        if (fanOut < 1) {
+            throw new IllegalArgumentException("ERROR: Fan-out must be at least 1: " + fanOut);
+        }
+        this.fanOut = fanOut;
+    }
+
+    public void setDepth(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("ERROR: Depth must be at least 1: " + depth);
+        }
+        this.depth = depth;
+    }
+
+    public void setModifierDensity(double modifierDensity) {
+        this.modifierDensity = checkRate(modifierDensity);
+    }
+
+    public void setConflictRate(double conflictRate) {
+        this.conflictRate = checkRate(conflictRate);
+    }
+
+    private static double checkRate(double rate) {
+        if (!(rate >= 0.0 && rate <= 1.0)) {
+            throw new IllegalArgumentException("ERROR: Rate must be from 0 to 1: " + rate);
+        }
+        return rate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getRules() {
+        return rules;
+    }
+
+    public int getFanOut() {
+        return fanOut;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public double getModifierDensity() {
+        return modifierDensity;
+    }
+
+    public double getConflictRate() {
+        return conflictRate;
+    }
+
+    /* The level of each variable; r0 is alone on level 0, the others are
+       spread over levels 1 to depth and every level has a variable when
+       there are enough of them.
+     */
+    protected int getLevel(int variable) {
+        if (variable == 0) {
+            return 0;
+        }
+        return 1 + (int) ((long) (variable - 1) * Math.min(depth, rules - 1) / (rules - 1));
+    }
+
+    public StringBuilder generate(StringBuilder out) {
+        Random random = new Random(seed);
+        List<List<Integer>> levels = new ArrayList<>();
+        for (int variable = 0; variable < rules; variable++) {
+            int level = getLevel(variable);
+            while (levels.size() <= level) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(level).add(variable);
+        }
+        // The variables of each level that no rule uses yet, used first
+        List<Deque<Integer>> unused = new ArrayList<>();
+        for (List<Integer> level : levels) {
+            unused.add(new ArrayDeque<>(level));
+        }
+        int[] keywords = {0};
+        for (int variable = 0; variable < rules; variable++) {
+            int level = getLevel(variable);
+            out.append('r').append(variable).append(':');
+            int alternatives = 1 + random.nextInt(fanOut);
+            for (int alternative = 0; alternative < alternatives; alternative++) {
+                out.append(alternative == 0 ? " " : " | ");
+                if (random.nextDouble() < conflictRate) {
+                    out.append('r').append(variable).append(" r").append(variable);
+                    continue;
+                }
+                if (alternative > 0 && random.nextDouble() < RECURSION_RATE) {
+                    out.append('r').append(variable).append(' ');
+                }
+                out.append('K').append(keywords[0]++);
+                int terms = random.nextInt(MAX_TERMS + 1);
+                for (int term = 0; term < terms; term++) {
+                    out.append(' ');
+                    if (level + 1 < levels.size() && random.nextDouble() < VARIABLE_RATE) {
+                        Deque<Integer> next = unused.get(level + 1);
+                        List<Integer> nextLevel = levels.get(level + 1);
+                        int used = next.isEmpty() ? nextLevel.get(random.nextInt(nextLevel.size())) : next.pop();
+                        out.append('r').append(used);
+                    } else {
+                        out.append('T').append(random.nextInt(TERMINALS));
+                    }
+                    if (random.nextDouble() < modifierDensity) {
+                        out.append(MODIFIERS[random.nextInt(MODIFIERS.length)])
+                                .append(" S").append(keywords[0]++);
+                    }
+                }
+            }
+            // The last variable of a level uses what the level left unused
+            if (level + 1 < levels.size() && (variable + 1 == rules || getLevel(variable + 1) != level)
+                    && !unused.get(level + 1).isEmpty()) {
+                out.append(" | K").append(keywords[0]++);
+                for (int used : unused.get(level + 1)) {
+                    out.append(" r").append(used);
+                }
+            }
+            out.append(";\n");
+        }
+        return out;
+    }
+}
@@ -0,0 +1,343 @@
+package org.grammlex.v1;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* A GrammarReader splits the text of a grammar into the tokens of its
+   rules for Grammar, in one pass over the chars and without a regex: a
+   name, which may end in a modifier, a colon, a bar or a semicolon.
+   Between rules it skips comments, action blocks such as "@members {...}"
+   and header statements such as "parser grammar X;" or "options {...}".
+   The body of a lexer rule is read as one text, for LexerDfa.
+
+   The tokens are ranges of the text and no String is made for them,
+   except once for each distinct name: names are interned in a table of
+   their own, which a large generated grammar, using the same names over
+   and over, mostly hits. The text can be a CharBuffer decoded from a
+   memory-mapped file, see readFile, so that a grammar is never a String.
+ */
+public class GrammarReader {
+    public static final int END = 0;
+    public static final int NAME = 1;
+    public static final int COLON = 2;
+    public static final int BAR = 3;
+    public static final int SEMICOLON = 4;
+
+    private static final String[] HEADERS = {"grammar", "parser", "lexer", "options", "tokens", "channels", "import"};
+    private static final int INITIAL_NAMES = 1024;
+
+    private final CharSequence text;
+    private final int length;
+    private int pos;
+    private int tokenStart;
+    private int tokenEnd;
+    private int ruleStart;
+    private String[] names = new String[INITIAL_NAMES]; // open addressing
+    private int nameCount;
+
+    public GrammarReader(CharSequence text) {
+        this.text = text;
+        this.length = text.length();
+    }
+
+    /* Read a grammar file as UTF-8 from a memory mapping of it. */
+    public static CharBuffer readFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return StandardCharsets.UTF_8.decode(bytes);
+        }
+    }
+
+    /* Skip to the start of the next rule. Return false at the end of the
+       text.
+     */
+    public boolean nextRule() {
+        while (true) {
+            skipSpace();
+            if (pos >= length) {
+                return false;
+            }
+            if (text.charAt(pos) == '@') {
+                while (pos < length && text.charAt(pos) != '{') {
+                    pos++;
+                }
+                skipBlock();
+            } else if (isHeader()) {
+                skipStatement();
+            } else {
+                ruleStart = pos;
+                return true;
+            }
+        }
+    }
+
+    /* Read the next token of a rule and return its kind. */
+    public int next() {
+        skipSpace();
+        tokenStart = pos;
+        if (pos >= length) {
+            tokenEnd = pos;
+            return END;
+        }
+        char c = text.charAt(pos);
+        if (c == ':' || c == '|' || c == ';') {
+            pos++;
+            tokenEnd = pos;
+            return c == ':' ? COLON : c == '|' ? BAR : SEMICOLON;
+        }
+        while (pos < length && !isNameEnd(pos)) {
+            pos++;
+        }
+        tokenEnd = pos;
+        return NAME;
+    }
+
+    /* The name of the last NAME token, with its modifier. */
+    public String getName() {
+        return intern(tokenStart, tokenEnd);
+    }
+
+    /* The modifier of the last NAME token, '*', '+' or '?', or 0. */
+    public char getModifier() {
+        if (tokenEnd - tokenStart < 2) {
+            return 0;
+        }
+        char c = text.charAt(tokenEnd - 1);
+        return c == '*' || c == '+' || c == '?' ? c : 0;
+    }
+
+    /* The name of the last NAME token without its modifier. */
+    public String getBaseName() {
+        return intern(tokenStart, getModifier() == 0 ? tokenEnd : tokenEnd - 1);
+    }
+
+    /* Return whether the rest of the rule has the syntax of a lexer rule:
+       a literal, a set, a negation or a command. Nothing is read.
+     */
+    public boolean hasLexerBody() {
+        for (int i = pos; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == ';') {
+                return false;
+            }
+            if (c == '\'' || c == '[' || c == '~'
+                    || (c == '-' && i + 1 < length && text.charAt(i + 1) == '>')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Read the rest of a lexer rule and its semicolon and return the body,
+       trimmed, without comments and with its lines joined by spaces.
+       Return null if the text ends first.
+     */
+    public String readBody() {
+        StringBuilder body = new StringBuilder();
+        boolean inLiteral = false;
+        boolean inSet = false;
+        while (pos < length) {
+            char c = text.charAt(pos++);
+            if (c == '\n' || c == '\r') {
+                // A line break separates names, as a space does
+                if (!inLiteral && !inSet) {
+                    body.append(' ');
+                }
+                continue;
+            }
+            if (!inLiteral && !inSet) {
+                if (c == ';') {
+                    return body.toString().trim();
+                }
+                if (c == '/' && skipComment(pos - 1)) {
+                    continue;
+                }
+            }
+            body.append(c);
+            if (c == '\\' && pos < length) {
+                body.append(text.charAt(pos++));
+            } else if (c == '\'' && !inSet) {
+                inLiteral = !inLiteral;
+            } else if (c == '[' && !inLiteral) {
+                inSet = true;
+            } else if (c == ']' && !inLiteral) {
+                inSet = false;
+            }
+        }
+        return null;
+    }
+
+    /* The text of the current rule, up to its semicolon, for an error. */
+    public String getRuleText() {
+        int end = ruleStart;
+        while (end < length && text.charAt(end) != ';') {
+            end++;
+        }
+        return text.subSequence(ruleStart, end).toString().trim();
+    }
+
+    /* The number of distinct names read so far. */
+    public int getNameCount() {
+        return nameCount;
+    }
+
+    /* Return the String of the chars from start to end, the same String
+       for the same chars.
+     */
+    protected String intern(int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        int mask = names.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (names[slot] != null) {
+            if (matches(names[slot], start, end)) {
+                return names[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String name = text.subSequence(start, end).toString();
+        names[slot] = name;
+        nameCount++;
+        if (nameCount * 2 > names.length) {
+            rehash();
+        }
+        return name;
+    }
+
+    private boolean matches(String name, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        String[] old = names;
+        names = new String[old.length * 2];
+        int mask = names.length - 1;
+        for (String name : old) {
+            if (name != null) {
+                int hash = name.hashCode();
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = name;
+            }
+        }
+    }
+
+    protected static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+
+    /* Return whether the char at i ends a name: a space, a colon, a bar,
+       a semicolon or the start of a comment.
+     */
+    protected boolean isNameEnd(int i) {
+        char c = text.charAt(i);
+        if (isSpace(c) || c == ':' || c == '|' || c == ';') {
+            return true;
+        }
+        if (c == '/' && i + 1 < length) {
+            char next = text.charAt(i + 1);
+            return next == '/' || next == '*';
+        }
+        return false;
+    }
+
+    /* Skip spaces and comments. */
+    protected void skipSpace() {
+        while (pos < length) {
+            char c = text.charAt(pos);
+            if (isSpace(c)) {
+                pos++;
+            } else if (c != '/' || !skipComment(pos)) {
+                return;
+            }
+        }
+    }
+
+    /* Skip the comment that starts at i, if one does, and return whether
+       one did.
+     */
+    protected boolean skipComment(int i) {
+        if (i + 1 >= length || text.charAt(i) != '/') {
+            return false;
+        }
+        char next = text.charAt(i + 1);
+        if (next == '/') {
+            pos = i + 2;
+            while (pos < length && text.charAt(pos) != '\n') {
+                pos++;
+            }
+            return true;
+        }
+        if (next == '*') {
+            pos = i + 2;
+            while (pos < length && !(text.charAt(pos) == '*' && pos + 1 < length && text.charAt(pos + 1) == '/')) {
+                pos++;
+            }
+            pos = Math.min(pos + 2, length);
+            return true;
+        }
+        return false;
+    }
+
+    /* Return whether a header statement starts at pos: a header keyword
+       that is not the name of a rule.
+     */
+    protected boolean isHeader() {
+        for (String header : HEADERS) {
+            int end = pos + header.length();
+            if (end < length && matches(header, pos, end) && isNameEnd(end)) {
+                int i = end;
+                while (i < length && isSpace(text.charAt(i))) {
+                    i++;
+                }
+                return i < length && text.charAt(i) != ':';
+            }
+        }
+        return false;
+    }
+
+    /* Skip a header statement, which ends with a semicolon or a block. */
+    protected void skipStatement() {
+        while (pos < length) {
+            char c = text.charAt(pos);
+            if (c == '{') {
+                skipBlock();
+                return;
+            }
+            pos++;
+            if (c == ';') {
+                return;
+            }
+        }
+    }
+
+    /* Skip the block that starts at pos, with the blocks inside it. */
+    protected void skipBlock() {
+        int depth = 0;
+        while (pos < length) {
+            char c = text.charAt(pos++);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return;
+            }
+        }
+    }
+}
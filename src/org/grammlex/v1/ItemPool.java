@@ -0,0 +1,69 @@
+package org.grammlex.v1;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* An ItemPool hash-conses the LR1Items of the states of a grammar and
+   their lookahead sets: equal items are one LR1Item and equal lookaheads
+   one BitSet, shared by every state that has them. The closure items of a
+   large canonical LR(1) automaton are the same few rules with the same few
+   lookaheads in state after state, so a state mostly holds references to
+   items of the pool.
+
+   What is in the pool is shared, so it must never be changed. Interning
+   a set the pool does not have yet copies it, so the caller may go on
+   changing its own. The pool holds on to everything ever interned, so it
+   is made for one build, which the threads of a parallel build share,
+   and dropped when the build is done; see LR1Builder.
+ */
+public class ItemPool {
+    private final ConcurrentHashMap<BitSet, BitSet> lookaheads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<LR1Item, LR1Item> items = new ConcurrentHashMap<>();
+
+    /* Return the shared set equal to the given one. */
+    public BitSet intern(BitSet lookahead) {
+        BitSet shared = lookaheads.get(lookahead);
+        if (shared == null) {
+            BitSet copy = (BitSet) lookahead.clone();
+            shared = lookaheads.putIfAbsent(copy, copy);
+            if (shared == null) {
+                shared = copy;
+            }
+        }
+        return shared;
+    }
+
+    /* Return the shared item equal to the given one, whose lookahead is a
+       shared set.
+     */
+    public LR1Item intern(LR1Item item) {
+        LR1Item shared = items.get(item);
+        if (shared == null) {
+            BitSet lookahead = intern(item.getLookahead());
+            LR1Item candidate = lookahead == item.getLookahead()
+                    ? item : new LR1Item(item.getRule(), item.getDotPosition(), lookahead);
+            shared = items.putIfAbsent(candidate, candidate);
+            if (shared == null) {
+                shared = candidate;
+            }
+        }
+        return shared;
+    }
+
+    /* Return the shared item of a rule with the dot at a position and a
+       lookahead.
+     */
+    public LR1Item intern(Rule rule, int dotPosition, BitSet lookahead) {
+        return intern(new LR1Item(rule, dotPosition, lookahead));
+    }
+
+    /* The number of distinct lookahead sets in the pool. */
+    public int getLookaheadCount() {
+        return lookaheads.size();
+    }
+
+    /* The number of distinct items in the pool. */
+    public int getItemCount() {
+        return items.size();
+    }
+}
@@ -0,0 +1,164 @@
+package org.grammlex.v1;
+
+import java.util.*;
+
+/* LALR1Lookaheads computes the LALR(1) lookahead of every item of an LR(0)
+   automaton using the relations of DeRemer and Pennello,
+   "Efficient Computation of LALR(1) Look-Ahead Sets" (TOPLAS, 1982).
+
+   Everything is computed for the nonterminal transitions (p, A) of the
+   automaton, which are numbered here:
+
+   DR(p, A)      The terminals that can be shifted from goto(p, A).
+   reads         (p, A) reads (r, C) if r = goto(p, A) and C is nullable.
+   Read(p, A)    DR(p, A) plus Read of everything (p, A) reads.
+   includes      (p, A) includes (p', B) if B -> x A y, y is nullable and
+                 p' reaches p by shifting x.
+   Follow(p, A)  Read(p, A) plus Follow of everything (p, A) includes.
+
+   An item A -> x • y in state q then gets the union of Follow(p, A) for
+   every state p that reaches q by shifting x. DeRemer and Pennello call
+   this the lookback relation and only use it for reduce items, but the
+   other items get their lookahead the same way so that the states print
+   like LR(1) states.
+
+   Both unions are computed with Digraph, which visits each transition
+   once and gives every member of a cycle the same set.
+ */
+public class LALR1Lookaheads {
+    private final Grammar grammar;
+    private final List<LR1State> states;
+    private final List<Integer> transitionStates = new ArrayList<>();
+    private final List<Integer> transitionVars = new ArrayList<>();
+    // Per state, the transition number of each variable symbol or -1
+    private final List<int[]> transitionNums = new ArrayList<>();
+    private final List<Map<LR1Item, BitSet>> lookaheads = new ArrayList<>();
+
+    public LALR1Lookaheads(Grammar grammar, List<LR1State> states) {
+        this.grammar = grammar;
+        this.states = states;
+        numberTransitions();
+        List<BitSet> read = Digraph.compute(computeDirectReads(), computeReads());
+        List<BitSet> follow = Digraph.compute(read, computeIncludes());
+        computeItemLookaheads(follow);
+    }
+
+    /* Return a copy of the lookahead of an LR(0) item in the given state. */
+    public BitSet getLookahead(int stateNum, LR1Item item) {
+        BitSet lookahead = lookaheads.get(stateNum).get(item);
+        if (lookahead == null) {
+            return new BitSet();
+        }
+        return (BitSet) lookahead.clone();
+    }
+
+    protected void numberTransitions() {
+        SymbolTable symbols = grammar.getSymbols();
+        for (LR1State state : states) {
+            int[] nums = new int[symbols.size()];
+            Arrays.fill(nums, -1);
+            for (int i = 0; i < state.getTransitionCount(); i++) {
+                int symbol = state.getTransitionSymbol(i);
+                if (symbols.isVariable(symbol)) {
+                    nums[symbol] = transitionStates.size();
+                    transitionStates.add(state.getId());
+                    transitionVars.add(symbol);
+                }
+            }
+            transitionNums.add(nums);
+        }
+    }
+
+    protected int gotoState(int stateNum, int symbol) {
+        return states.get(stateNum).getTransition(symbol);
+    }
+
+    protected List<BitSet> computeDirectReads() {
+        SymbolTable symbols = grammar.getSymbols();
+        int startVar = symbols.getId(grammar.getStartVariable());
+        List<BitSet> directReads = new ArrayList<>();
+        for (int x = 0; x < transitionStates.size(); x++) {
+            BitSet terminals = new BitSet();
+            LR1State target = states.get(gotoState(transitionStates.get(x), transitionVars.get(x)));
+            for (int i = 0; i < target.getTransitionCount(); i++) {
+                if (symbols.isTerminal(target.getTransitionSymbol(i))) {
+                    terminals.set(target.getTransitionSymbol(i));
+                }
+            }
+            // S' -> S is accepted at the end of input.
+            if (transitionStates.get(x) == 0 && transitionVars.get(x) == startVar) {
+                terminals.set(symbols.getEndSymbol());
+            }
+            directReads.add(terminals);
+        }
+        return directReads;
+    }
+
+    protected List<List<Integer>> computeReads() {
+        List<List<Integer>> reads = new ArrayList<>();
+        for (int x = 0; x < transitionStates.size(); x++) {
+            List<Integer> edges = new ArrayList<>();
+            int[] nums = transitionNums.get(gotoState(transitionStates.get(x), transitionVars.get(x)));
+            for (int symbol = 0; symbol < nums.length; symbol++) {
+                if (nums[symbol] != -1 && grammar.isNullable(symbol)) {
+                    edges.add(nums[symbol]);
+                }
+            }
+            reads.add(edges);
+        }
+        return reads;
+    }
+
+    protected List<List<Integer>> computeIncludes() {
+        SymbolTable symbols = grammar.getSymbols();
+        List<List<Integer>> includes = new ArrayList<>();
+        for (int x = 0; x < transitionStates.size(); x++) {
+            includes.add(new ArrayList<>());
+        }
+        for (int x = 0; x < transitionStates.size(); x++) {
+            for (Rule rule : grammar.getRulesByVar(transitionVars.get(x))) {
+                int[] ruleSymbols = rule.getSymbols();
+                // Walk the rule from the state where it starts
+                int stateNum = transitionStates.get(x);
+                for (int i = 0; i < ruleSymbols.length; i++) {
+                    if (symbols.isVariable(ruleSymbols[i])
+                            && grammar.getSuffixFirstTable().isNullable(rule, i + 1)) {
+                        includes.get(transitionNums.get(stateNum)[ruleSymbols[i]]).add(x);
+                    }
+                    stateNum = gotoState(stateNum, ruleSymbols[i]);
+                }
+            }
+        }
+        return includes;
+    }
+
+    protected void computeItemLookaheads(List<BitSet> follow) {
+        for (int stateNum = 0; stateNum < states.size(); stateNum++) {
+            lookaheads.add(new HashMap<>());
+        }
+        BitSet end = new BitSet();
+        end.set(grammar.getSymbols().getEndSymbol());
+        addRuleLookaheads(0, grammar.getRules().get(0), end);
+        for (int x = 0; x < transitionStates.size(); x++) {
+            for (Rule rule : grammar.getRulesByVar(transitionVars.get(x))) {
+                addRuleLookaheads(transitionStates.get(x), rule, follow.get(x));
+            }
+        }
+    }
+
+    /* Add the lookahead to every item of the rule along its path of states. */
+    protected void addRuleLookaheads(int stateNum, Rule rule, BitSet lookahead) {
+        int[] ruleSymbols = rule.getSymbols();
+        for (int dot = 0; dot <= ruleSymbols.length; dot++) {
+            addItemLookahead(stateNum, rule, dot, lookahead);
+            if (dot < ruleSymbols.length) {
+                stateNum = gotoState(stateNum, ruleSymbols[dot]);
+            }
+        }
+    }
+
+    protected void addItemLookahead(int stateNum, Rule rule, int dot, BitSet lookahead) {
+        LR1Item item = new LR1Item(rule, dot, new BitSet());
+        lookaheads.get(stateNum).computeIfAbsent(item, k -> new BitSet()).or(lookahead);
+    }
+}
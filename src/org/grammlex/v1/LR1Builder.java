@@ -1,16 +1,265 @@
 package org.grammlex.v1;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
+/* LR1Builder creates the states of an LR automaton for a grammar and the
+   action and goto tables from them.
+
+   The construction mode selects the member of the LR family:
+   MODE_LR1    canonical LR(1), the default.
+   MODE_LALR1  LALR(1), the LR(0) automaton with lookaheads computed by
+               LALR1Lookaheads. It has far fewer states than canonical LR(1)
+               but may have reduce-reduce conflicts that LR(1) would not.
+   MODE_SLR1   SLR(1), the LR(0) automaton with the FOLLOW set of each
+               variable as lookahead. It is the weakest of the three.
+   MODE_PAGER  minimal LR(1) with Pager's weak compatibility test. It has
+               the power of canonical LR(1) and usually the size of LALR(1).
+
+   With more than one thread, the LR(1) and LR(0) automata are built in
+   parallel, see createStatesInParallel. Pager's construction merges states
+   as it goes and is always sequential.
+
+   The builder times its phases and counts what the construction did, so
+   that outputStats can show where a slow build spends its time and which
+   variables make the most states.
+
+   After an edit of the grammar, the builder can reuse the closures of the
+   states of the build before the edit, see setPreviousBuild. Closure is
+   most of the cost of a build, and the states, their numbers and the
+   tables come out exactly as they would without the previous build.
+
+   The states of a build share their equal items and lookaheads through an
+   ItemPool. The pool only lasts for the build: the items stay with the
+   states, and those of the kernels and states the build dropped go.
+
+   A BuildListener is told of every state and transition the build makes.
+   The listener of createStates() ignores them, so a build without a trace
+   formats nothing; createStates(Appendable) writes them as text.
+ */
 public class LR1Builder {
+    public static final String MODE_LR1 = "lr1";
+    public static final String MODE_LALR1 = "lalr";
+    public static final String MODE_SLR1 = "slr";
+    public static final String MODE_PAGER = "pager";
+    public static final String PHASE_STATES = "states";
+    public static final String PHASE_LOOKAHEADS = "lookaheads";
+    public static final String PHASE_GOTO = "goto";
+    public static final String PHASE_ACTION = "action";
+    public static final int TOP_VARIABLES = 10;
+    private static final BitSet NO_LOOKAHEAD = new BitSet();
+
     private final Grammar grammar;
-    private final ArrayList<LR1State> states;
-    protected final List<HashMap<String, Action>> actionTable= new ArrayList<>();
-    protected final List<HashMap<String, Integer>> gotoTable = new ArrayList<>();
+    private final StateRegistry states;
+    private final String mode;
+    private boolean computeLookahead = true;
+    private int threads = 1;
+    private final Set<Set<LR1Item>> mergedKernels = new HashSet<>();
+    private int splitStates;
+    private int duplicateKernels;
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private LR1Builder previous;
+    private Set<String> affectedVariables;
+    private Map<Set<LR1Item>, LR1State> previousByCore; // for the LR(0) modes
+    private final AtomicInteger reusedStates = new AtomicInteger();
+    private ItemPool itemPool = new ItemPool(); // shared items of the states of a build
+    // Rows are indexed by state and columns by symbol id
+    protected final List<Action[]> actionTable = new ArrayList<>();
+    protected final List<int[]> gotoTable = new ArrayList<>();
 
     public LR1Builder(Grammar grammar) {
-        states = new ArrayList<>();
+        this(grammar, MODE_LR1);
+    }
+
+    public LR1Builder(Grammar grammar, String mode) {
+        if (!MODE_LR1.equals(mode) && !MODE_LALR1.equals(mode)
+                && !MODE_SLR1.equals(mode) && !MODE_PAGER.equals(mode)) {
+            throw new IllegalArgumentException("ERROR: Unknown construction mode: " + mode);
+        }
+        states = new StateRegistry();
         this.grammar = grammar;
+        this.mode = mode;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /* Set the number of threads that build the states. */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("ERROR: Thread count must be at least 1: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /* Reuse the closures of a build of the grammar before an edit by the
+       next createStates. The previous build must have the same mode. A
+       state of the previous build is reused for a kernel that is the same
+       by name when none of its items uses a variable that the edit
+       affected, see Grammar.findAffectedVariables, since its closure would
+       then come out the same.
+     */
+    public void setPreviousBuild(LR1Builder previous) {
+        if (!previous.mode.equals(mode)) {
+            throw new IllegalArgumentException("ERROR: The previous build has another mode: " + previous.mode);
+        }
+        this.previous = previous;
+    }
+
+    /* The number of states whose closure was reused from a previous build. */
+    public int getReusedStates() {
+        return reusedStates.get();
+    }
+
+    /* The pool the states of a build share their items through. It is a new,
+       empty pool once the build is done.
+     */
+    protected ItemPool getItemPool() {
+        return itemPool;
+    }
+
+    public Grammar getGrammar() {
+        return grammar;
+    }
+
+    /* The name of the grammar class the mode accepts, such as LALR(1). */
+    public String getModeName() {
+        switch (mode) {
+            case MODE_LALR1:
+                return "LALR(1)";
+            case MODE_SLR1:
+                return "SLR(1)";
+            default:
+                return "LR(1)";
+        }
+    }
+
+    /* Create the states and tables for the construction mode. Return false
+       if the grammar has a conflict in that mode.
+     */
+    public boolean createStates() {
+        return createStates(BuildListener.NONE);
+    }
+
+    /* Create the states and tables and write the trace of the build to out,
+       see TextBuildListener.
+     */
+    public boolean createStates(Appendable out) {
+        return createStates(new TextBuildListener(grammar, out));
+    }
+
+    /* Create the states and tables and tell the listener what the build
+       does.
+     */
+    public boolean createStates(BuildListener listener) {
+        if (previous != null) {
+            prepareReuse();
+        }
+        try {
+            switch (mode) {
+                case MODE_LALR1:
+                    return createStatesForLALR1(listener);
+                case MODE_SLR1:
+                    return createStatesForSLR1(listener);
+                case MODE_PAGER:
+                    return createStatesForPager(listener);
+                default:
+                    return createStatesForCLR1(listener);
+            }
+        } finally {
+            // The previous build is not kept alive by this one
+            previous = null;
+            previousByCore = null;
+            // Nor are the items of the build that no state kept
+            itemPool = new ItemPool();
+        }
+    }
+
+    /* Find what the edit affected. The LALR(1) and SLR(1) modes build LR(0)
+       kernels, but the states of their previous build have lookaheads, so
+       those are found by their LR(0) core.
+     */
+    protected void prepareReuse() {
+        affectedVariables = grammar.findAffectedVariables(previous.grammar);
+        if (MODE_LALR1.equals(mode) || MODE_SLR1.equals(mode)) {
+            previousByCore = new HashMap<>();
+            for (LR1State state : previous.getStates()) {
+                previousByCore.put(lr0Core(state.getKernel()), state);
+            }
+        }
+    }
+
+    /* Create the state of a kernel, with the closure of the same state of
+       the previous build if the edit cannot have changed it.
+     */
+    protected LR1State createState(Set<LR1Item> kernel) {
+        if (previous != null) {
+            LR1State previousState = findPreviousState(kernel);
+            List<LR1Item> items = previousState == null ? null : reuseItems(kernel, previousState);
+            if (items != null) {
+                reusedStates.incrementAndGet();
+                return new LR1State(grammar, kernel, items, computeLookahead);
+            }
+        }
+        return new LR1State(grammar, kernel, itemPool, computeLookahead);
+    }
+
+    /* Find the state of the previous build with the kernel. Rules are equal
+       by name, but lookaheads are symbol ids of the previous grammar.
+     */
+    protected LR1State findPreviousState(Set<LR1Item> kernel) {
+        if (previousByCore != null) {
+            return previousByCore.get(kernel);
+        }
+        Set<LR1Item> previousKernel = new HashSet<>();
+        for (LR1Item item : kernel) {
+            BitSet lookahead = previous.grammar.translate(item.getLookahead(), grammar.getSymbols());
+            if (lookahead.cardinality() != item.getLookahead().cardinality()) {
+                return null;
+            }
+            previousKernel.add(new LR1Item(item.getRule(), item.getDotPosition(), lookahead));
+        }
+        return previous.states.find(previousKernel);
+    }
+
+    /* Return the items of a previous state as items of this grammar, or null
+       if an item uses an affected variable or the kernel is in another
+       order, which would put the closure items in another order too.
+     */
+    protected List<LR1Item> reuseItems(Set<LR1Item> kernel, LR1State previousState) {
+        List<LR1Item> items = new ArrayList<>();
+        Iterator<LR1Item> kernelItems = kernel.iterator();
+        for (LR1Item item : previousState.getItems()) {
+            for (String term : item.getTerms()) {
+                if (affectedVariables.contains(term)) {
+                    return null;
+                }
+            }
+            int index = grammar.findRuleIndex(item.getRule(), previous.grammar);
+            if (index == -1) {
+                return null;
+            }
+            BitSet lookahead = computeLookahead
+                    ? grammar.translate(item.getLookahead(), previous.grammar.getSymbols()) : new BitSet();
+            LR1Item newItem = itemPool.intern(grammar.getRules().get(index),
+                    item.getDotPosition(), lookahead);
+            if (kernelItems.hasNext() && !kernelItems.next().equals(newItem)) {
+                return null;
+            }
+            items.add(newItem);
+        }
+        return items;
     }
 
     /* Create the canonical LR(1) table. "Canonical" means the original,
@@ -18,161 +267,623 @@ public class LR1Builder {
     from the "LR family".
     https://en.wikipedia.org/wiki/Canonical_LR_parser
      */
-    protected boolean createStatesForCLR1(StringBuilder out) {
-        Rule startRule = grammar.getRules().get(0);
-        Set<String> startLookahead = new HashSet<>();
-        startLookahead.add("$");
+    protected boolean createStatesForCLR1(BuildListener listener) {
+        computeLookahead = true;
+        long start = System.nanoTime();
+        createAutomaton(listener);
+        return createTables(recordPhase(PHASE_STATES, start));
+    }
 
-        LR1Item firstItem = new LR1Item(startRule.getVar(), startRule.getTerms(), 0, startLookahead);
+    /* Create the LALR(1) table from the LR(0) automaton. The lookaheads are
+    computed with the relations of DeRemer and Pennello instead of by
+    merging the states of the canonical LR(1) automaton.
+    https://en.wikipedia.org/wiki/LALR_parser
+     */
+    protected boolean createStatesForLALR1(BuildListener listener) {
+        computeLookahead = false;
+        long start = System.nanoTime();
+        createAutomaton(listener);
+        start = recordPhase(PHASE_STATES, start);
+        LALR1Lookaheads lookaheads = new LALR1Lookaheads(grammar, states.getStates());
+        for (LR1State state : states.getStates()) {
+            state.setLookaheads(itemPool, item -> lookaheads.getLookahead(state.getId(), item));
+        }
+        states.reindex();
+        return createTables(recordPhase(PHASE_LOOKAHEADS, start));
+    }
 
-        out.append("\nCreating initial state from item: ").append(firstItem).append("\n");
-        Set<LR1Item> start = new HashSet<>();
-        start.add(firstItem);
-        LR1State startState = new LR1State(grammar, start);
-        states.add(startState);
-        out.append("    state after closure:\n");
-        for (LR1Item item : startState.getItems()) {
-            out.append("        item: ").append(item).append("\n");
+    /* Create the SLR(1) table from the LR(0) automaton. Every item of a
+    variable gets the FOLLOW set of the variable as its lookahead.
+    https://en.wikipedia.org/wiki/Simple_LR_parser
+     */
+    protected boolean createStatesForSLR1(BuildListener listener) {
+        computeLookahead = false;
+        long start = System.nanoTime();
+        createAutomaton(listener);
+        start = recordPhase(PHASE_STATES, start);
+        for (LR1State state : states.getStates()) {
+            state.setLookaheads(itemPool, item ->
+                    (BitSet) grammar.getFollowSymbols(item.getRule().getVarSymbol()).clone());
         }
-        out.append("\n");
+        states.reindex();
+        return createTables(recordPhase(PHASE_LOOKAHEADS, start));
+    }
 
-        /* go through all states to process */
-        for (int stateNum = 0; stateNum < states.size(); stateNum++) {
-            createStatesFromState(states.get(stateNum), stateNum, out);
+    /* Create a minimal LR(1) table with the weak compatibility test of Pager,
+    "A Practical General Method for Constructing LR(k) Parsers" (1977).
+    States are created as for canonical LR(1), except that a new kernel is
+    merged into an existing state with the same LR(0) core when the merge
+    cannot add a conflict that neither of them has on its own. States are
+    only split where merging would add a conflict. A merge adds lookaheads
+    to the existing state, so that state is processed again to carry the
+    new lookaheads on to its successors.
+     */
+    protected boolean createStatesForPager(BuildListener listener) {
+        computeLookahead = true;
+        mergedKernels.clear();
+        splitStates = 0;
+        long start = System.nanoTime();
+        createStartState(listener);
+
+        Map<Set<LR1Item>, List<Integer>> statesByCore = new HashMap<>();
+        statesByCore.computeIfAbsent(lr0Core(states.get(0).getKernel()),
+                k -> new ArrayList<>()).add(0);
+        Deque<Integer> pending = new ArrayDeque<>();
+        Set<Integer> pendingSet = new HashSet<>();
+        pending.add(0);
+        pendingSet.add(0);
+        while (!pending.isEmpty()) {
+            int stateNum = pending.poll();
+            pendingSet.remove(stateNum);
+            LR1State state = states.get(stateNum);
+            int[] nextSymbols = getNextSymbols(state);
+            listener.processState(stateNum, nextSymbols.length);
+            for (int symbol : nextSymbols) {
+                int changedState = createMergedStateForTerm(state, stateNum, symbol, statesByCore, listener);
+                if (changedState != -1 && pendingSet.add(changedState)) {
+                    pending.add(changedState);
+                }
+            }
+            listener.stateProcessed(stateNum);
         }
+        int removed = states.removeUnreachable();
+        listener.minimalStates(states.getStates(), mergedKernels.size(), splitStates, removed);
+        return createTables(recordPhase(PHASE_STATES, start));
+    }
 
+    /* Create the goto and action tables from the states, timing each. */
+    protected boolean createTables(long start) {
         createGotoTable();
-        return createActionTable();
+        start = recordPhase(PHASE_GOTO, start);
+        boolean created = createActionTable();
+        recordPhase(PHASE_ACTION, start);
+        return created;
+    }
+
+    /* Write the text of a step to out and empty it, so that the text of a
+       large output is never held in memory as a whole.
+     */
+    protected static void flush(StringBuilder trace, Appendable out) {
+        try {
+            out.append(trace);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        trace.setLength(0);
     }
 
-    public void createStatesFromState(LR1State state, int stateNum, StringBuilder out) {
-        out.append("Processing transitions for state ").append(stateNum).append("\n");
-        Set<String> stringWithDot = new HashSet<>();
+    /* Record the time since start as the time of a phase and return now. */
+    protected long recordPhase(String phase, long start) {
+        long now = System.nanoTime();
+        phaseNanos.put(phase, now - start);
+        return now;
+    }
 
-        /* go through all items in state looking for next terms */
-        for (LR1Item item : state.getItems()) {
-            if (item.getNextTerm() != null) {
-                stringWithDot.add(item.getNextTerm());
+    /* Create or find the state for a transition from state on symbol. Return
+       the number of a state that is new or has new lookaheads and must be
+       processed, else -1.
+     */
+    protected int createMergedStateForTerm(LR1State state, int stateNum, int symbol,
+                                           Map<Set<LR1Item>, List<Integer>> statesByCore,
+                                           BuildListener listener) {
+        Set<LR1Item> nextStateItems = createNextStateItems(state, symbol);
+
+        List<Integer> sameCore = statesByCore.computeIfAbsent(lr0Core(nextStateItems),
+                k -> new ArrayList<>());
+        for (int candidateNum : sameCore) {
+            LR1State candidate = states.get(candidateNum);
+            if (!isWeaklyCompatible(candidate.getKernel(), nextStateItems)) {
+                continue;
+            }
+            Set<LR1Item> mergedKernel = mergeKernels(candidate.getKernel(), nextStateItems);
+            state.setTransition(symbol, candidateNum);
+            if (!nextStateItems.equals(candidate.getKernel())) {
+                mergedKernels.add(nextStateItems);
             }
+            if (mergedKernel.equals(candidate.getKernel())) {
+                duplicateKernels++;
+                listener.transition(stateNum, symbol, nextStateItems, null, candidateNum,
+                        BuildListener.TO_EXISTING, -1);
+                return -1;
+            }
+            LR1State mergedState = createState(mergedKernel);
+            states.replace(candidateNum, mergedState);
+            listener.transition(stateNum, symbol, nextStateItems, mergedState, candidateNum,
+                    BuildListener.TO_MERGED, -1);
+            return candidateNum;
         }
-        if (stringWithDot.isEmpty()) {
-            out.append("   No new states. All terms are reduces.\n");
+
+        LR1State nextState = createState(nextStateItems);
+        int nextStateNum = states.add(nextState);
+        state.setTransition(symbol, nextStateNum);
+        int splitFrom = -1;
+        if (!sameCore.isEmpty()) {
+            splitStates++;
+            splitFrom = sameCore.get(0);
         }
-        List<String> stringWithDotList = new ArrayList<>(stringWithDot);
-        Collections.sort(stringWithDotList);
-        /* for each unique next term, build transition states */
-        for (String term : stringWithDotList) {
-            createNextStateForTerm(state, stateNum, term, out);
+        listener.transition(stateNum, symbol, nextStateItems, nextState, nextStateNum,
+                BuildListener.TO_NEW, splitFrom);
+        sameCore.add(nextStateNum);
+        return nextStateNum;
+    }
+
+    /* Pager's weak compatibility test. Two kernels with the same core can be
+       merged unless, for some pair of items i and j, a lookahead of i in one
+       kernel is a lookahead of j in the other, while i and j share no
+       lookahead within either kernel. Only then could the merge make i and j
+       conflict where neither kernel did on its own.
+     */
+    protected static boolean isWeaklyCompatible(Set<LR1Item> kernel1, Set<LR1Item> kernel2) {
+        Map<LR1Item, BitSet> lookaheads2 = lookaheadsByCore(kernel2);
+        List<BitSet> list1 = new ArrayList<>();
+        List<BitSet> list2 = new ArrayList<>();
+        for (Map.Entry<LR1Item, BitSet> entry : lookaheadsByCore(kernel1).entrySet()) {
+            list1.add(entry.getValue());
+            list2.add(lookaheads2.get(entry.getKey()));
+        }
+        for (int i = 0; i < list1.size(); i++) {
+            for (int j = i + 1; j < list1.size(); j++) {
+                if ((list1.get(i).intersects(list2.get(j)) || list1.get(j).intersects(list2.get(i)))
+                        && !list1.get(i).intersects(list1.get(j))
+                        && !list2.get(i).intersects(list2.get(j))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /* Merge the lookaheads of two kernels with the same core. */
+    protected static Set<LR1Item> mergeKernels(Set<LR1Item> kernel1, Set<LR1Item> kernel2) {
+        Map<LR1Item, BitSet> lookaheads = lookaheadsByCore(kernel1);
+        for (LR1Item item : kernel2) {
+            lookaheads.get(lr0Item(item)).or(item.getLookahead());
+        }
+        Set<LR1Item> merged = new HashSet<>();
+        lookaheads.forEach((core, lookahead) -> merged.add(new LR1Item(core.getRule(),
+                core.getDotPosition(), lookahead)));
+        return merged;
+    }
+
+    protected static Map<LR1Item, BitSet> lookaheadsByCore(Set<LR1Item> kernel) {
+        Map<LR1Item, BitSet> lookaheads = new HashMap<>();
+        for (LR1Item item : kernel) {
+            lookaheads.put(lr0Item(item), (BitSet) item.getLookahead().clone());
+        }
+        return lookaheads;
+    }
+
+    /* The LR(0) core of a kernel: its items without lookaheads. */
+    protected static Set<LR1Item> lr0Core(Set<LR1Item> kernel) {
+        Set<LR1Item> core = new HashSet<>();
+        for (LR1Item item : kernel) {
+            core.add(lr0Item(item));
+        }
+        return core;
+    }
+
+    /* The item without its lookahead. The empty lookahead of every such
+       item is one set, which is never changed.
+     */
+    protected static LR1Item lr0Item(LR1Item item) {
+        return new LR1Item(item.getRule(), item.getDotPosition(), NO_LOOKAHEAD);
+    }
+
+    /* The number of distinct kernels that were merged into a state with a
+       different kernel instead of becoming a state of their own.
+     */
+    public int getMergedStates() {
+        return mergedKernels.size();
+    }
+
+    /* The number of states created for a core that already had a state. */
+    public int getSplitStates() {
+        return splitStates;
+    }
+
+    /* The number of transitions whose kernel was already a state, so that
+       no new state was made for them.
+     */
+    public int getDuplicateKernelHits() {
+        return duplicateKernels;
+    }
+
+    /* The wall time in nanoseconds of each phase of the build in order, from
+       parsing the grammar to the action table. PHASE_LOOKAHEADS is only
+       timed by the LALR(1) and SLR(1) modes, which add the lookaheads to
+       the finished LR(0) automaton.
+     */
+    public Map<String, Long> getPhaseNanos() {
+        Map<String, Long> phases = new LinkedHashMap<>(grammar.getPhaseNanos());
+        phases.putAll(phaseNanos);
+        return phases;
+    }
+
+    /* The number of closure iterations of all the states. */
+    public int getClosureIterations() {
+        int iterations = 0;
+        for (LR1State state : states.getStates()) {
+            iterations += state.getClosureIterations();
+        }
+        return iterations;
+    }
+
+    /* Count, for each variable, the states with a kernel item of one of
+       its rules. The variables that make the most states are the ones to
+       look at when the automaton is too big.
+     */
+    public Map<String, Integer> getStatesByVariable() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (LR1State state : states.getStates()) {
+            Set<String> variables = new HashSet<>();
+            for (LR1Item item : state.getKernel()) {
+                variables.add(item.getVar());
+            }
+            for (String variable : variables) {
+                counts.merge(variable, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /* Output the phase times and the sizes and counts of the build made by
+       createStates.
+     */
+    public <T extends Appendable> T outputStats(T target) {
+        StringBuilder out = new StringBuilder();
+        out.append("Build stats for ").append(getModeName()).append(":\n");
+        out.append("Phase times:");
+        String separator = " ";
+        for (Map.Entry<String, Long> phase : getPhaseNanos().entrySet()) {
+            out.append(separator).append(phase.getKey()).append(' ')
+                    .append(String.format(Locale.ROOT, "%.3f", phase.getValue() / 1e6)).append(" ms");
+            separator = ", ";
+        }
+        out.append("\n");
+
+        int items = 0;
+        int maxItems = 0;
+        long lookaheads = 0;
+        int maxLookahead = 0;
+        for (LR1State state : states.getStates()) {
+            items += state.getItems().size();
+            maxItems = Math.max(maxItems, state.getItems().size());
+            for (LR1Item item : state.getItems()) {
+                int size = item.getLookahead().cardinality();
+                lookaheads += size;
+                maxLookahead = Math.max(maxLookahead, size);
+            }
+        }
+        out.append("States: ").append(states.size()).append("\n");
+        out.append("Items: ").append(items).append(" total, ")
+                .append(maxItems).append(" max per state\n");
+        out.append("Closure iterations: ").append(getClosureIterations()).append("\n");
+        out.append("Lookahead set sizes: ")
+                .append(String.format(Locale.ROOT, "%.2f", items == 0 ? 0.0 : (double) lookaheads / items))
+                .append(" average, ").append(maxLookahead).append(" max\n");
+        out.append("Duplicate kernel hits: ").append(duplicateKernels).append("\n");
+        if (affectedVariables != null) {
+            out.append("Reused states: ").append(reusedStates.get()).append(" of a previous build\n");
+        }
+
+        List<Map.Entry<String, Integer>> counts = new ArrayList<>(getStatesByVariable().entrySet());
+        counts.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        out.append("Top variables by states:");
+        separator = " ";
+        for (Map.Entry<String, Integer> count : counts.subList(0, Math.min(TOP_VARIABLES, counts.size()))) {
+            out.append(separator).append(count.getKey()).append(' ').append(count.getValue());
+            separator = ", ";
         }
         out.append("\n");
+        flush(out, target);
+        return target;
     }
 
-    public void createNextStateForTerm(LR1State state, int stateNum, String term,
-                                       StringBuilder out) {
-        out.append("   Process transition from state ").append(stateNum)
-                    .append(" for term ").append(term).append("\n");
+    /* Create the start state and then every state reachable from it. */
+    protected void createAutomaton(BuildListener listener) {
+        createStartState(listener);
+        if (threads > 1) {
+            createStatesInParallel(listener);
+            return;
+        }
 
-        Set<LR1Item> nextStateItems = createNextStateItems(state, term);
-        out.append("        New state before closure:\n");
-        for (LR1Item item : nextStateItems) {
-            out.append("            item: ").append(item).append("\n");
+        /* go through all states to process */
+        for (int stateNum = 0; stateNum < states.size(); stateNum++) {
+            createStatesFromState(states.get(stateNum), stateNum, listener);
         }
+    }
+
+    /* Create the states reachable from the start state on a ForkJoinPool.
+
+       The sequential build processes the states in order, so it visits the
+       automaton breadth first: the states created while processing one
+       level of states form the next level. Here each level is expanded in
+       two steps. First the kernels of the transitions of every state of
+       the level are made in parallel, and the closure of each kernel that
+       is not registered yet is computed once, deduplicated through a
+       concurrent map. Then the transitions are added in state and symbol
+       order, which registers the new states in the order the sequential
+       build would, so the state numbers and the events are the same.
+     */
+    protected void createStatesInParallel(BuildListener listener) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int levelStart = 0;
+            while (levelStart < states.size()) {
+                final int start = levelStart;
+                final int end = states.size();
+                int[][] levelSymbols = new int[end - start][];
+                List<List<Set<LR1Item>>> levelKernels = new ArrayList<>(
+                        Collections.nCopies(end - start, null));
+                Map<Set<LR1Item>, LR1State> created = new ConcurrentHashMap<>();
+                pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(start, end).parallel()
+                        .forEach(stateNum -> {
+                            LR1State state = states.get(stateNum);
+                            levelSymbols[stateNum - start] = getNextSymbols(state);
+                            levelKernels.set(stateNum - start,
+                                    createNextKernels(state, levelSymbols[stateNum - start], created));
+                        })));
 
-        LR1State nextState = new LR1State(grammar, nextStateItems);
-        out.append("        New state after closure:\n");
-        for (LR1Item item : nextState.getItems()) {
-            out.append("            item: ").append(item).append("\n");
+                for (int stateNum = start; stateNum < end; stateNum++) {
+                    int[] symbols = levelSymbols[stateNum - start];
+                    listener.processState(stateNum, symbols.length);
+                    for (int i = 0; i < symbols.length; i++) {
+                        Set<LR1Item> kernel = levelKernels.get(stateNum - start).get(i);
+                        LR1State nextState = states.find(kernel);
+                        if (nextState == null) {
+                            nextState = created.get(kernel);
+                        }
+                        addTransition(states.get(stateNum), stateNum, symbols[i], kernel, nextState, listener);
+                    }
+                    listener.stateProcessed(stateNum);
+                }
+                levelStart = end;
+            }
+        } finally {
+            pool.shutdown();
         }
+    }
 
-        int foundStateNum = checkExistingState(state, term, nextState);
-        if (foundStateNum != -1) {
-            out.append("        Created transition from ").append(stateNum)
-                    .append(" with ").append(term)
-                    .append(" to existing state ").append(foundStateNum)
-                    .append("\n");
+    /* Make the kernel of the transition of the state on each symbol, and a
+       state for each kernel that is neither registered nor created yet.
+       The registry is only read here, while no thread adds to it.
+     */
+    protected List<Set<LR1Item>> createNextKernels(LR1State state, int[] symbols,
+                                                   Map<Set<LR1Item>, LR1State> created) {
+        List<Set<LR1Item>> kernels = new ArrayList<>();
+        for (int symbol : symbols) {
+            Set<LR1Item> kernel = createNextStateItems(state, symbol);
+            if (states.find(kernel) == null && !created.containsKey(kernel)) {
+                created.putIfAbsent(kernel, createState(kernel));
+            }
+            kernels.add(kernel);
+        }
+        return kernels;
+    }
+
+    protected void createStartState(BuildListener listener) {
+        Rule startRule = grammar.getRules().get(0);
+        BitSet startLookahead = new BitSet();
+        if (computeLookahead) {
+            startLookahead.set(grammar.getSymbols().getEndSymbol());
+        }
+
+        LR1Item firstItem = new LR1Item(startRule, 0, startLookahead);
+
+        Set<LR1Item> start = new HashSet<>();
+        start.add(firstItem);
+        LR1State startState = createState(start);
+        states.add(startState);
+        listener.startState(firstItem, startState);
+    }
+
+    public void createStatesFromState(LR1State state, int stateNum, BuildListener listener) {
+        int[] symbolsWithDot = getNextSymbols(state);
+        listener.processState(stateNum, symbolsWithDot.length);
+        /* for each unique next term, build transition states */
+        for (int symbol : symbolsWithDot) {
+            createNextStateForTerm(state, stateNum, symbol, listener);
+        }
+        listener.stateProcessed(stateNum);
+    }
+
+    /* Return the sorted symbols that follow a dot in the items of the state.
+       Symbol ids are in name order, so this is also the order of the names.
+     */
+    protected static int[] getNextSymbols(LR1State state) {
+        BitSet symbolsWithDot = new BitSet();
+
+        /* go through all items in state looking for next terms */
+        for (LR1Item item : state.getItems()) {
+            if (!item.isComplete()) {
+                symbolsWithDot.set(item.getNextSymbol());
+            }
+        }
+        return symbolsWithDot.stream().toArray();
+    }
+
+    public void createNextStateForTerm(LR1State state, int stateNum, int symbol,
+                                       BuildListener listener) {
+        Set<LR1Item> nextStateItems = createNextStateItems(state, symbol);
+
+        /* Look up the kernel first so that closure only runs for new states. */
+        LR1State existingState = states.find(nextStateItems);
+        LR1State nextState = existingState != null
+                ? existingState : createState(nextStateItems);
+        addTransition(state, stateNum, symbol, nextStateItems, nextState, listener);
+    }
+
+    /* Add the transition of the state on symbol to nextState, registering
+       nextState if it is new. A state is new until it has an id.
+     */
+    protected void addTransition(LR1State state, int stateNum, int symbol,
+                                 Set<LR1Item> nextStateItems, LR1State nextState,
+                                 BuildListener listener) {
+        if (nextState.getId() != -1) {
+            duplicateKernels++;
+            state.setTransition(symbol, nextState.getId());
+            listener.transition(stateNum, symbol, nextStateItems, nextState, nextState.getId(),
+                    BuildListener.TO_EXISTING, -1);
         } else {
-            states.add(nextState);
-            state.getTransition().put(term, nextState);
-            out.append("        Created transition from ").append(stateNum)
-                    .append(" with ").append(term)
-                    .append(" to new state ").append(states.size() - 1)
-                    .append("\n");
+            int nextStateNum = states.add(nextState);
+            state.setTransition(symbol, nextStateNum);
+            listener.transition(stateNum, symbol, nextStateItems, nextState, nextStateNum,
+                    BuildListener.TO_NEW, -1);
         }
     }
 
-    protected Set<LR1Item> createNextStateItems(LR1State originalState, String term) {
-        Set<LR1Item> nextStateItems = new HashSet<>();
+    protected static Set<LR1Item> createNextStateItems(LR1State originalState, int symbol) {
+        Set<LR1Item> nextStateItems = new LinkedHashSet<>();
         /* We are creating a new state from an existing state with the specified
          * term as the transition to the new state.
          *
          * For every item in the original state, if the item has the term as its
          * next term, then we add that item, moving its dot past the term.
+         * Lookaheads are immutable, so the new item shares that of the old.
          */
         for (LR1Item originalItem : originalState.getItems()) {
-            if (originalItem.getNextTerm() != null && originalItem.getNextTerm().equals(term)) {
-                nextStateItems.add(new LR1Item(originalItem.getVar(),
-                        originalItem.getTerms(),
+            if (originalItem.getNextSymbol() == symbol) {
+                nextStateItems.add(new LR1Item(originalItem.getRule(),
                         originalItem.getDotPosition() + 1,
-                        new HashSet<>(originalItem.getLookahead())));
+                        originalItem.getLookahead()));
             }
         }
         return nextStateItems;
     }
 
-    protected int checkExistingState(LR1State originalState, String term, LR1State nextState) {
-        int stateNum = 0;
-        for (LR1State existingState : states) {
-            if (existingState.getItems().containsAll(nextState.getItems())
-                    && nextState.getItems().containsAll(existingState.getItems())) {
-                originalState.getTransition().put(term, existingState);
-                return stateNum;
+    /* Compile the action and goto tables made by createStates into packed
+       ParseTables for a parser.
+     */
+    public ParseTables createParseTables() {
+        return new ParseTables(grammar, actionTable, gotoTable);
+    }
+
+    /* Compile the states made by createStates into GLRTables, which keep
+       every action of a cell instead of stopping at the first conflict.
+       This works whether createStates found a conflict or not.
+     */
+    public GLRTables createGLRTables() {
+        SymbolTable symbols = grammar.getSymbols();
+        List<Action[]> rows = new ArrayList<>();
+        List<int[]> conflicts = new ArrayList<>();
+        for (LR1State state : states.getStates()) {
+            List<List<Action>> cells = new ArrayList<>();
+            for (int symbol = 0; symbol < symbols.size(); symbol++) {
+                cells.add(new ArrayList<>());
             }
-            stateNum++;
+            for (int i = 0; i < state.getTransitionCount(); i++) {
+                if (symbols.isTerminal(state.getTransitionSymbol(i))) {
+                    addAction(cells.get(state.getTransitionSymbol(i)),
+                            new Action(Action.SHIFT, state.getTransitionTarget(i)));
+                }
+            }
+            for (LR1Item item : state.getItems()) {
+                if (!item.isComplete()) {
+                    continue;
+                }
+                if (item.getRule().getIndex() == 0) {
+                    addAction(cells.get(symbols.getEndSymbol()), new Action(Action.ACCEPT, 0));
+                    continue;
+                }
+                BitSet lookahead = item.getLookahead();
+                for (int symbol = lookahead.nextSetBit(0); symbol >= 0;
+                     symbol = lookahead.nextSetBit(symbol + 1)) {
+                    addAction(cells.get(symbol), new Action(Action.REDUCE, item.getRule().getIndex()));
+                }
+            }
+            Action[] row = new Action[symbols.size()];
+            for (int symbol = 0; symbol < symbols.size(); symbol++) {
+                List<Action> cell = cells.get(symbol);
+                if (cell.size() == 1) {
+                    row[symbol] = cell.get(0);
+                } else if (cell.size() > 1) {
+                    int[] packed = new int[cell.size()];
+                    for (int i = 0; i < packed.length; i++) {
+                        packed[i] = ParseTables.packAction(cell.get(i));
+                    }
+                    row[symbol] = new Action(Action.CONFLICT, conflicts.size());
+                    conflicts.add(packed);
+                }
+            }
+            rows.add(row);
         }
-        return -1;
+        return new GLRTables(grammar, rows, gotoTable, conflicts);
+    }
+
+    /* Add an action to a cell unless the cell already has it. */
+    protected static void addAction(List<Action> cell, Action action) {
+        for (Action other : cell) {
+            if (other.getType() == action.getType() && other.getOperand() == action.getOperand()) {
+                return;
+            }
+        }
+        cell.add(action);
     }
 
     public List<LR1State> getStates() {
-        return states;
+        return states.getStates();
     }
 
     protected int findStateIndex(LR1State state) {
-        for (int stateNum = 0; stateNum < states.size(); stateNum++) {
-            if (states.get(stateNum).equals(state)) {
-                return stateNum;
-            }
+        int stateNum = state.getId();
+        if (stateNum >= 0 && stateNum < states.size() && states.get(stateNum) == state) {
+            return stateNum;
         }
         return -1;
     }
 
-    public StringBuilder outputStates(StringBuilder out) {
+    /* Output the states, one state at a time. */
+    public <T extends Appendable> T outputStates(T out) {
+        StringBuilder row = new StringBuilder();
         int stateNum = 0;
-        for (LR1State state : states) {
-            out.append("State #").append(stateNum).append(":\n");
-            out.append(state.toString());
-            out.append("\n");
+        for (LR1State state : states.getStates()) {
+            row.append("State #").append(stateNum).append(":\n");
+            row.append(state.toString());
+            row.append("\n");
+            flush(row, out);
             stateNum++;
         }
         return out;
     }
 
     protected void createGotoTable() {
-        for (int stateNum = 0; stateNum < states.size(); stateNum++) {
-            gotoTable.add(new HashMap<>());
-        }
-        for (int stateNum = 0; stateNum < states.size(); stateNum++) {
-            for (String term : states.get(stateNum).getTransition().keySet()) {
-                if (grammar.getVariables().contains(term)) {
-                    gotoTable.get(stateNum).put(term,
-                            findStateIndex(states.get(stateNum).getTransition().get(term)));
+        SymbolTable symbols = grammar.getSymbols();
+        for (LR1State state : states.getStates()) {
+            int[] row = new int[symbols.size()];
+            Arrays.fill(row, -1);
+            for (int i = 0; i < state.getTransitionCount(); i++) {
+                if (symbols.isVariable(state.getTransitionSymbol(i))) {
+                    row[state.getTransitionSymbol(i)] = state.getTransitionTarget(i);
                 }
             }
+            gotoTable.add(row);
         }
     }
 
     protected boolean createActionTable() {
         for (int stateNum = 0; stateNum < states.size(); stateNum++) {
-            actionTable.add(stateNum, new HashMap<>());
+            actionTable.add(new Action[grammar.getSymbols().size()]);
         }
 
         populateShiftStates();
@@ -180,11 +891,13 @@ public class LR1Builder {
     }
 
     protected void populateShiftStates() {
+        SymbolTable symbols = grammar.getSymbols();
         for (int stateNum = 0; stateNum < states.size(); stateNum++) {
-            for (String term : states.get(stateNum).getTransition().keySet()) {
-                if (grammar.getTerminals().contains(term)) {
-                    actionTable.get(stateNum).put(term, new Action(Action.SHIFT,
-                            findStateIndex(states.get(stateNum).getTransition().get(term))));
+            LR1State state = states.get(stateNum);
+            for (int i = 0; i < state.getTransitionCount(); i++) {
+                if (symbols.isTerminal(state.getTransitionSymbol(i))) {
+                    actionTable.get(stateNum)[state.getTransitionSymbol(i)] =
+                            new Action(Action.SHIFT, state.getTransitionTarget(i));
                 }
             }
         }
@@ -202,21 +915,22 @@ public class LR1Builder {
     }
 
     protected boolean populateReduceForStateItem(int stateNum, LR1Item item) {
-        if (item.getDotPosition() == item.getTerms().length) {
-            if (item.getVar().equals("S'")) {
-                actionTable.get(stateNum).put("$", new Action(Action.ACCEPT, 0));
+        if (item.isComplete()) {
+            Action[] row = actionTable.get(stateNum);
+            if (item.getRule().getIndex() == 0) {
+                row[grammar.getSymbols().getEndSymbol()] = new Action(Action.ACCEPT, 0);
             } else {
-                Rule rule = new Rule(item.getVar(), item.getTerms());
-                int index = grammar.findRuleIndex(rule);
-                Action action = new Action(Action.REDUCE, index);
-                for (String str : item.getLookahead()) {
-                    if (actionTable.get(stateNum).get(str) != null) {
+                Action action = new Action(Action.REDUCE, item.getRule().getIndex());
+                BitSet lookahead = item.getLookahead();
+                for (int symbol = lookahead.nextSetBit(0); symbol >= 0;
+                     symbol = lookahead.nextSetBit(symbol + 1)) {
+                    if (row[symbol] != null) {
                         System.err.println("Action table has a REDUCE-" + //NOSONAR
-                                actionTable.get(stateNum).get(str).getTypeAsString() +
+                                row[symbol].getTypeAsString() +
                                 " conflict in state " + stateNum);
                         return false;
                     } else {
-                        actionTable.get(stateNum).put(str, action);
+                        row[symbol] = action;
                     }
                 }
             }
@@ -224,36 +938,45 @@ public class LR1Builder {
         return true;
     }
 
-    public StringBuilder outputActionTable(StringBuilder out) {
+    /* Output the action table, one row at a time. */
+    public <T extends Appendable> T outputActionTable(T out) {
         HashSet<String> terminals = new HashSet<>(grammar.getTerminals());
-        terminals.add("$");
+        terminals.add(SymbolTable.END);
+        SymbolTable symbols = grammar.getSymbols();
 
-        out.append("Action Table:\n");
+        StringBuilder row = new StringBuilder("Action Table:\n");
         for (int stateNum = 0; stateNum < actionTable.size(); stateNum++) {
-            statePrefix(out, stateNum);
+            statePrefix(row, stateNum);
             for (String terminal : terminals) {
-                if (actionTable.get(stateNum).get(terminal) != null) {
-                    out.append(actionTable.get(stateNum).get(terminal))
-                            .append(" on ").append(terminal).append(", ");
+                Action action = actionTable.get(stateNum)[symbols.getId(terminal)];
+                if (action != null) {
+                    row.append(action).append(" on ").append(terminal).append(", ");
                 }
             }
-            out.append("\n");
+            row.append("\n");
+            flush(row, out);
         }
+        flush(row, out);
         return out;
     }
 
-    public StringBuilder outputGotoTable(StringBuilder out) {
-        out.append("Goto Table:\n");
+    /* Output the goto table, one row at a time. */
+    public <T extends Appendable> T outputGotoTable(T out) {
+        SymbolTable symbols = grammar.getSymbols();
+        StringBuilder row = new StringBuilder("Goto Table:\n");
         for (int stateNum = 0; stateNum < gotoTable.size(); stateNum++) {
-            statePrefix(out, stateNum);
+            statePrefix(row, stateNum);
             for (String variable : grammar.getVariables()) {
-                if (gotoTable.get(stateNum).get(variable) != null) {
-                    out.append("State ").append(gotoTable.get(stateNum).get(variable))
+                int target = gotoTable.get(stateNum)[symbols.getId(variable)];
+                if (target != -1) {
+                    row.append("State ").append(target)
                             .append(" on ").append(variable).append(", ");
                 }
             }
-            out.append("\n");
+            row.append("\n");
+            flush(row, out);
         }
+        flush(row, out);
         return out;
     }
 
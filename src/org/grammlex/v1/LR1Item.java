@@ -1,8 +1,6 @@
 package org.grammlex.v1;
 
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.Set;
+import java.util.BitSet;
 
 /* An LR1Item is a Rule which has been extended with a position
    which represents a parser's state when it is in the process
@@ -11,29 +9,68 @@ import java.util.Set;
    LR1Items are collected together into an LR1State which represents
    the "collective" state of the parser when it is open to matching
    multiple rules simultaneously.
+
+   The dot position counts the symbols of the rule before the dot, so an
+   item of an epsilon rule is complete at position 0. The lookahead is a
+   set of terminal ids.
+
+   An item is immutable: its rule is the grammar's own and its lookahead
+   must not change once the item is made, so that the hash can be kept.
+   The states of a build share their items through an ItemPool, so equal
+   items are usually the same LR1Item and equal lookaheads the same
+   BitSet.
  */
-public class LR1Item extends Rule {
+public class LR1Item {
 
-    private final Set<String> lookahead;
+    private final Rule rule;
+    private final BitSet lookahead;
     private final int dotPosition;
+    private final int hash;
 
-    public LR1Item(String variable, String[] terms, int dotPosition, Set<String> lookahead){
-        super(variable, terms);
+    public LR1Item(Rule rule, int dotPosition, BitSet lookahead){
+        this.rule = rule;
         this.dotPosition = dotPosition;
         this.lookahead = lookahead;
+        this.hash = computeHash();
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public String getVar() {
+        return rule.getVar();
+    }
+
+    public String[] getTerms() {
+        return rule.getTerms();
+    }
+
+    /* The symbol after the dot, or -1 if the item is complete. */
+    public int getNextSymbol() {
+        int[] symbols = rule.getSymbols();
+        if (dotPosition == symbols.length) {
+            return -1;
+        }
+        return symbols[dotPosition];
     }
 
     public String getNextTerm(){
-        if(dotPosition == terms.length){
+        if (dotPosition == rule.getSymbols().length) {
             return null;
         }
-        return terms[dotPosition];
+        return rule.getTerms()[dotPosition];
+    }
+
+    public boolean isComplete() {
+        return dotPosition == rule.getSymbols().length;
     }
 
     public int getDotPosition() {
         return dotPosition;
     }
-    public Set<String> getLookahead() {
+
+    public BitSet getLookahead() {
         return lookahead;
     }
 
@@ -42,33 +79,37 @@ public class LR1Item extends Rule {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         LR1Item lr1Item = (LR1Item) o;
-        return dotPosition == lr1Item.getDotPosition() &&
-                Objects.equals(lookahead, lr1Item.getLookahead()) &&
-                Objects.equals(variable, lr1Item.getVar()) &&
-                Arrays.equals(terms, lr1Item.getTerms());
+        return hash == lr1Item.hash &&
+                dotPosition == lr1Item.dotPosition &&
+                rule.equals(lr1Item.rule) &&
+                (lookahead == lr1Item.lookahead || lookahead.equals(lr1Item.lookahead));
     }
 
     public  boolean equalLR0(LR1Item item){
-        return variable.equals(item.getVar())
-                && Arrays.equals(terms,item.getTerms())
-                && dotPosition == item.getDotPosition();
+        return dotPosition == item.dotPosition && rule.equals(item.rule);
+    }
+
+    private int computeHash() {
+        int h = 7;
+        h = 31 * h + this.dotPosition;
+        h = 31 * h + rule.hashCode();
+        h = 31 * h + lookahead.hashCode();
+        return h;
     }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 31 * hash + this.dotPosition;
-        hash = 31 * hash + Objects.hashCode(this.variable);
-        hash = 31 * hash + Arrays.deepHashCode(this.terms);
-        hash = 31 * hash + Objects.hashCode(this.lookahead);
         return hash;
     }
 
     @Override
     public String toString() {
-        StringBuilder str = new StringBuilder(variable).append( ": ");
+        String[] terms = rule.getTerms();
+        // An epsilon rule has a name for its empty right side
+        int termDot = Grammar.isEpsilonRule(terms) ? terms.length : dotPosition;
+        StringBuilder str = new StringBuilder(rule.getVar()).append( ": ");
         for (int i = 0; i < terms.length; i++) {
-            if (i == dotPosition) {
+            if (i == termDot) {
                 str.append("• ");
             }
             str.append(terms[i]);
@@ -76,11 +117,15 @@ public class LR1Item extends Rule {
                 str.append(" ");
             }
         }
-        if (terms.length == dotPosition) {
+        if (terms.length == termDot) {
             str.append(" •");
         }
-        str.append(" , ").append(lookahead);
+        str.append(" , ");
+        if (rule.getSymbolTable() != null) {
+            str.append(rule.getSymbolTable().getNames(lookahead));
+        } else {
+            str.append(lookahead);
+        }
         return str.toString();
     }
 }
-
@@ -1,6 +1,7 @@
 package org.grammlex.v1;
 
 import java.util.*;
+import java.util.function.Function;
 
 /* An LR1State represents the "collective" state of the parser when it
    is open to matching multiple rules simultaneously.
@@ -9,41 +10,103 @@ import java.util.*;
    a position within a rule that the parser might be in. It also includes
    a set of transitions to other LR1States directly when a next terminal
    is encountered or, indirectly when a next variable is "completed".
+   Transitions map a symbol id to the id of the target state, which is
+   assigned when the state is added to a StateRegistry. They are kept in
+   two int arrays sorted by symbol.
+
+   A state can also be built as an LR(0) state, where closure does not
+   compute lookaheads. The LALR(1) and SLR(1) modes of LR1Builder build
+   those and fill in the lookaheads afterwards with setLookaheads.
  */
 public class LR1State {
     private final Grammar grammar;
-    private final LinkedHashSet<LR1Item> items;
-    private final HashMap<String, LR1State> transition;
+    private final boolean computeLookahead;
+    private Set<LR1Item> kernel;
+    private List<LR1Item> items;
+    private int[] transitionSymbols = new int[0];
+    private int[] transitionTargets = new int[0];
+    private int id = -1;
+    private int closureIterations;
 
+    /* Create a state with a pool of its own, which is dropped with the
+       closure.
+     */
     public LR1State(Grammar grammar, Set<LR1Item> coreItems) {
+        this(grammar, coreItems, new ItemPool(), true);
+    }
+
+    /* Create a state whose items are shared with the other states of a
+       build through the pool of the build.
+     */
+    protected LR1State(Grammar grammar, Set<LR1Item> coreItems, ItemPool pool, boolean computeLookahead) {
         this.grammar = grammar;
-        items = new LinkedHashSet<>(coreItems);
-        transition = new HashMap<>();
-        closure();
-    }
-
-    private void closure() {
-        boolean changed;
-        do {
-            changed = false;
-            /* Go through every item in the state and try to find a dot before any variable
-               that can be expanded into a *new* item (with the variable as the left side and
-               the dot at the beginning of the right side).
-            */
-            for (LR1Item item : items) {
-                if (closureOneItem(item)) {
-                    changed = true;
-                    break;
-                }
-            }
-        } while (changed);
+        this.computeLookahead = computeLookahead;
+        closure(coreItems, pool);
+    }
+
+    /* Create a state from items that are already closed, such as the items
+       of the same state in an earlier build. The kernel items come first.
+     */
+    protected LR1State(Grammar grammar, Set<LR1Item> coreItems, List<LR1Item> closedItems,
+                       boolean computeLookahead) {
+        this.grammar = grammar;
+        this.computeLookahead = computeLookahead;
+        kernel = Collections.unmodifiableSet(new HashSet<>(coreItems));
+        items = List.copyOf(closedItems);
+    }
+
+    /* Add the items derived from the kernel. A worklist holds the items that
+       are new or whose lookahead grew, and the items are found by their
+       LR(0) item number, so an item is only processed again when it has
+       new lookaheads to pass on and a lookahead merge is one map lookup.
+
+       Every item is the shared item of the pool, and a new item gets the
+       shared lookahead of the pool. Lookaheads are immutable, so the first
+       merge that grows one gives the item a copy of its own, which is kept
+       apart from the item and grows in place. The items with a copy are
+       replaced by the shared item of their final lookahead when closure is
+       done. The kernel is made of the shared kernel items.
+     */
+    private void closure(Set<LR1Item> coreItems, ItemPool pool) {
+        List<LR1Item> closureItems = new ArrayList<>(coreItems);
+        List<BitSet> lookaheads = new ArrayList<>();
+        BitSet copied = new BitSet();
+        Map<Integer, Integer> indexByCore = new HashMap<>();
+        Deque<Integer> work = new ArrayDeque<>();
+        BitSet queued = new BitSet();
+        for (int i = 0; i < closureItems.size(); i++) {
+            LR1Item item = pool.intern(closureItems.get(i));
+            closureItems.set(i, item);
+            int core = grammar.getLR0ItemNumber(item.getRule(), item.getDotPosition());
+            indexByCore.put(core, i);
+            lookaheads.add(item.getLookahead());
+            work.add(i);
+            queued.set(core);
+        }
+        kernel = Collections.unmodifiableSet(new HashSet<>(closureItems));
+        BitSet lookahead = new BitSet();
+        while (!work.isEmpty()) {
+            int index = work.poll();
+            LR1Item item = closureItems.get(index);
+            closureIterations++;
+            queued.clear(grammar.getLR0ItemNumber(item.getRule(), item.getDotPosition()));
+            closureOneItem(item, lookaheads.get(index), lookahead, pool,
+                    closureItems, lookaheads, copied, indexByCore, work, queued);
+        }
+        for (int i = copied.nextSetBit(0); i >= 0; i = copied.nextSetBit(i + 1)) {
+            LR1Item item = closureItems.get(i);
+            closureItems.set(i, pool.intern(item.getRule(), item.getDotPosition(), lookaheads.get(i)));
+        }
+        items = List.copyOf(closureItems);
     }
 
-    private boolean closureOneItem(LR1Item item) {
-        boolean changed = false;
+    private void closureOneItem(LR1Item item, BitSet itemLookahead, BitSet lookahead, ItemPool pool,
+                                List<LR1Item> closureItems, List<BitSet> lookaheads, BitSet copied,
+                                Map<Integer, Integer> indexByCore,
+                                Deque<Integer> work, BitSet queued) {
         /* dot before a variable? */
-        if (item.getDotPosition() != item.getTerms().length
-                && grammar.getVariables().contains(item.getNextTerm())) {
+        int nextSymbol = item.getNextSymbol();
+        if (nextSymbol != -1 && grammar.getSymbols().isVariable(nextSymbol)) {
             /*
                We found an item X ->  . Y *  (with lookahead l)
                (Asterisk * means any set of terminals or none).
@@ -70,69 +133,161 @@ public class LR1State {
                possible terminal of the new item after reducing Y might
                be the lookahead of the original item (lookahead l).
             */
-            HashSet<String> lookahead = new HashSet<>();
-            if (item.getDotPosition() == item.getTerms().length - 1) {
-                lookahead.addAll(item.getLookahead());
-            } else {
-                Set<String> firstSet = grammar.computeFirst(item.getTerms(), item.getDotPosition() + 1);
-                if (firstSet.contains(Grammar.EPSILON)) {
-                    firstSet.remove(Grammar.EPSILON);
-                    firstSet.addAll(item.getLookahead());
-                }
-                lookahead.addAll(firstSet);
+            lookahead.clear();
+            // An LR(0) closure leaves the lookahead empty.
+            if (computeLookahead && grammar.getSuffixFirstTable().addFirst(item.getRule(),
+                    item.getDotPosition() + 1, lookahead)) {
+                lookahead.or(itemLookahead);
             }
+            BitSet shared = null;
             /*
                Now that we have all possible terminals following Y,
                then for every rule Y -> *, we create new items for that
-               rule for each lookahead terminal.
+               rule for each lookahead terminal, or merge the lookahead
+               into the item that is already there.
             */
-            Set<Rule> rules = grammar.getRulesByVar(item.getNextTerm());
-            for (Rule rule : rules) {
-                if (closureCreateItems(rule, lookahead)) {
-                    changed = true;
+            for (Rule rule : grammar.getRulesByVar(nextSymbol)) {
+                int core = grammar.getLR0ItemNumber(rule, 0);
+                Integer existing = indexByCore.get(core);
+                if (existing == null) {
+                    if (shared == null) {
+                        shared = pool.intern(lookahead);
+                    }
+                    int index = closureItems.size();
+                    closureItems.add(pool.intern(rule, 0, shared));
+                    lookaheads.add(shared);
+                    indexByCore.put(core, index);
+                    work.add(index);
+                    queued.set(core);
+                } else if (!containsAll(lookaheads.get(existing), lookahead)) {
+                    if (!copied.get(existing)) {
+                        lookaheads.set(existing, (BitSet) lookaheads.get(existing).clone());
+                        copied.set(existing);
+                    }
+                    lookaheads.get(existing).or(lookahead);
+                    if (!queued.get(core)) {
+                        work.add(existing);
+                        queued.set(core);
+                    }
                 }
             }
         }
-        return changed;
     }
 
-    private boolean closureCreateItems(Rule rule, HashSet<String> lookahead) {
-        boolean changed = false;
-        String[] terms = rule.getTerms().clone();
-        int finished = 0;
-        if (terms.length == 1 && terms[0].equals(Grammar.EPSILON)) {
-            finished = 1;
+    /* Return whether set has every member of subset. */
+    private static boolean containsAll(BitSet set, BitSet subset) {
+        for (int i = subset.nextSetBit(0); i >= 0; i = subset.nextSetBit(i + 1)) {
+            if (!set.get(i)) {
+                return false;
+            }
         }
-        Set<String> newLA = new HashSet<>(lookahead);
-        LR1Item newItem = new LR1Item(rule.getVar(), terms, finished, newLA);
-        boolean found = false;
-        for (LR1Item existingItem : items) {
-            if (newItem.equalLR0(existingItem)) {
-                Set<String> existLA = existingItem.getLookahead();
-                if (!existLA.containsAll(newLA)) {
-                    // Merging into the lookahead will change the hash code.
-                    // So the item must be removed
-                    items.remove(existingItem);
-                    existLA.addAll(newLA);
-                    items.add(existingItem);
-                    changed = true;
-                }
-                found = true;
-                break;
+        return true;
+    }
+
+    /* Replace the lookahead of every item of an LR(0) state. Items are
+       immutable, so the item sets are rebuilt in the same order with the
+       shared items of the pool.
+     */
+    protected void setLookaheads(ItemPool pool, Function<LR1Item, BitSet> lookaheadOf) {
+        List<LR1Item> newItems = new ArrayList<>(items.size());
+        Set<LR1Item> newKernel = new HashSet<>();
+        for (LR1Item item : items) {
+            LR1Item newItem = pool.intern(item.getRule(), item.getDotPosition(), lookaheadOf.apply(item));
+            newItems.add(newItem);
+            if (kernel.contains(item)) {
+                newKernel.add(newItem);
             }
         }
-        if (!found) {
-            items.add(newItem);
-            changed = true;
+        kernel = Collections.unmodifiableSet(newKernel);
+        items = List.copyOf(newItems);
+    }
+
+    /* Return the target state id of the transition on a symbol, or -1. */
+    public int getTransition(int symbol) {
+        int i = Arrays.binarySearch(transitionSymbols, symbol);
+        if (i < 0) {
+            return -1;
+        }
+        return transitionTargets[i];
+    }
+
+    /* Add or replace the transition on a symbol. */
+    public void setTransition(int symbol, int target) {
+        int i = Arrays.binarySearch(transitionSymbols, symbol);
+        if (i >= 0) {
+            transitionTargets[i] = target;
+            return;
         }
-        return changed;
+        i = -i - 1;
+        int count = transitionSymbols.length;
+        int[] symbols = new int[count + 1];
+        int[] targets = new int[count + 1];
+        System.arraycopy(transitionSymbols, 0, symbols, 0, i);
+        System.arraycopy(transitionTargets, 0, targets, 0, i);
+        symbols[i] = symbol;
+        targets[i] = target;
+        System.arraycopy(transitionSymbols, i, symbols, i + 1, count - i);
+        System.arraycopy(transitionTargets, i, targets, i + 1, count - i);
+        transitionSymbols = symbols;
+        transitionTargets = targets;
+    }
+
+    public void removeTransition(int symbol) {
+        int i = Arrays.binarySearch(transitionSymbols, symbol);
+        if (i >= 0) {
+            int count = transitionSymbols.length;
+            int[] symbols = new int[count - 1];
+            int[] targets = new int[count - 1];
+            System.arraycopy(transitionSymbols, 0, symbols, 0, i);
+            System.arraycopy(transitionTargets, 0, targets, 0, i);
+            System.arraycopy(transitionSymbols, i + 1, symbols, i, count - i - 1);
+            System.arraycopy(transitionTargets, i + 1, targets, i, count - i - 1);
+            transitionSymbols = symbols;
+            transitionTargets = targets;
+        }
+    }
+
+    /* The transitions are numbered 0 to getTransitionCount() - 1 in symbol order. */
+    public int getTransitionCount() {
+        return transitionSymbols.length;
+    }
+
+    public int getTransitionSymbol(int i) {
+        return transitionSymbols[i];
+    }
+
+    public int getTransitionTarget(int i) {
+        return transitionTargets[i];
+    }
+
+    protected void setTransitionTarget(int i, int target) {
+        transitionTargets[i] = target;
+    }
+
+    /* The items the state was created from, before closure. */
+    public Set<LR1Item> getKernel() {
+        return kernel;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    protected void setId(int id) {
+        this.id = id;
     }
 
-    public Map<String, LR1State> getTransition() {
-        return transition;
+    /* The number of items closure processed, counting an item again for
+       each time its lookahead grew.
+     */
+    public int getClosureIterations() {
+        return closureIterations;
     }
 
-    public Set<LR1Item> getItems() {
+    /* The kernel items followed by the closure items, in the order closure
+       made them. The list is immutable and holds nothing but the items.
+     */
+    public List<LR1Item> getItems() {
         return items;
     }
 
@@ -0,0 +1,146 @@
+package org.grammlex.v1;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/* An LRParser runs the ParseTables of a grammar against a sequence of
+   tokens, which are terminal ids with the end symbol "$" last.
+
+   The parser keeps its states on an int stack and reports each shift and
+   each reduce to an IntConsumer, with the token or the rule index, so it
+   does not allocate anything per token once the stack has grown to the
+   depth of the input. After a parse, reset() makes the same parser ready
+   for the next input, keeping its stack.
+
+   Tokens can be pulled from an IntSupplier with parse, or pushed one at a
+   time with feed, which returns NEED_MORE until the input is accepted or
+   rejected.
+ */
+public class LRParser {
+    public static final int NEED_MORE = 0;
+    public static final int ACCEPTED = 1;
+    public static final int REJECTED = 2;
+
+    private static final IntConsumer IGNORE = value -> { };
+
+    private final ParseTables tables;
+    private int[] stack = new int[32];
+    private int top;
+    private int status;
+    private int errorState;
+    private int errorToken;
+    private IntConsumer onShift = IGNORE;
+    private IntConsumer onReduce = IGNORE;
+
+    public LRParser(ParseTables tables) {
+        this.tables = tables;
+        reset();
+    }
+
+    /* Called with the token of every shift. */
+    public void setShiftAction(IntConsumer onShift) {
+        this.onShift = onShift;
+    }
+
+    /* Called with the rule index of every reduce, after the rule's symbols
+       have been popped and the goto state pushed.
+     */
+    public void setReduceAction(IntConsumer onReduce) {
+        this.onReduce = onReduce;
+    }
+
+    /* Start over at the start state. */
+    public void reset() {
+        top = 0;
+        stack[0] = 0;
+        status = NEED_MORE;
+        errorState = -1;
+        errorToken = -1;
+    }
+
+    /* Parse tokens until the input is accepted or rejected. Return whether
+       it was accepted.
+     */
+    public boolean parse(IntSupplier tokens) {
+        while (status == NEED_MORE) {
+            feed(tokens.getAsInt());
+        }
+        return status == ACCEPTED;
+    }
+
+    /* Take the next token, doing the reduces before its shift, and return
+       the status. Once the input is accepted or rejected, further tokens
+       are ignored until reset.
+     */
+    public int feed(int token) {
+        if (status != NEED_MORE) {
+            return status;
+        }
+        if (token < 0 || token >= tables.getSymbolCount()) {
+            return reject(token);
+        }
+        while (true) {
+            int action = tables.getAction(stack[top], token);
+            switch (ParseTables.kindOf(action)) {
+                case ParseTables.SHIFT:
+                    push(ParseTables.operandOf(action));
+                    onShift.accept(token);
+                    return status;
+                case ParseTables.REDUCE:
+                    int rule = ParseTables.operandOf(action);
+                    top -= tables.getRuleLength(rule);
+                    push(tables.getGoto(stack[top], tables.getRuleVar(rule)));
+                    onReduce.accept(rule);
+                    break;
+                case ParseTables.ACCEPT:
+                    status = ACCEPTED;
+                    return status;
+                default:
+                    return reject(token);
+            }
+        }
+    }
+
+    private int reject(int token) {
+        status = REJECTED;
+        errorState = stack[top];
+        errorToken = token;
+        return status;
+    }
+
+    private void push(int state) {
+        if (++top == stack.length) {
+            int[] newStack = new int[stack.length * 2];
+            System.arraycopy(stack, 0, newStack, 0, stack.length);
+            stack = newStack;
+        }
+        stack[top] = state;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /* The state on top of the stack. */
+    public int getState() {
+        return stack[top];
+    }
+
+    /* The number of states on the stack, including the start state. */
+    public int getDepth() {
+        return top + 1;
+    }
+
+    /* The state and token of a rejected input, or -1. */
+    public int getErrorState() {
+        return errorState;
+    }
+
+    public int getErrorToken() {
+        return errorToken;
+    }
+
+    public ParseTables getTables() {
+        return tables;
+    }
+}
@@ -0,0 +1,164 @@
+package org.grammlex.v1;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/* LazyParseTables are ParseTables for canonical LR(1) whose states are
+   only built when a parser first reaches them, like the states of a lazy
+   DFA. Creating them costs nothing but the start kernel, and the states
+   that are built stay in proportion to the part of the grammar the inputs
+   use, however large the whole automaton would be.
+
+   A state is known once it is the target of a transition of a built
+   state: it then has an id and its kernel, but no closure. Building it,
+   on the first getAction or getGoto for it, runs the closure, gives its
+   transition targets ids, and makes its action and goto rows. The state
+   itself is dropped after that; only the kernels, to find the ids of
+   later transitions, and the rows are kept.
+
+   Parsers on several threads can share the tables. Rows are published in
+   an AtomicReferenceArray, so a built row is read without a lock, while
+   building is done under one lock, once per state. State ids depend on
+   the order the states are reached in, so they differ from the ids of
+   LR1Builder, and a conflict is only found when a parser reaches its
+   state: then getAction throws an IllegalArgumentException. The tables
+   only exist in memory, so they are not for TableFile or SourceGenerator.
+ */
+public class LazyParseTables extends ParseTables {
+    private static final int INITIAL_STATES = 64;
+
+    private final Grammar grammar;
+    private final Object lock = new Object();
+    private final List<Set<LR1Item>> kernels = new ArrayList<>();
+    private final Map<Set<LR1Item>, Integer> stateIds = new HashMap<>();
+    private volatile AtomicReferenceArray<int[]> actionRows = new AtomicReferenceArray<>(INITIAL_STATES);
+    private volatile AtomicReferenceArray<int[]> gotoRows = new AtomicReferenceArray<>(INITIAL_STATES);
+    private volatile int knownStates;
+    private volatile int builtStates;
+
+    public LazyParseTables(Grammar grammar) {
+        super(grammar, Collections.emptyList(), Collections.emptyList());
+        this.grammar = grammar;
+        BitSet startLookahead = new BitSet();
+        startLookahead.set(grammar.getSymbols().getEndSymbol());
+        Set<LR1Item> start = new HashSet<>();
+        start.add(new LR1Item(grammar.getRules().get(0), 0, startLookahead));
+        getStateId(start);
+    }
+
+    @Override
+    public int getAction(int state, int terminal) {
+        AtomicReferenceArray<int[]> rows = actionRows;
+        int[] row = state >= 0 && state < rows.length() ? rows.get(state) : null;
+        if (row == null) {
+            row = buildState(state)[0];
+        }
+        return row[terminal];
+    }
+
+    @Override
+    public int getGoto(int state, int variable) {
+        AtomicReferenceArray<int[]> rows = gotoRows;
+        int[] row = state >= 0 && state < rows.length() ? rows.get(state) : null;
+        if (row == null) {
+            row = buildState(state)[1];
+        }
+        return row[variable];
+    }
+
+    /* The number of states known so far, built or not. */
+    @Override
+    public int getStateCount() {
+        return knownStates;
+    }
+
+    /* The number of states whose rows have been built. */
+    public int getBuiltStateCount() {
+        return builtStates;
+    }
+
+    /* Build the rows of a known state, unless another thread just did, and
+       return the action and goto rows.
+     */
+    protected int[][] buildState(int state) {
+        synchronized (lock) {
+            if (state < 0 || state >= knownStates) {
+                throw new IllegalArgumentException("ERROR: Unknown state: " + state);
+            }
+            if (actionRows.get(state) != null) {
+                return new int[][] {actionRows.get(state), gotoRows.get(state)};
+            }
+            SymbolTable symbols = grammar.getSymbols();
+            LR1State lr1State = new LR1State(grammar, kernels.get(state));
+            int[] actionRow = new int[symbols.size()];
+            int[] gotoRow = new int[symbols.size()];
+            Arrays.fill(gotoRow, -1);
+            for (int symbol : LR1Builder.getNextSymbols(lr1State)) {
+                int target = getStateId(LR1Builder.createNextStateItems(lr1State, symbol));
+                if (symbols.isTerminal(symbol)) {
+                    actionRow[symbol] = pack(SHIFT, target);
+                } else {
+                    gotoRow[symbol] = target;
+                }
+            }
+            for (LR1Item item : lr1State.getItems()) {
+                if (item.isComplete()) {
+                    addReduce(state, actionRow, item);
+                }
+            }
+            // The goto row is published first, as a non-null action row
+            // means both are there
+            gotoRows.set(state, gotoRow);
+            actionRows.set(state, actionRow);
+            builtStates++;
+            return new int[][] {actionRow, gotoRow};
+        }
+    }
+
+    protected void addReduce(int state, int[] actionRow, LR1Item item) {
+        SymbolTable symbols = grammar.getSymbols();
+        if (item.getRule().getIndex() == 0) {
+            actionRow[symbols.getEndSymbol()] = pack(ACCEPT, 0);
+            return;
+        }
+        int action = pack(REDUCE, item.getRule().getIndex());
+        BitSet lookahead = item.getLookahead();
+        for (int symbol = lookahead.nextSetBit(0); symbol >= 0; symbol = lookahead.nextSetBit(symbol + 1)) {
+            if (actionRow[symbol] != ERROR) {
+                throw new IllegalArgumentException("ERROR: Grammar is not LR(1): conflict in state "
+                        + state + " on " + symbols.getName(symbol));
+            }
+            actionRow[symbol] = action;
+        }
+    }
+
+    /* Return the id of the state with a kernel, making it a known state if
+       it is new. Called under the lock.
+     */
+    protected int getStateId(Set<LR1Item> kernel) {
+        Integer id = stateIds.get(kernel);
+        if (id != null) {
+            return id;
+        }
+        id = kernels.size();
+        kernels.add(kernel);
+        stateIds.put(kernel, id);
+        if (id == actionRows.length()) {
+            actionRows = grow(actionRows);
+            gotoRows = grow(gotoRows);
+        }
+        knownStates = id + 1;
+        return id;
+    }
+
+    /* Copy the rows into an array twice as long. A reader still holding the
+       old array finds no row for the newest states and takes the lock.
+     */
+    private static AtomicReferenceArray<int[]> grow(AtomicReferenceArray<int[]> rows) {
+        AtomicReferenceArray<int[]> grown = new AtomicReferenceArray<>(rows.length() * 2);
+        for (int i = 0; i < rows.length(); i++) {
+            grown.set(i, rows.get(i));
+        }
+        return grown;
+    }
+}
@@ -0,0 +1,313 @@
+package org.grammlex.v1;
+
+import java.util.*;
+import java.util.function.IntFunction;
+
+/* A LexerDfa is the minimized DFA of the lexer rules of a Grammar, which
+   a Scanner runs over text to produce the token ids of the parse tables.
+
+   The rules are compiled into one Nfa whose accepting states carry the
+   symbol id of their token and the position of their rule in the grammar.
+   The chars are split into equivalence classes: two chars are in the same
+   class if every edge of the Nfa either has both or neither, so the DFA
+   has a column per class instead of per char. The subset construction
+   then gives a DFA, which is minimized by Moore's partition refinement.
+
+   A state that accepts the tokens of several rules accepts the rule that
+   comes first in the grammar, as ANTLR does, so keywords must come before
+   the identifier rule. Tokens with the skip or channel command accept
+   SKIP instead of a symbol id.
+
+   The class of a char below 256 is looked up in an array and the class
+   of any other char by a binary search of the starts of the intervals of
+   chars that share a class.
+ */
+public class LexerDfa {
+    public static final int NO_TOKEN = -1;
+    public static final int SKIP = -2;
+    public static final int NO_STATE = -1;
+    private static final int LATIN1 = 256;
+
+    private final Grammar grammar;
+    private final int[] latin1Classes = new int[LATIN1];
+    private int[] intervalStarts; // first char of each interval
+    private int[] intervalClasses; // class of each interval
+    private int classCount;
+    private int stateCount;
+    private int[] transitions; // transitions[state * classCount + class]
+    private int[] accepts; // token of each state, NO_TOKEN or SKIP
+
+    public LexerDfa(Grammar grammar) {
+        this.grammar = grammar;
+        if (grammar.getLexerRules().isEmpty()) {
+            throw new IllegalArgumentException("ERROR: The grammar has no lexer rules.");
+        }
+        Nfa nfa = new Nfa();
+        int start = buildNfa(nfa);
+        computeClasses(nfa);
+        List<BitSet> dfaStates = new ArrayList<>();
+        List<int[]> dfaTransitions = new ArrayList<>();
+        List<Integer> dfaAccepts = new ArrayList<>();
+        computeSubsets(nfa, start, dfaStates, dfaTransitions, dfaAccepts);
+        minimize(dfaTransitions, dfaAccepts);
+        if (accepts[0] != NO_TOKEN) {
+            throw new IllegalArgumentException("ERROR: A lexer rule matches the empty string.");
+        }
+    }
+
+    /* Return the class of a char. */
+    public int getClass(int c) {
+        if (c < LATIN1) {
+            return latin1Classes[c];
+        }
+        int index = Arrays.binarySearch(intervalStarts, c);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return intervalClasses[index];
+    }
+
+    /* Return the state after a char of the given class, or NO_STATE. */
+    public int getNextState(int state, int charClass) {
+        return transitions[state * classCount + charClass];
+    }
+
+    /* Return the token a state accepts, or NO_TOKEN or SKIP. */
+    public int getAccept(int state) {
+        return accepts[state];
+    }
+
+    /* The start state is always 0. */
+    public int getStartState() {
+        return 0;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public Grammar getGrammar() {
+        return grammar;
+    }
+
+    protected int buildNfa(Nfa nfa) {
+        SymbolTable symbols = grammar.getSymbols();
+        int start = nfa.addState();
+        int priority = 0;
+        for (String name : grammar.getLexerRules().keySet()) {
+            if (grammar.isFragment(name)) {
+                continue;
+            }
+            int[] fragment = nfa.addRule(name, grammar.getLexerRules());
+            nfa.addEpsilon(start, fragment[0]);
+            int token = grammar.isSkipped(name) ? SKIP : symbols.getId(name);
+            nfa.setAccept(fragment[1], token, priority++);
+        }
+        return start;
+    }
+
+    /* Split the chars into intervals at every edge boundary, then give
+     * intervals that are on the same set of edges the same class.
+     */
+    protected void computeClasses(Nfa nfa) {
+        TreeSet<Integer> boundaries = new TreeSet<>();
+        boundaries.add(0);
+        List<int[]> ranges = new ArrayList<>();
+        for (int state = 0; state < nfa.getStateCount(); state++) {
+            for (int[] edge : nfa.getEdges(state)) {
+                if (edge[0] != Nfa.EPSILON) {
+                    ranges.add(edge);
+                    boundaries.add(edge[0]);
+                    if (edge[1] < Nfa.MAX_CHAR) {
+                        boundaries.add(edge[1] + 1);
+                    }
+                }
+            }
+        }
+        int[] starts = new int[boundaries.size()];
+        int i = 0;
+        for (int boundary : boundaries) {
+            starts[i++] = boundary;
+        }
+        // The edges that cover each interval
+        List<BitSet> covers = new ArrayList<>();
+        for (int j = 0; j < starts.length; j++) {
+            covers.add(new BitSet());
+        }
+        for (int r = 0; r < ranges.size(); r++) {
+            int first = Arrays.binarySearch(starts, ranges.get(r)[0]);
+            for (int j = first; j < starts.length && starts[j] <= ranges.get(r)[1]; j++) {
+                covers.get(j).set(r);
+            }
+        }
+        Map<BitSet, Integer> classes = new HashMap<>();
+        List<Integer> mergedStarts = new ArrayList<>();
+        List<Integer> mergedClasses = new ArrayList<>();
+        for (int j = 0; j < starts.length; j++) {
+            int charClass = classes.computeIfAbsent(covers.get(j), k -> classes.size());
+            if (mergedClasses.isEmpty() || mergedClasses.get(mergedClasses.size() - 1) != charClass) {
+                mergedStarts.add(starts[j]);
+                mergedClasses.add(charClass);
+            }
+        }
+        classCount = classes.size();
+        intervalStarts = mergedStarts.stream().mapToInt(Integer::intValue).toArray();
+        intervalClasses = mergedClasses.stream().mapToInt(Integer::intValue).toArray();
+        for (int c = 0, j = 0; c < LATIN1; c++) {
+            while (j + 1 < intervalStarts.length && intervalStarts[j + 1] <= c) {
+                j++;
+            }
+            latin1Classes[c] = intervalClasses[j];
+        }
+    }
+
+    /* The subset construction. Each DFA state is the epsilon closure of a
+     * set of Nfa states.
+     */
+    protected void computeSubsets(Nfa nfa, int start, List<BitSet> dfaStates,
+                                  List<int[]> dfaTransitions, List<Integer> dfaAccepts) {
+        Map<BitSet, Integer> stateNums = new HashMap<>();
+        BitSet startSet = new BitSet();
+        startSet.set(start);
+        addState(nfa, closure(nfa, startSet), stateNums, dfaStates, dfaTransitions, dfaAccepts);
+        for (int stateNum = 0; stateNum < dfaStates.size(); stateNum++) {
+            BitSet[] targets = new BitSet[classCount];
+            BitSet nfaStates = dfaStates.get(stateNum);
+            for (int s = nfaStates.nextSetBit(0); s >= 0; s = nfaStates.nextSetBit(s + 1)) {
+                for (int[] edge : nfa.getEdges(s)) {
+                    if (edge[0] == Nfa.EPSILON) {
+                        continue;
+                    }
+                    for (int charClass : getClasses(edge[0], edge[1])) {
+                        if (targets[charClass] == null) {
+                            targets[charClass] = new BitSet();
+                        }
+                        targets[charClass].set(edge[2]);
+                    }
+                }
+            }
+            for (int charClass = 0; charClass < classCount; charClass++) {
+                if (targets[charClass] != null) {
+                    BitSet target = closure(nfa, targets[charClass]);
+                    Integer targetNum = stateNums.get(target);
+                    if (targetNum == null) {
+                        targetNum = addState(nfa, target, stateNums, dfaStates, dfaTransitions, dfaAccepts);
+                    }
+                    dfaTransitions.get(stateNum)[charClass] = targetNum;
+                }
+            }
+        }
+    }
+
+    private int addState(Nfa nfa, BitSet nfaStates, Map<BitSet, Integer> stateNums,
+                         List<BitSet> dfaStates, List<int[]> dfaTransitions, List<Integer> dfaAccepts) {
+        int stateNum = dfaStates.size();
+        stateNums.put(nfaStates, stateNum);
+        dfaStates.add(nfaStates);
+        int[] row = new int[classCount];
+        Arrays.fill(row, NO_STATE);
+        dfaTransitions.add(row);
+        int token = NO_TOKEN;
+        int priority = Integer.MAX_VALUE;
+        for (int s = nfaStates.nextSetBit(0); s >= 0; s = nfaStates.nextSetBit(s + 1)) {
+            if (nfa.getToken(s) != Nfa.NO_TOKEN && nfa.getPriority(s) < priority) {
+                token = nfa.getToken(s);
+                priority = nfa.getPriority(s);
+            }
+        }
+        dfaAccepts.add(token);
+        return stateNum;
+    }
+
+    protected static BitSet closure(Nfa nfa, BitSet nfaStates) {
+        BitSet result = (BitSet) nfaStates.clone();
+        Deque<Integer> worklist = new ArrayDeque<>();
+        for (int s = nfaStates.nextSetBit(0); s >= 0; s = nfaStates.nextSetBit(s + 1)) {
+            worklist.push(s);
+        }
+        while (!worklist.isEmpty()) {
+            for (int[] edge : nfa.getEdges(worklist.pop())) {
+                if (edge[0] == Nfa.EPSILON && !result.get(edge[2])) {
+                    result.set(edge[2]);
+                    worklist.push(edge[2]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /* Return the classes of the chars from low to high. Edge boundaries
+     * are interval boundaries, so the classes of the intervals that start
+     * in the range cover it exactly.
+     */
+    private Set<Integer> getClasses(int low, int high) {
+        Set<Integer> result = new HashSet<>();
+        int index = Arrays.binarySearch(intervalStarts, low);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        for (; index < intervalStarts.length && intervalStarts[index] <= high; index++) {
+            result.add(intervalClasses[index]);
+        }
+        return result;
+    }
+
+    /* Moore's algorithm: start with the states split by what they accept
+     * and split blocks by the blocks of their transitions until nothing
+     * changes. Block 0 holds the start state.
+     */
+    protected void minimize(List<int[]> dfaTransitions, List<Integer> dfaAccepts) {
+        int count = dfaTransitions.size();
+        int[] blocks = new int[count];
+        int blockCount = numberBlocks(blocks, s -> Collections.singletonList(dfaAccepts.get(s)));
+        while (true) {
+            int[] previous = blocks.clone();
+            int newCount = numberBlocks(blocks, s -> {
+                List<Integer> signature = new ArrayList<>(classCount + 1);
+                signature.add(previous[s]);
+                for (int target : dfaTransitions.get(s)) {
+                    signature.add(target == NO_STATE ? NO_STATE : previous[target]);
+                }
+                return signature;
+            });
+            if (newCount == blockCount) {
+                break;
+            }
+            blockCount = newCount;
+        }
+        stateCount = blockCount;
+        transitions = new int[stateCount * classCount];
+        accepts = new int[stateCount];
+        for (int s = 0; s < count; s++) {
+            accepts[blocks[s]] = dfaAccepts.get(s);
+            int[] row = dfaTransitions.get(s);
+            for (int charClass = 0; charClass < classCount; charClass++) {
+                transitions[blocks[s] * classCount + charClass] =
+                        row[charClass] == NO_STATE ? NO_STATE : blocks[row[charClass]];
+            }
+        }
+    }
+
+    /* Number the states by their signatures in the order they are first
+     * seen, which keeps the start state in block 0.
+     */
+    private static int numberBlocks(int[] blocks, IntFunction<List<Integer>> signature) {
+        Map<List<Integer>, Integer> numbers = new HashMap<>();
+        for (int s = 0; s < blocks.length; s++) {
+            blocks[s] = numbers.computeIfAbsent(signature.apply(s), k -> numbers.size());
+        }
+        return numbers.size();
+    }
+
+    public StringBuilder outputSummary(StringBuilder out) {
+        out.append("Lexer rules: ").append(grammar.getLexerRules().size()).append("\n");
+        out.append("Char classes: ").append(classCount).append("\n");
+        out.append("DFA states: ").append(stateCount).append("\n");
+        out.append("Transition table: ").append(transitions.length * Integer.BYTES).append(" bytes\n");
+        return out;
+    }
+}
@@ -0,0 +1,373 @@
+package org.grammlex.v1;
+
+import java.util.*;
+
+/* An Nfa is a Thompson nondeterministic finite automaton built from the
+   bodies of ANTLR lexer rules. Its edges are labeled with ranges of chars,
+   or are epsilon edges, and its accepting states carry a token and a
+   priority. LexerDfa turns it into a DFA.
+
+   The lexer rule syntax supported is:
+   'text'        a literal, with the escapes \n \r \t \b \f \\ \' and \\uXXXX
+   'a'..'z'      a range of chars
+   [a-z_\n]      a set of chars and ranges, with the same escapes and \] \-
+   ~[...] ~'x'   any char not in the set, or other than the char
+   .             any char
+   NAME          the body of another lexer rule or fragment
+   ( x | y )     grouping and alternatives
+   x* x+ x?      repeats and options
+
+   Non-greedy loops such as .*? are not supported, because a DFA that
+   takes the longest match cannot stop at the first match of a rule.
+ */
+public class Nfa {
+    public static final int NO_TOKEN = -1;
+    public static final int EPSILON = -1;
+    public static final int MAX_CHAR = Character.MAX_VALUE;
+
+    // Each edge is {low, high, target} with low EPSILON for an epsilon edge
+    private final List<List<int[]>> edges = new ArrayList<>();
+    private final List<Integer> tokens = new ArrayList<>();
+    private final List<Integer> priorities = new ArrayList<>();
+
+    // The rule being parsed
+    private Map<String, String> definitions;
+    private final Set<String> expanding = new HashSet<>();
+    private String name;
+    private String pattern;
+    private int pos;
+
+    public int addState() {
+        edges.add(new ArrayList<>());
+        tokens.add(NO_TOKEN);
+        priorities.add(Integer.MAX_VALUE);
+        return edges.size() - 1;
+    }
+
+    public void addEdge(int from, int low, int high, int to) {
+        edges.get(from).add(new int[]{low, high, to});
+    }
+
+    public void addEpsilon(int from, int to) {
+        edges.get(from).add(new int[]{EPSILON, EPSILON, to});
+    }
+
+    public void setAccept(int state, int token, int priority) {
+        tokens.set(state, token);
+        priorities.set(state, priority);
+    }
+
+    public int getStateCount() {
+        return edges.size();
+    }
+
+    /* The edges leaving a state, each {low, high, target}. */
+    public List<int[]> getEdges(int state) {
+        return edges.get(state);
+    }
+
+    public int getToken(int state) {
+        return tokens.get(state);
+    }
+
+    public int getPriority(int state) {
+        return priorities.get(state);
+    }
+
+    /* Add the states of a lexer rule and return its {start, end} states.
+       Names in the rule refer to the bodies in definitions.
+     */
+    public int[] addRule(String ruleName, Map<String, String> definitions) {
+        this.definitions = definitions;
+        expanding.clear();
+        return parseReference(ruleName);
+    }
+
+    private int[] parseReference(String ruleName) {
+        String body = definitions.get(ruleName);
+        if (body == null) {
+            throw new IllegalArgumentException("ERROR: Unknown lexer rule: " + ruleName);
+        }
+        if (!expanding.add(ruleName)) {
+            throw new IllegalArgumentException("ERROR: Recursive lexer rule: " + ruleName);
+        }
+        String savedName = name;
+        String savedPattern = pattern;
+        int savedPos = pos;
+        name = ruleName;
+        pattern = body;
+        pos = 0;
+        int[] fragment = parseAlternatives();
+        skipSpaces();
+        if (pos < pattern.length()) {
+            throw error("Unexpected " + pattern.charAt(pos));
+        }
+        name = savedName;
+        pattern = savedPattern;
+        pos = savedPos;
+        expanding.remove(ruleName);
+        return fragment;
+    }
+
+    private int[] parseAlternatives() {
+        int[] fragment = parseSequence();
+        skipSpaces();
+        if (!peek('|')) {
+            return fragment;
+        }
+        int start = addState();
+        int end = addState();
+        addEpsilon(start, fragment[0]);
+        addEpsilon(fragment[1], end);
+        while (peek('|')) {
+            pos++;
+            fragment = parseSequence();
+            addEpsilon(start, fragment[0]);
+            addEpsilon(fragment[1], end);
+            skipSpaces();
+        }
+        return new int[]{start, end};
+    }
+
+    private int[] parseSequence() {
+        int start = addState();
+        int end = start;
+        skipSpaces();
+        while (pos < pattern.length() && !peek('|') && !peek(')')) {
+            int[] fragment = parseRepeat();
+            addEpsilon(end, fragment[0]);
+            end = fragment[1];
+            skipSpaces();
+        }
+        return new int[]{start, end};
+    }
+
+    private int[] parseRepeat() {
+        int[] fragment = parseAtom();
+        skipSpaces();
+        if (pos >= pattern.length()) {
+            return fragment;
+        }
+        char op = pattern.charAt(pos);
+        if (op != '*' && op != '+' && op != '?') {
+            return fragment;
+        }
+        pos++;
+        if (op != '?' && peek('?')) {
+            throw error("Non-greedy loops are not supported");
+        }
+        int start = addState();
+        int end = addState();
+        addEpsilon(start, fragment[0]);
+        addEpsilon(fragment[1], end);
+        if (op != '+') {
+            addEpsilon(start, end);
+        }
+        if (op != '?') {
+            addEpsilon(fragment[1], fragment[0]);
+        }
+        return new int[]{start, end};
+    }
+
+    private int[] parseAtom() {
+        char c = pattern.charAt(pos);
+        if (c == '(') {
+            pos++;
+            int[] fragment = parseAlternatives();
+            expect(')');
+            return fragment;
+        }
+        if (c == '\'' || c == '[' || c == '~' || c == '.') {
+            return addRanges(parseSet());
+        }
+        if (Character.isLetter(c)) {
+            int begin = pos;
+            while (pos < pattern.length()
+                    && (Character.isLetterOrDigit(pattern.charAt(pos)) || pattern.charAt(pos) == '_')) {
+                pos++;
+            }
+            String reference = pattern.substring(begin, pos);
+            if (!definitions.containsKey(reference)) {
+                throw error("Unknown lexer rule " + reference);
+            }
+            return parseReference(reference);
+        }
+        throw error("Unexpected " + c);
+    }
+
+    /* Parse an atom that is a literal, range, set, negation or any char.
+       A literal of more than one char is returned as a sequence of single
+       char ranges, marked by a null separator after each char.
+     */
+    private List<int[]> parseSet() {
+        char c = pattern.charAt(pos);
+        if (c == '~') {
+            pos++;
+            skipSpaces();
+            List<int[]> ranges = parseSet();
+            if (ranges.contains(null)) {
+                throw error("Only single chars and sets can be negated");
+            }
+            return complement(ranges);
+        }
+        List<int[]> ranges = new ArrayList<>();
+        if (c == '.') {
+            pos++;
+            ranges.add(new int[]{0, MAX_CHAR});
+        } else if (c == '[') {
+            pos++;
+            parseSetRanges(ranges);
+        } else if (c == '\'') {
+            String literal = parseLiteral();
+            skipSpaces();
+            if (literal.length() == 1 && pattern.startsWith("..", pos)) {
+                pos += 2;
+                skipSpaces();
+                String high = parseLiteral();
+                if (high.length() != 1 || high.charAt(0) < literal.charAt(0)) {
+                    throw error("Bad range");
+                }
+                ranges.add(new int[]{literal.charAt(0), high.charAt(0)});
+            } else if (literal.length() == 1) {
+                ranges.add(new int[]{literal.charAt(0), literal.charAt(0)});
+            } else {
+                for (char literalChar : literal.toCharArray()) {
+                    ranges.add(new int[]{literalChar, literalChar});
+                    ranges.add(null);
+                }
+            }
+        } else {
+            throw error("Expected a set after ~");
+        }
+        return ranges;
+    }
+
+    private void parseSetRanges(List<int[]> ranges) {
+        while (pos < pattern.length() && pattern.charAt(pos) != ']') {
+            char low = parseChar();
+            char high = low;
+            if (pos + 1 < pattern.length() && pattern.charAt(pos) == '-'
+                    && pattern.charAt(pos + 1) != ']') {
+                pos++;
+                high = parseChar();
+            }
+            if (high < low) {
+                throw error("Bad range in set");
+            }
+            ranges.add(new int[]{low, high});
+        }
+        expect(']');
+    }
+
+    private String parseLiteral() {
+        expect('\'');
+        StringBuilder literal = new StringBuilder();
+        while (pos < pattern.length() && pattern.charAt(pos) != '\'') {
+            literal.append(parseChar());
+        }
+        expect('\'');
+        if (literal.length() == 0) {
+            throw error("Empty literal");
+        }
+        return literal.toString();
+    }
+
+    private char parseChar() {
+        char c = pattern.charAt(pos++);
+        if (c != '\\') {
+            return c;
+        }
+        if (pos >= pattern.length()) {
+            throw error("Escape at end of rule");
+        }
+        c = pattern.charAt(pos++);
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'u':
+                if (pos + 4 > pattern.length()) {
+                    throw error("Bad unicode escape");
+                }
+                try {
+                    char unicode = (char) Integer.parseInt(pattern.substring(pos, pos + 4), 16);
+                    pos += 4;
+                    return unicode;
+                } catch (NumberFormatException e) {
+                    throw error("Bad unicode escape");
+                }
+            default:
+                return c;
+        }
+    }
+
+    /* Add the ranges as one edge each from a new start state, or as a
+       sequence of chars for a literal.
+     */
+    private int[] addRanges(List<int[]> ranges) {
+        int start = addState();
+        if (ranges.contains(null)) {
+            int end = start;
+            for (int[] range : ranges) {
+                if (range != null) {
+                    int next = addState();
+                    addEdge(end, range[0], range[1], next);
+                    end = next;
+                }
+            }
+            return new int[]{start, end};
+        }
+        int end = addState();
+        for (int[] range : ranges) {
+            addEdge(start, range[0], range[1], end);
+        }
+        return new int[]{start, end};
+    }
+
+    /* Return the ranges of the chars that are in none of the ranges. */
+    protected static List<int[]> complement(List<int[]> ranges) {
+        List<int[]> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingInt(range -> range[0]));
+        List<int[]> result = new ArrayList<>();
+        int next = 0;
+        for (int[] range : sorted) {
+            if (range[0] > next) {
+                result.add(new int[]{next, range[0] - 1});
+            }
+            next = Math.max(next, range[1] + 1);
+        }
+        if (next <= MAX_CHAR) {
+            result.add(new int[]{next, MAX_CHAR});
+        }
+        return result;
+    }
+
+    private void skipSpaces() {
+        while (pos < pattern.length() && Character.isWhitespace(pattern.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private boolean peek(char c) {
+        return pos < pattern.length() && pattern.charAt(pos) == c;
+    }
+
+    private void expect(char c) {
+        if (!peek(c)) {
+            throw error("Expected " + c);
+        }
+        pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("ERROR: " + message + " in lexer rule " + name
+                + " at " + pos + ": " + pattern);
+    }
+}
@@ -0,0 +1,277 @@
+package org.grammlex.v1;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/* A PackedTable is a read-only, compressed form of a table of ints with a
+   row per state, where 0 is an empty cell. It is compressed in three steps:
+
+   1. Columns with the same value in every row share an equivalence class,
+      so the rows are only as wide as the number of classes.
+   2. Equal rows are stored once and states share them.
+   3. The distinct rows are overlaid in one comb vector with row
+      displacement: each row gets a base offset so that its non-empty cells
+      land on free entries, and a check vector records which row owns each
+      entry. A lookup of an entry owned by another row is an empty cell.
+
+   The rows are placed densest first and each at the first base where it
+   fits, which is the usual first-fit heuristic.
+
+   The arrays are kept in IntBuffers so that a table read by TableFile can
+   use the mapped file in place.
+ */
+public class PackedTable {
+    private final int rowCount;
+    private final int columnCount;
+    private final IntBuffer columnClasses; // equivalence class of each column
+    private final int classCount;
+    private final IntBuffer rowIndexes; // distinct row of each row
+    private final int distinctRows;
+    private final IntBuffer bases; // offset of each distinct row in the vectors
+    private final IntBuffer values;
+    private final IntBuffer checks; // distinct row owning each entry, or -1
+    private final int cells; // non-empty cells of the distinct rows
+
+    public PackedTable(List<int[]> rows, int columnCount) {
+        this.rowCount = rows.size();
+        this.columnCount = columnCount;
+
+        int[] classOfColumn = new int[columnCount];
+        Map<IntBuffer, Integer> classes = new HashMap<>();
+        List<Integer> classColumns = new ArrayList<>(); // a column of each class
+        for (int column = 0; column < columnCount; column++) {
+            int[] columnValues = new int[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                columnValues[row] = rows.get(row)[column];
+            }
+            Integer columnClass = classes.putIfAbsent(IntBuffer.wrap(columnValues),
+                    classColumns.size());
+            if (columnClass == null) {
+                columnClass = classColumns.size();
+                classColumns.add(column);
+            }
+            classOfColumn[column] = columnClass;
+        }
+        columnClasses = IntBuffer.wrap(classOfColumn);
+        classCount = classColumns.size();
+
+        int[] distinctRowOfRow = new int[rowCount];
+        Map<IntBuffer, Integer> rowsByValue = new HashMap<>();
+        List<int[]> distinct = new ArrayList<>();
+        for (int row = 0; row < rowCount; row++) {
+            int[] classRow = new int[classCount];
+            for (int c = 0; c < classCount; c++) {
+                classRow[c] = rows.get(row)[classColumns.get(c)];
+            }
+            Integer index = rowsByValue.putIfAbsent(IntBuffer.wrap(classRow), distinct.size());
+            if (index == null) {
+                index = distinct.size();
+                distinct.add(classRow);
+            }
+            distinctRowOfRow[row] = index;
+        }
+        rowIndexes = IntBuffer.wrap(distinctRowOfRow);
+        distinctRows = distinct.size();
+
+        int[] rowBases = new int[distinctRows];
+        int[][] packed = pack(distinct, rowBases);
+        bases = IntBuffer.wrap(rowBases);
+        values = IntBuffer.wrap(packed[0]);
+        checks = IntBuffer.wrap(packed[1]);
+        int count = 0;
+        for (int check : packed[1]) {
+            if (check != -1) {
+                count++;
+            }
+        }
+        cells = count;
+    }
+
+    private PackedTable(int[] counts, IntBuffer[] arrays) {
+        rowCount = counts[0];
+        columnCount = counts[1];
+        classCount = counts[2];
+        distinctRows = counts[3];
+        cells = counts[4];
+        columnClasses = arrays[0];
+        rowIndexes = arrays[1];
+        bases = arrays[2];
+        values = arrays[3];
+        checks = arrays[4];
+    }
+
+    /* Write the counts and the arrays of the table. */
+    protected void write(DataOutputStream out) throws IOException {
+        for (int count : new int[]{rowCount, columnCount, classCount, distinctRows, cells}) {
+            out.writeInt(count);
+        }
+        for (IntBuffer array : new IntBuffer[]{columnClasses, rowIndexes, bases, values, checks}) {
+            TableFile.writeInts(out, array);
+        }
+    }
+
+    /* Read a table written by write, leaving its arrays in the buffer. */
+    protected static PackedTable read(ByteBuffer in) {
+        int[] counts = new int[5];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = in.getInt();
+        }
+        IntBuffer[] arrays = new IntBuffer[5];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = TableFile.readInts(in);
+        }
+        if (arrays[0].limit() != counts[1] || arrays[1].limit() != counts[0]
+                || arrays[2].limit() != counts[3] || arrays[3].limit() != arrays[4].limit()) {
+            throw new IllegalArgumentException("ERROR: Bad packed table in table file.");
+        }
+        return new PackedTable(counts, arrays);
+    }
+
+    /* Place the rows in the comb vector and return the values and checks. */
+    private static int[][] pack(List<int[]> rows, int[] bases) {
+        List<Integer> order = new ArrayList<>();
+        int[][] rowColumns = new int[rows.size()][];
+        for (int row = 0; row < rows.size(); row++) {
+            order.add(row);
+            rowColumns[row] = nonEmptyColumns(rows.get(row));
+        }
+        // Densest first; the sort is stable so the packing is deterministic
+        order.sort((row1, row2) -> rowColumns[row2].length - rowColumns[row1].length);
+
+        int[] values = new int[0];
+        int[] checks = new int[0];
+        int used = 0; // length of the vectors in use
+        for (int row : order) {
+            int[] columns = rowColumns[row];
+            int base = 0;
+            while (!fits(checks, columns, base)) {
+                base++;
+            }
+            bases[row] = base;
+            if (columns.length > 0) {
+                int end = base + columns[columns.length - 1] + 1;
+                if (end > values.length) {
+                    int length = Math.max(end, values.length * 2);
+                    values = Arrays.copyOf(values, length);
+                    int oldLength = checks.length;
+                    checks = Arrays.copyOf(checks, length);
+                    Arrays.fill(checks, oldLength, length, -1);
+                }
+                used = Math.max(used, end);
+                for (int column : columns) {
+                    values[base + column] = rows.get(row)[column];
+                    checks[base + column] = row;
+                }
+            }
+        }
+        return new int[][]{Arrays.copyOf(values, used), Arrays.copyOf(checks, used)};
+    }
+
+    private static int[] nonEmptyColumns(int[] row) {
+        int count = 0;
+        for (int value : row) {
+            if (value != 0) {
+                count++;
+            }
+        }
+        int[] columns = new int[count];
+        int i = 0;
+        for (int column = 0; column < row.length; column++) {
+            if (row[column] != 0) {
+                columns[i++] = column;
+            }
+        }
+        return columns;
+    }
+
+    private static boolean fits(int[] checks, int[] columns, int base) {
+        for (int column : columns) {
+            if (base + column < checks.length && checks[base + column] != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Return the value of a cell, or 0 if it is empty. */
+    public int get(int row, int column) {
+        int distinctRow = rowIndexes.get(row);
+        int i = bases.get(distinctRow) + columnClasses.get(column);
+        if (i < checks.limit() && checks.get(i) == distinctRow) {
+            return values.get(i);
+        }
+        return 0;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /* The number of column equivalence classes. */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public int getDistinctRowCount() {
+        return distinctRows;
+    }
+
+    /* The equivalence class of each column; columns of a class always have
+       the same value in a row.
+     */
+    public int getColumnClass(int column) {
+        return columnClasses.get(column);
+    }
+
+    /* The length of the comb vector. */
+    public int getVectorLength() {
+        return values.limit();
+    }
+
+    /* The size of the packed arrays in bytes. */
+    public long getSizeInBytes() {
+        return 4L * (columnClasses.limit() + rowIndexes.limit() + bases.limit()
+                + values.limit() + checks.limit());
+    }
+
+    /* The size in bytes of the same table as a plain int array per row. */
+    public long getUnpackedSizeInBytes() {
+        return 4L * rowCount * columnCount;
+    }
+
+    /* The fraction of the comb vector entries that hold a cell. */
+    public double getFillRatio() {
+        if (values.limit() == 0) {
+            return 1.0;
+        }
+        return (double) cells / values.limit();
+    }
+
+    /* The arrays, for writing the table out. */
+    public int[] getColumnClasses() {
+        return TableFile.toArray(columnClasses);
+    }
+
+    public int[] getRowIndexes() {
+        return TableFile.toArray(rowIndexes);
+    }
+
+    public int[] getBases() {
+        return TableFile.toArray(bases);
+    }
+
+    public int[] getValues() {
+        return TableFile.toArray(values);
+    }
+
+    public int[] getChecks() {
+        return TableFile.toArray(checks);
+    }
+}
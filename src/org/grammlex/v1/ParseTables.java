@@ -0,0 +1,281 @@
+package org.grammlex.v1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/* ParseTables is the compiled form of the action and goto tables of an
+   LR1Builder, for parsers rather than for output. Both tables are
+   PackedTables indexed by state and symbol id.
+
+   An action is packed into one int: the kind in the low two bits and the
+   operand, a state for SHIFT or a rule index for REDUCE, above them. 0 is
+   ERROR, an empty cell. An ERROR with an operand is a cell of GLRTables
+   with several actions, which a deterministic parser rejects like an
+   empty one. A goto cell holds the target state plus one, so that 0 is
+   empty there too.
+
+   The tables also hold the variable id and the length of every rule, which
+   is what a parser needs to reduce, the symbols of every rule and the name
+   of every symbol. Like the PackedTables, these are kept in buffers so
+   that TableFile can load the tables without building any objects; a
+   name is only decoded when it is asked for.
+ */
+public class ParseTables {
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    private final int stateCount;
+    private final int symbolCount;
+    private final int endSymbol;
+    private final PackedTable actions;
+    private final PackedTable gotos;
+    private final IntBuffer terminals; // 1 for a terminal, 0 for a variable
+    private final IntBuffer nameOffsets; // start of each name, and the end
+    private final ByteBuffer names; // UTF-8 names of the symbols
+    private final IntBuffer ruleVars;
+    private final IntBuffer ruleLengths;
+    private final IntBuffer ruleOffsets; // start of each rule's symbols
+    private final IntBuffer ruleSymbols;
+
+    protected ParseTables(Grammar grammar, List<Action[]> actionTable, List<int[]> gotoTable) {
+        SymbolTable symbols = grammar.getSymbols();
+        stateCount = actionTable.size();
+        symbolCount = symbols.size();
+        endSymbol = symbols.getEndSymbol();
+
+        List<int[]> actionRows = new ArrayList<>();
+        for (Action[] row : actionTable) {
+            int[] packedRow = new int[symbolCount];
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                if (row[symbol] != null) {
+                    packedRow[symbol] = packAction(row[symbol]);
+                }
+            }
+            actionRows.add(packedRow);
+        }
+        actions = new PackedTable(actionRows, symbolCount);
+
+        List<int[]> gotoRows = new ArrayList<>();
+        for (int[] row : gotoTable) {
+            int[] packedRow = new int[symbolCount];
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                packedRow[symbol] = row[symbol] + 1;
+            }
+            gotoRows.add(packedRow);
+        }
+        gotos = new PackedTable(gotoRows, symbolCount);
+
+        int[] terminalFlags = new int[symbolCount];
+        int[] offsets = new int[symbolCount + 1];
+        ByteArrayOutputStream allNames = new ByteArrayOutputStream();
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            terminalFlags[symbol] = symbols.isTerminal(symbol) ? 1 : 0;
+            byte[] name = symbols.getName(symbol).getBytes(StandardCharsets.UTF_8);
+            allNames.write(name, 0, name.length);
+            offsets[symbol + 1] = allNames.size();
+        }
+        terminals = IntBuffer.wrap(terminalFlags);
+        nameOffsets = IntBuffer.wrap(offsets);
+        names = ByteBuffer.wrap(allNames.toByteArray());
+
+        List<Rule> rules = grammar.getRules();
+        int[] vars = new int[rules.size()];
+        int[] lengths = new int[rules.size()];
+        int[] starts = new int[rules.size() + 1];
+        for (int i = 0; i < rules.size(); i++) {
+            vars[i] = rules.get(i).getVarSymbol();
+            lengths[i] = rules.get(i).getSymbols().length;
+            starts[i + 1] = starts[i] + lengths[i];
+        }
+        int[] allSymbols = new int[starts[rules.size()]];
+        for (int i = 0; i < rules.size(); i++) {
+            System.arraycopy(rules.get(i).getSymbols(), 0, allSymbols, starts[i], lengths[i]);
+        }
+        ruleVars = IntBuffer.wrap(vars);
+        ruleLengths = IntBuffer.wrap(lengths);
+        ruleOffsets = IntBuffer.wrap(starts);
+        ruleSymbols = IntBuffer.wrap(allSymbols);
+    }
+
+    private ParseTables(int[] counts, PackedTable actions, PackedTable gotos,
+                        ByteBuffer names, IntBuffer[] arrays) {
+        stateCount = counts[0];
+        symbolCount = counts[1];
+        endSymbol = counts[2];
+        this.actions = actions;
+        this.gotos = gotos;
+        this.names = names;
+        terminals = arrays[0];
+        nameOffsets = arrays[1];
+        ruleVars = arrays[2];
+        ruleLengths = arrays[3];
+        ruleOffsets = arrays[4];
+        ruleSymbols = arrays[5];
+    }
+
+    /* Write the tables in the layout that read expects. */
+    protected void write(DataOutputStream out) throws IOException {
+        out.writeInt(stateCount);
+        out.writeInt(symbolCount);
+        out.writeInt(endSymbol);
+        TableFile.writeInts(out, terminals);
+        TableFile.writeInts(out, nameOffsets);
+        TableFile.writeBytes(out, names);
+        TableFile.writeInts(out, ruleVars);
+        TableFile.writeInts(out, ruleLengths);
+        TableFile.writeInts(out, ruleOffsets);
+        TableFile.writeInts(out, ruleSymbols);
+        actions.write(out);
+        gotos.write(out);
+    }
+
+    /* Read tables written by write, leaving their arrays in the buffer. */
+    protected static ParseTables read(ByteBuffer in) {
+        int[] counts = {in.getInt(), in.getInt(), in.getInt()};
+        IntBuffer[] arrays = new IntBuffer[6];
+        arrays[0] = TableFile.readInts(in);
+        arrays[1] = TableFile.readInts(in);
+        ByteBuffer names = TableFile.readBytes(in);
+        for (int i = 2; i < arrays.length; i++) {
+            arrays[i] = TableFile.readInts(in);
+        }
+        PackedTable actions = PackedTable.read(in);
+        PackedTable gotos = PackedTable.read(in);
+        if (arrays[0].limit() != counts[1] || arrays[1].limit() != counts[1] + 1
+                || actions.getRowCount() != counts[0] || gotos.getRowCount() != counts[0]
+                || actions.getColumnCount() != counts[1] || gotos.getColumnCount() != counts[1]
+                || arrays[3].limit() != arrays[2].limit() || arrays[4].limit() != arrays[2].limit() + 1) {
+            throw new IllegalArgumentException("ERROR: Bad parse tables in table file.");
+        }
+        return new ParseTables(counts, actions, gotos, names, arrays);
+    }
+
+    protected static int packAction(Action action) {
+        switch (action.getType()) {
+            case Action.SHIFT:
+                return pack(SHIFT, action.getOperand());
+            case Action.REDUCE:
+                return pack(REDUCE, action.getOperand());
+            case Action.ACCEPT:
+                return pack(ACCEPT, 0);
+            case Action.CONFLICT:
+                return pack(ERROR, action.getOperand() + 1);
+            default:
+                return ERROR;
+        }
+    }
+
+    public static int pack(int kind, int operand) {
+        return (operand << 2) | kind;
+    }
+
+    public static int kindOf(int action) {
+        return action & 3;
+    }
+
+    public static int operandOf(int action) {
+        return action >>> 2;
+    }
+
+    /* Return the packed action of a state on a terminal. */
+    public int getAction(int state, int terminal) {
+        return actions.get(state, terminal);
+    }
+
+    /* Return the goto state of a state on a variable, or -1. */
+    public int getGoto(int state, int variable) {
+        return gotos.get(state, variable) - 1;
+    }
+
+    public int getRuleVar(int rule) {
+        return ruleVars.get(rule);
+    }
+
+    public int getRuleLength(int rule) {
+        return ruleLengths.get(rule);
+    }
+
+    /* Return the symbol at a position of the right side of a rule. */
+    public int getRuleSymbol(int rule, int position) {
+        return ruleSymbols.get(ruleOffsets.get(rule) + position);
+    }
+
+    public int getRuleCount() {
+        return ruleVars.limit();
+    }
+
+    public String getSymbolName(int symbol) {
+        int start = nameOffsets.get(symbol);
+        byte[] bytes = new byte[nameOffsets.get(symbol + 1) - start];
+        names.duplicate().position(start).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public boolean isTerminal(int symbol) {
+        return terminals.get(symbol) != 0;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getSymbolCount() {
+        return symbolCount;
+    }
+
+    public int getEndSymbol() {
+        return endSymbol;
+    }
+
+    public PackedTable getActionTable() {
+        return actions;
+    }
+
+    public PackedTable getGotoTable() {
+        return gotos;
+    }
+
+    /* The size of the action and goto tables and the rule arrays a parser
+       uses, in bytes.
+     */
+    public long getSizeInBytes() {
+        return actions.getSizeInBytes() + gotos.getSizeInBytes()
+                + 4L * (ruleVars.limit() + ruleLengths.limit());
+    }
+
+    /* The fraction of the comb vector entries of both tables that hold a cell. */
+    public double getFillRatio() {
+        int length = actions.getVectorLength() + gotos.getVectorLength();
+        if (length == 0) {
+            return 1.0;
+        }
+        return (actions.getFillRatio() * actions.getVectorLength()
+                + gotos.getFillRatio() * gotos.getVectorLength()) / length;
+    }
+
+    public StringBuilder outputSummary(StringBuilder out) {
+        outputTableSummary(out, "Action", actions);
+        outputTableSummary(out, "Goto", gotos);
+        out.append("Total: ").append(getSizeInBytes()).append(" bytes, fill ratio ")
+                .append(String.format(Locale.ROOT, "%.2f", getFillRatio())).append("\n");
+        return out;
+    }
+
+    private static void outputTableSummary(StringBuilder out, String name, PackedTable table) {
+        out.append(name).append(" table: ").append(table.getRowCount()).append(" states, ")
+                .append(table.getDistinctRowCount()).append(" distinct rows, ")
+                .append(table.getClassCount()).append(" column classes, ")
+                .append(table.getSizeInBytes()).append(" bytes (")
+                .append(table.getUnpackedSizeInBytes()).append(" unpacked), fill ratio ")
+                .append(String.format(Locale.ROOT, "%.2f", table.getFillRatio())).append("\n");
+    }
+}
@@ -0,0 +1,82 @@
+package org.grammlex.v1;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* A RecordingBuildListener keeps the events of a build as numbers, for
+   tools that look at how an automaton was built rather than read a trace:
+   the order the states were processed in, every transition with its kind,
+   and the number of items of each state after closure. Nothing is
+   formatted and no item is kept.
+
+   The state numbers are those of the build as it went. Pager's
+   construction renumbers its states when it removes the unreachable ones
+   at the end, so its numbers may differ from those of getStates.
+ */
+public class RecordingBuildListener extends BuildListener {
+    private final List<Integer> processedStates = new ArrayList<>();
+    private final List<int[]> transitions = new ArrayList<>();
+    private final Map<Integer, Integer> closureSizes = new HashMap<>();
+
+    @Override
+    public void startState(LR1Item item, LR1State state) {
+        closureSizes.put(0, state.getItems().size());
+    }
+
+    @Override
+    public void processState(int stateNum, int transitionCount) {
+        processedStates.add(stateNum);
+    }
+
+    @Override
+    public void transition(int stateNum, int symbol, Set<LR1Item> kernel, LR1State target,
+                           int targetNum, int kind, int splitFrom) {
+        transitions.add(new int[] {stateNum, symbol, targetNum, kind, splitFrom});
+        if (kind != TO_EXISTING) {
+            closureSizes.put(targetNum, target.getItems().size());
+        }
+    }
+
+    /* The states in the order they were processed. A state of Pager's
+       construction is in it once for every time it was processed.
+     */
+    public List<Integer> getProcessedStates() {
+        return processedStates;
+    }
+
+    public int getTransitionCount() {
+        return transitions.size();
+    }
+
+    public int getTransitionFrom(int transition) {
+        return transitions.get(transition)[0];
+    }
+
+    public int getTransitionSymbol(int transition) {
+        return transitions.get(transition)[1];
+    }
+
+    public int getTransitionTarget(int transition) {
+        return transitions.get(transition)[2];
+    }
+
+    /* TO_EXISTING, TO_NEW or TO_MERGED. */
+    public int getTransitionKind(int transition) {
+        return transitions.get(transition)[3];
+    }
+
+    /* The state a new state was split from, or -1. */
+    public int getTransitionSplitFrom(int transition) {
+        return transitions.get(transition)[4];
+    }
+
+    /* The number of items of a state after its last closure, or -1 if the
+       build made no such state.
+     */
+    public int getClosureSize(int stateNum) {
+        return closureSizes.getOrDefault(stateNum, -1);
+    }
+}
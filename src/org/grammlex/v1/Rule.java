@@ -3,13 +3,41 @@ package org.grammlex.v1;
 import java.util.Arrays;
 import java.util.Objects;
 
+/* A Rule is a variable on the left and a sequence of terms on the right.
+
+   The rules of a Grammar also have their index in the grammar and the ids
+   of their variable and terms in the grammar's SymbolTable, which is what
+   the LR construction works with. The names are kept for output and for
+   the extended rules, whose terms still have modifiers and are not
+   symbols.
+ */
 public class Rule {
     protected final String variable;
     protected final String[] terms;
+    private final int index;
+    private final int varSymbol;
+    private final int[] symbols;
+    private final SymbolTable symbolTable;
+    private final int hash;
 
     public Rule(String variable, String[] terms) {
         this.variable = variable;
         this.terms = terms;
+        this.index = -1;
+        this.varSymbol = -1;
+        this.symbols = new int[0];
+        this.symbolTable = null;
+        this.hash = computeHash();
+    }
+
+    public Rule(String variable, String[] terms, int index, SymbolTable symbolTable) {
+        this.variable = variable;
+        this.terms = terms;
+        this.index = index;
+        this.varSymbol = symbolTable.getId(variable);
+        this.symbols = symbolTable.getIds(terms);
+        this.symbolTable = symbolTable;
+        this.hash = computeHash();
     }
 
     @Override
@@ -36,11 +64,33 @@ public class Rule {
         return terms;
     }
 
+    /* The index of the rule in its grammar, or -1. */
+    public int getIndex() {
+        return index;
+    }
+
+    public int getVarSymbol() {
+        return varSymbol;
+    }
+
+    /* The symbol ids of the terms. Epsilon rules have none. */
+    public int[] getSymbols() {
+        return symbols;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    private int computeHash() {
+        int h = 7;
+        h = h * 31 + Objects.hashCode(this.variable);
+        h = h * 31 + h + Arrays.deepHashCode(this.terms);
+        return h;
+    }
+
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = hash * 31 + Objects.hashCode(this.variable);
-        hash = hash * 31 + hash + Arrays.deepHashCode(this.terms);
         return hash;
     }
 
@@ -56,7 +106,7 @@ public class Rule {
             return false;
         }
         final Rule other = (Rule) obj;
-        if (!Objects.equals(this.variable, other.variable)) {
+        if (hash != other.hash || !Objects.equals(this.variable, other.variable)) {
             return false;
         }
         return Arrays.deepEquals(this.terms, other.terms);
@@ -0,0 +1,121 @@
+package org.grammlex.v1;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntSupplier;
+
+/* A Scanner runs a LexerDfa over a CharSequence or a ByteBuffer and
+   returns the symbol ids of the tokens, which are the terminal ids of
+   the parse tables of the same grammar. It is an IntSupplier, so an
+   LRParser can parse straight from it.
+
+   Every token is the longest match from the current position. Skipped
+   tokens are scanned and dropped, the end of the input gives the end
+   symbol, and a char that starts no token gives ERROR and is consumed so
+   that the caller can go on. A ByteBuffer is scanned from its position to
+   its limit with every byte read as a Latin-1 char.
+ */
+public class Scanner implements IntSupplier {
+    public static final int ERROR = -1;
+
+    private final LexerDfa dfa;
+    private final int endSymbol;
+    private CharSequence chars;
+    private ByteBuffer bytes;
+    private int offset;
+    private int length;
+    private int pos;
+    private int tokenStart;
+    private int tokenEnd;
+
+    public Scanner(LexerDfa dfa) {
+        this.dfa = dfa;
+        this.endSymbol = dfa.getGrammar().getSymbols().getEndSymbol();
+        reset("");
+    }
+
+    public void reset(CharSequence input) {
+        chars = input;
+        bytes = null;
+        offset = 0;
+        length = input.length();
+        pos = 0;
+        tokenStart = 0;
+        tokenEnd = 0;
+    }
+
+    public void reset(ByteBuffer input) {
+        chars = null;
+        bytes = input;
+        offset = input.position();
+        length = input.limit() - offset;
+        pos = 0;
+        tokenStart = 0;
+        tokenEnd = 0;
+    }
+
+    @Override
+    public int getAsInt() {
+        return nextToken();
+    }
+
+    /* Return the next token, the end symbol at the end of the input or
+     * ERROR.
+     */
+    public int nextToken() {
+        while (true) {
+            tokenStart = pos;
+            if (pos == length) {
+                tokenEnd = pos;
+                return endSymbol;
+            }
+            int state = dfa.getStartState();
+            int token = LexerDfa.NO_TOKEN;
+            int end = pos;
+            for (int i = pos; i < length; i++) {
+                state = dfa.getNextState(state, dfa.getClass(charAt(i)));
+                if (state == LexerDfa.NO_STATE) {
+                    break;
+                }
+                if (dfa.getAccept(state) != LexerDfa.NO_TOKEN) {
+                    token = dfa.getAccept(state);
+                    end = i + 1;
+                }
+            }
+            if (token == LexerDfa.NO_TOKEN) {
+                pos++;
+                tokenEnd = pos;
+                return ERROR;
+            }
+            pos = end;
+            tokenEnd = end;
+            if (token != LexerDfa.SKIP) {
+                return token;
+            }
+        }
+    }
+
+    private int charAt(int index) {
+        if (chars != null) {
+            return chars.charAt(index);
+        }
+        return bytes.get(offset + index) & 0xff;
+    }
+
+    /* The offset of the last token from the start of the input. */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    /* The text of the last token. */
+    public String getTokenText() {
+        StringBuilder text = new StringBuilder(tokenEnd - tokenStart);
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            text.append((char) charAt(i));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,217 @@
+package org.grammlex.v1;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/* SourceGenerator writes ParseTables out as the source of a Java class, so
+   that the tables can be compiled into an application instead of being
+   built or loaded when it starts.
+
+   The class has no dependencies. It holds:
+
+   - an int constant for every symbol, named after the terminal, or after
+     the variable with a V_ prefix, and "$" as EOF. A name that is taken,
+     by another symbol or a field of the class such as ERROR, gets the
+     symbol id as a suffix
+   - the arrays of both PackedTables and the variable and length of every
+     rule, as static final int arrays
+   - action, gotoState, ruleVar and ruleLength lookups that return the same
+     values as ParseTables, with the same packing of actions
+
+   The arrays are written as string literals with two chars per int and
+   decoded once when the class is loaded. Array initializers would be
+   compiled into code that stores one element at a time, which soon hits
+   the 64K limit on the size of a method; a string literal only has to be
+   under 64K bytes, so long arrays are split into several literals.
+ */
+public class SourceGenerator {
+    // Ints per string literal; at most 3 bytes per char keeps a literal under 64K
+    protected static final int CHUNK_INTS = 10000;
+    private static final int LINE_CHARS = 80;
+    // Fields of every generated class, which a symbol constant must not take
+    private static final String[] FIXED_FIELDS = {"ERROR", "SHIFT", "REDUCE", "ACCEPT",
+            "STATE_COUNT", "SYMBOL_COUNT", "RULE_COUNT", "SYMBOL_NAMES", "RULE_VARS", "RULE_LENGTHS"};
+    private static final String[] TABLE_FIELDS = {"CLASSES", "ROWS", "BASES", "VALUES", "CHECKS"};
+
+    private final ParseTables tables;
+    private final String packageName;
+    private final String className;
+
+    public SourceGenerator(ParseTables tables, String packageName, String className) {
+        if (!isIdentifier(className)) {
+            throw new IllegalArgumentException("ERROR: Bad class name: " + className);
+        }
+        if (packageName != null && !packageName.isEmpty()) {
+            for (String part : packageName.split("\\.", -1)) {
+                if (!isIdentifier(part)) {
+                    throw new IllegalArgumentException("ERROR: Bad package name: " + packageName);
+                }
+            }
+        }
+        this.tables = tables;
+        this.packageName = packageName;
+        this.className = className;
+    }
+
+    public StringBuilder generate(StringBuilder out) {
+        if (packageName != null && !packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("/* Parse tables generated by Grammlex. Do not edit. */\n");
+        out.append("public final class ").append(className).append(" {\n");
+        out.append("    public static final int ERROR = ").append(ParseTables.ERROR).append(";\n");
+        out.append("    public static final int SHIFT = ").append(ParseTables.SHIFT).append(";\n");
+        out.append("    public static final int REDUCE = ").append(ParseTables.REDUCE).append(";\n");
+        out.append("    public static final int ACCEPT = ").append(ParseTables.ACCEPT).append(";\n\n");
+        out.append("    public static final int STATE_COUNT = ").append(tables.getStateCount()).append(";\n");
+        out.append("    public static final int SYMBOL_COUNT = ").append(tables.getSymbolCount()).append(";\n");
+        out.append("    public static final int RULE_COUNT = ").append(tables.getRuleCount()).append(";\n\n");
+        outputSymbols(out);
+        outputTable(out, "ACTION", tables.getActionTable());
+        outputTable(out, "GOTO", tables.getGotoTable());
+        int[] ruleVars = new int[tables.getRuleCount()];
+        int[] ruleLengths = new int[tables.getRuleCount()];
+        for (int rule = 0; rule < ruleVars.length; rule++) {
+            ruleVars[rule] = tables.getRuleVar(rule);
+            ruleLengths[rule] = tables.getRuleLength(rule);
+        }
+        outputArray(out, "RULE_VARS", ruleVars);
+        outputArray(out, "RULE_LENGTHS", ruleLengths);
+        outputMethods(out);
+        out.append("}\n");
+        return out;
+    }
+
+    protected void outputSymbols(StringBuilder out) {
+        Set<String> used = new HashSet<>(Arrays.asList(FIXED_FIELDS));
+        for (String field : TABLE_FIELDS) {
+            used.add("ACTION_" + field);
+            used.add("GOTO_" + field);
+        }
+        StringBuilder names = new StringBuilder();
+        for (int symbol = 0; symbol < tables.getSymbolCount(); symbol++) {
+            String name = tables.getSymbolName(symbol);
+            String constant = constantName(name, tables.isTerminal(symbol));
+            String unique = constant;
+            for (int n = 0; !used.add(unique); n++) {
+                unique = constant + "_" + symbol + (n == 0 ? "" : "_" + n);
+            }
+            constant = unique;
+            out.append("    public static final int ").append(constant).append(" = ")
+                    .append(symbol).append(";\n");
+            names.append(symbol == 0 ? "" : ", ");
+            appendLiteral(names, name);
+        }
+        out.append("\n    private static final String[] SYMBOL_NAMES = {").append(names).append("};\n\n");
+    }
+
+    /* The name of the constant of a symbol, which may still be taken. */
+    protected static String constantName(String name, boolean isTerminal) {
+        if (name.equals(SymbolTable.END)) {
+            return "EOF";
+        }
+        StringBuilder constant = new StringBuilder(isTerminal ? "" : "V_");
+        for (char c : name.toUpperCase(Locale.ROOT).toCharArray()) {
+            constant.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        if (!Character.isJavaIdentifierStart(constant.charAt(0))) {
+            constant.insert(0, '_');
+        }
+        return constant.toString();
+    }
+
+    protected void outputTable(StringBuilder out, String name, PackedTable table) {
+        int[][] arrays = {table.getColumnClasses(), table.getRowIndexes(), table.getBases(),
+                table.getValues(), table.getChecks()};
+        for (int i = 0; i < TABLE_FIELDS.length; i++) {
+            outputArray(out, name + "_" + TABLE_FIELDS[i], arrays[i]);
+        }
+    }
+
+    protected void outputArray(StringBuilder out, String name, int[] array) {
+        out.append("    private static final int[] ").append(name).append(" = decode(")
+                .append(array.length);
+        for (int start = 0; start < array.length; start += CHUNK_INTS) {
+            out.append(",\n            ");
+            StringBuilder chunk = new StringBuilder();
+            for (int i = start; i < Math.min(array.length, start + CHUNK_INTS); i++) {
+                chunk.append((char) (array[i] >>> 16)).append((char) array[i]);
+            }
+            appendLiteral(out, chunk);
+        }
+        out.append(");\n\n");
+    }
+
+    protected void outputMethods(StringBuilder out) {
+        out.append("    private ").append(className).append("() {\n    }\n\n");
+        out.append("    /* Return the packed action of a state on a terminal: the kind in the\n");
+        out.append("       low two bits and the state or rule above them. */\n");
+        out.append("    public static int action(int state, int terminal) {\n");
+        out.append("        return lookup(ACTION_CLASSES, ACTION_ROWS, ACTION_BASES, ACTION_VALUES, ACTION_CHECKS,\n");
+        out.append("                state, terminal);\n    }\n\n");
+        out.append("    /* Return the goto state of a state on a variable, or -1. */\n");
+        out.append("    public static int gotoState(int state, int variable) {\n");
+        out.append("        return lookup(GOTO_CLASSES, GOTO_ROWS, GOTO_BASES, GOTO_VALUES, GOTO_CHECKS,\n");
+        out.append("                state, variable) - 1;\n    }\n\n");
+        out.append("    public static int kindOf(int action) {\n        return action & 3;\n    }\n\n");
+        out.append("    public static int operandOf(int action) {\n        return action >>> 2;\n    }\n\n");
+        out.append("    public static int ruleVar(int rule) {\n        return RULE_VARS[rule];\n    }\n\n");
+        out.append("    public static int ruleLength(int rule) {\n        return RULE_LENGTHS[rule];\n    }\n\n");
+        out.append("    public static String symbolName(int symbol) {\n");
+        out.append("        return SYMBOL_NAMES[symbol];\n    }\n\n");
+        out.append("    private static int lookup(int[] classes, int[] rows, int[] bases, int[] values,\n");
+        out.append("                              int[] checks, int state, int symbol) {\n");
+        out.append("        int row = rows[state];\n");
+        out.append("        int i = bases[row] + classes[symbol];\n");
+        out.append("        return i < checks.length && checks[i] == row ? values[i] : 0;\n    }\n\n");
+        out.append("    private static int[] decode(int length, String... chunks) {\n");
+        out.append("        int[] array = new int[length];\n");
+        out.append("        int i = 0;\n");
+        out.append("        for (String chunk : chunks) {\n");
+        out.append("            for (int c = 0; c < chunk.length(); c += 2) {\n");
+        out.append("                array[i++] = chunk.charAt(c) << 16 | chunk.charAt(c + 1);\n");
+        out.append("            }\n        }\n        return array;\n    }\n");
+    }
+
+    /* Append a string literal, split into lines that are joined with +.
+       Control chars are written as octal escapes and the others outside
+       ASCII as unicode escapes. A unicode escape is never used for a char
+       below 128, because javac would turn an escaped quote or line break
+       into a real one before it reads the literal.
+     */
+    protected static void appendLiteral(StringBuilder out, CharSequence text) {
+        out.append('"');
+        int lineStart = out.length();
+        for (int i = 0; i < text.length(); i++) {
+            if (out.length() - lineStart > LINE_CHARS) {
+                out.append("\" +\n            \"");
+                lineStart = out.length();
+            }
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c >= 0x20 && c < 0x7f) {
+                out.append(c);
+            } else if (c < 0x80) {
+                out.append(String.format("\\%03o", (int) c));
+            } else {
+                out.append(String.format("\\u%04x", (int) c));
+            }
+        }
+        out.append('"');
+    }
+
+    private static boolean isIdentifier(String name) {
+        if (name == null || name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            return false;
+        }
+        for (char c : name.toCharArray()) {
+            if (!Character.isJavaIdentifierPart(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
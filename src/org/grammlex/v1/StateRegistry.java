@@ -0,0 +1,109 @@
+package org.grammlex.v1;
+
+import java.util.*;
+
+/* A StateRegistry numbers the LR1States of an automaton and finds an
+   existing state by its kernel in constant time.
+
+   The kernel of a state is the set of items it was created from, before
+   closure added any items. Closure is deterministic, so two states with
+   equal kernels are the same state, which lets the builder detect a
+   duplicate before paying for closure. The kernel set itself is the
+   fingerprint: its hash is order independent and kernel items are never
+   changed by closure, so the hash stored by the map stays valid.
+ */
+public class StateRegistry {
+    private final List<LR1State> states = new ArrayList<>();
+    private final Map<Set<LR1Item>, LR1State> statesByKernel = new HashMap<>();
+
+    /* Return the registered state with the given kernel or null. */
+    public LR1State find(Set<LR1Item> kernel) {
+        return statesByKernel.get(kernel);
+    }
+
+    /* Register a new state, assigning it the next state id. */
+    public int add(LR1State state) {
+        int id = states.size();
+        state.setId(id);
+        states.add(state);
+        statesByKernel.put(state.getKernel(), state);
+        return id;
+    }
+
+    /* Replace the state with the given id, such as by a state whose kernel
+       has more lookaheads. The new state gets the id.
+     */
+    public void replace(int id, LR1State state) {
+        statesByKernel.remove(states.get(id).getKernel());
+        state.setId(id);
+        states.set(id, state);
+        statesByKernel.put(state.getKernel(), state);
+    }
+
+    /* Remove the states that cannot be reached from the start state and
+       renumber the others in their existing order, updating transitions.
+       Return the number of states removed.
+     */
+    public int removeUnreachable() {
+        int[] newIds = new int[states.size()];
+        Arrays.fill(newIds, -1);
+        Deque<Integer> pending = new ArrayDeque<>();
+        if (!states.isEmpty()) {
+            newIds[0] = 0;
+            pending.add(0);
+        }
+        while (!pending.isEmpty()) {
+            LR1State state = states.get(pending.poll());
+            for (int i = 0; i < state.getTransitionCount(); i++) {
+                int target = state.getTransitionTarget(i);
+                if (newIds[target] == -1) {
+                    newIds[target] = 0;
+                    pending.add(target);
+                }
+            }
+        }
+        List<LR1State> reachable = new ArrayList<>();
+        for (int id = 0; id < states.size(); id++) {
+            if (newIds[id] != -1) {
+                newIds[id] = reachable.size();
+                reachable.add(states.get(id));
+            }
+        }
+        int removed = states.size() - reachable.size();
+        if (removed == 0) {
+            return 0;
+        }
+        states.clear();
+        for (LR1State state : reachable) {
+            for (int i = 0; i < state.getTransitionCount(); i++) {
+                state.setTransitionTarget(i, newIds[state.getTransitionTarget(i)]);
+            }
+            state.setId(states.size());
+            states.add(state);
+        }
+        reindex();
+        return removed;
+    }
+
+    /* Rebuild the kernel index after the kernels of the states changed,
+       such as when lookaheads are filled into an LR(0) automaton.
+     */
+    public void reindex() {
+        statesByKernel.clear();
+        for (LR1State state : states) {
+            statesByKernel.put(state.getKernel(), state);
+        }
+    }
+
+    public LR1State get(int id) {
+        return states.get(id);
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    public List<LR1State> getStates() {
+        return states;
+    }
+}
@@ -0,0 +1,102 @@
+package org.grammlex.v1;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/* A StreamParser parses a stream of tokens that arrives in chunks, such as
+   from a reactive pipeline. It is a Flow.Subscriber of int arrays of
+   terminal ids and feeds every token to an LRParser, which keeps its stack
+   between chunks and reports each reduce to the reduce action as soon as
+   the token after the rule's last symbol arrives.
+
+   Backpressure: the parser requests a fixed number of chunks when it is
+   subscribed and one more after it has parsed each chunk, so at most that
+   many chunks are ever in flight. Completing the stream ends the input, so
+   publishers do not need to send the end symbol. The result completes with
+   whether the input was accepted, or with the stream's error.
+
+   The parser's stack holds one state per open rule, so its memory is
+   bounded by how deeply the input nests. The expansions of * and + are
+   right recursive and keep every element of the repeat open until the
+   repeat ends; an unbounded stream of documents should be written left
+   recursive, as in "stream: stream document | epsilon;".
+ */
+public class StreamParser implements Flow.Subscriber<int[]> {
+    private final LRParser parser;
+    private final int prefetch;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+
+    public StreamParser(LRParser parser) {
+        this(parser, 1);
+    }
+
+    public StreamParser(LRParser parser, int prefetch) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("ERROR: Prefetch must be at least 1: " + prefetch);
+        }
+        this.parser = parser;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            // A subscriber only takes one stream
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(int[] tokens) {
+        if (push(tokens, 0, tokens.length) == LRParser.NEED_MORE) {
+            subscription.request(1);
+        } else {
+            subscription.cancel();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        end();
+    }
+
+    /* Parse a chunk of tokens and return the parser's status. */
+    public int push(int[] tokens, int offset, int length) {
+        for (int i = offset; i < offset + length && parser.getStatus() == LRParser.NEED_MORE; i++) {
+            parser.feed(tokens[i]);
+        }
+        completeIfDone();
+        return parser.getStatus();
+    }
+
+    /* End the input and return the parser's status. */
+    public int end() {
+        parser.feed(parser.getTables().getEndSymbol());
+        completeIfDone();
+        return parser.getStatus();
+    }
+
+    private void completeIfDone() {
+        if (parser.getStatus() != LRParser.NEED_MORE) {
+            result.complete(parser.getStatus() == LRParser.ACCEPTED);
+        }
+    }
+
+    /* Completes with whether the input was accepted. */
+    public CompletableFuture<Boolean> getResult() {
+        return result;
+    }
+
+    public LRParser getParser() {
+        return parser;
+    }
+}
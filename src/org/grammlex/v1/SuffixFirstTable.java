@@ -0,0 +1,59 @@
+package org.grammlex.v1;
+
+import java.util.BitSet;
+
+/* A SuffixFirstTable holds, for every position of every rule of a grammar,
+   the FIRST set of the symbols from that position to the end of the rule
+   and whether those symbols are nullable. The position at the end of a
+   rule has an empty, nullable suffix.
+
+   Closure needs FIRST of the symbols after the dot for every item it
+   expands, and FOLLOW needs it after every variable of every rule, so the
+   table computes each suffix once, walking each rule from the end, when
+   the grammar is built. Positions are looked up by LR(0) item number.
+
+   The table is immutable: its sets are only copied out.
+ */
+public class SuffixFirstTable {
+    private final Grammar grammar;
+    private final BitSet[] firsts;
+    private final boolean[] nullables;
+
+    public SuffixFirstTable(Grammar grammar) {
+        this.grammar = grammar;
+        firsts = new BitSet[grammar.getLR0ItemCount()];
+        nullables = new boolean[grammar.getLR0ItemCount()];
+        for (Rule rule : grammar.getRules()) {
+            int[] symbols = rule.getSymbols();
+            int end = grammar.getLR0ItemNumber(rule, symbols.length);
+            firsts[end] = new BitSet();
+            nullables[end] = true;
+            for (int i = symbols.length - 1; i >= 0; i--) {
+                int number = grammar.getLR0ItemNumber(rule, i);
+                firsts[number] = (BitSet) grammar.getFirstSymbols(symbols[i]).clone();
+                nullables[number] = grammar.isNullable(symbols[i]) && nullables[number + 1];
+                if (grammar.isNullable(symbols[i])) {
+                    firsts[number].or(firsts[number + 1]);
+                }
+            }
+        }
+    }
+
+    /* Return a copy of FIRST of the symbols of the rule from position on. */
+    public BitSet getFirst(Rule rule, int position) {
+        return (BitSet) firsts[grammar.getLR0ItemNumber(rule, position)].clone();
+    }
+
+    /* Add FIRST of the symbols of the rule from position on to first and
+       return whether those symbols are nullable.
+     */
+    public boolean addFirst(Rule rule, int position, BitSet first) {
+        int number = grammar.getLR0ItemNumber(rule, position);
+        first.or(firsts[number]);
+        return nullables[number];
+    }
+
+    public boolean isNullable(Rule rule, int position) {
+        return nullables[grammar.getLR0ItemNumber(rule, position)];
+    }
+}
@@ -0,0 +1,87 @@
+package org.grammlex.v1;
+
+import java.util.*;
+
+/* A SymbolTable gives every terminal and variable of a grammar a dense
+   int id, from 0 to size() - 1. Rules, items, states and tables work with
+   the ids and only turn them back into names for output.
+
+   Ids are assigned in the order of the names, so walking symbols by id
+   visits them in the same order as sorting their names. The end of input
+   marker "$" is a terminal of every grammar. Epsilon is not a symbol: an
+   epsilon rule simply has no symbols.
+ */
+public class SymbolTable {
+    public static final String END = "$";
+
+    private final String[] names;
+    private final boolean[] terminal;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final int endSymbol;
+
+    public SymbolTable(Collection<String> terminals, Collection<String> variables) {
+        SortedSet<String> sortedNames = new TreeSet<>(terminals);
+        sortedNames.add(END);
+        sortedNames.addAll(variables);
+        names = sortedNames.toArray(new String[0]);
+        terminal = new boolean[names.length];
+        for (int id = 0; id < names.length; id++) {
+            ids.put(names[id], id);
+            terminal[id] = !variables.contains(names[id]);
+        }
+        endSymbol = ids.get(END);
+    }
+
+    /* Return the id of a name or -1 if it is not a symbol. */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /* Return the ids of a sequence of terms. Epsilon has no id. */
+    public int[] getIds(String[] terms) {
+        if (Grammar.isEpsilonRule(terms)) {
+            return new int[0];
+        }
+        int[] symbols = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            symbols[i] = getId(terms[i]);
+            if (symbols[i] == -1) {
+                throw new IllegalArgumentException("ERROR: Unknown symbol: " + terms[i]);
+            }
+        }
+        return symbols;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /* Return the names of the ids in a BitSet, in id order. */
+    public List<String> getNames(BitSet idSet) {
+        List<String> setNames = new ArrayList<>();
+        for (int id = idSet.nextSetBit(0); id >= 0; id = idSet.nextSetBit(id + 1)) {
+            setNames.add(names[id]);
+        }
+        return setNames;
+    }
+
+    public boolean isTerminal(int id) {
+        return terminal[id];
+    }
+
+    public boolean isVariable(int id) {
+        return !terminal[id];
+    }
+
+    public int getEndSymbol() {
+        return endSymbol;
+    }
+
+    public int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,140 @@
+package org.grammlex.v1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/* TableFile saves ParseTables in a binary file and loads them back, so a
+   parser can start without reading the grammar and building its states.
+
+   The file is a header of four ints followed by the tables:
+
+   magic     "GLXT"
+   version   the version of the layout, VERSION
+   length    the number of bytes after the header
+   checksum  the CRC-32 of the bytes after the header
+
+   The tables are ints, big endian, and each array is its length followed
+   by its elements, so every array starts on a four byte boundary. Byte
+   arrays are padded to a multiple of four.
+
+   load maps the file and the tables read their arrays straight from the
+   mapped buffer, so loading costs a checksum of the file and no copying.
+ */
+public class TableFile {
+    public static final int MAGIC = 0x474C5854; // "GLXT"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    private TableFile() {
+    }
+
+    public static byte[] toBytes(ParseTables tables) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            tables.write(out);
+        } catch (IOException e) {
+            // A ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        byte[] bodyBytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+        ByteBuffer file = ByteBuffer.allocate(HEADER_SIZE + bodyBytes.length);
+        file.putInt(MAGIC).putInt(VERSION).putInt(bodyBytes.length).putInt((int) crc.getValue());
+        file.put(bodyBytes);
+        return file.array();
+    }
+
+    public static void save(ParseTables tables, Path path) throws IOException {
+        Files.write(path, toBytes(tables));
+    }
+
+    /* Map a table file and return its tables. The mapping stays valid
+       after the file is closed.
+     */
+    public static ParseTables load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return fromBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /* Check the header and checksum of a table file in a buffer, from its
+       position, and return the tables, which read from the buffer.
+     */
+    public static ParseTables fromBuffer(ByteBuffer buffer) {
+        ByteBuffer in = buffer.slice();
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("ERROR: Not a table file.");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("ERROR: Unsupported table file version: " + version);
+        }
+        int length = in.getInt();
+        int checksum = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("ERROR: Truncated table file.");
+        }
+        ByteBuffer body = in.slice().limit(length);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IllegalArgumentException("ERROR: Table file checksum mismatch.");
+        }
+        return ParseTables.read(body);
+    }
+
+    protected static void writeInts(DataOutputStream out, IntBuffer array) throws IOException {
+        out.writeInt(array.limit());
+        for (int i = 0; i < array.limit(); i++) {
+            out.writeInt(array.get(i));
+        }
+    }
+
+    protected static void writeBytes(DataOutputStream out, ByteBuffer array) throws IOException {
+        out.writeInt(array.limit());
+        for (int i = 0; i < array.limit(); i++) {
+            out.writeByte(array.get(i));
+        }
+        for (int i = array.limit(); i % 4 != 0; i++) {
+            out.writeByte(0);
+        }
+    }
+
+    /* Return a view of the next array of ints and move past it. */
+    protected static IntBuffer readInts(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining() / 4) {
+            throw new IllegalArgumentException("ERROR: Truncated table file.");
+        }
+        IntBuffer array = in.slice().limit(4 * length).asIntBuffer();
+        in.position(in.position() + 4 * length);
+        return array;
+    }
+
+    /* Return a view of the next array of bytes and move past it. */
+    protected static ByteBuffer readBytes(ByteBuffer in) {
+        int length = in.getInt();
+        int padded = (length + 3) & ~3;
+        if (length < 0 || padded > in.remaining()) {
+            throw new IllegalArgumentException("ERROR: Truncated table file.");
+        }
+        ByteBuffer array = in.slice().limit(length);
+        in.position(in.position() + padded);
+        return array;
+    }
+
+    protected static int[] toArray(IntBuffer array) {
+        int[] result = new int[array.limit()];
+        array.duplicate().position(0).get(result);
+        return result;
+    }
+}
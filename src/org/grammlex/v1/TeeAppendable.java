@@ -0,0 +1,57 @@
+package org.grammlex.v1;
+
+import java.io.IOException;
+
+/* A TeeAppendable writes everything appended to it to a target and keeps a
+   copy, as long as the copy stays within a limit of chars. Tool writes
+   each section of its output through one, so that a section is streamed
+   as it is made and still kept for the BuildCache when it is small enough.
+ */
+public class TeeAppendable implements Appendable {
+    private final Appendable target;
+    private final long limit;
+    private StringBuilder copy = new StringBuilder();
+
+    public TeeAppendable(Appendable target, long limit) {
+        this.target = target;
+        this.limit = limit;
+    }
+
+    @Override
+    public TeeAppendable append(CharSequence csq) throws IOException {
+        CharSequence text = csq == null ? "null" : csq;
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public TeeAppendable append(CharSequence csq, int start, int end) throws IOException {
+        CharSequence text = csq == null ? "null" : csq;
+        target.append(text, start, end);
+        if (copy != null) {
+            if (copy.length() + (long) (end - start) > limit) {
+                copy = null;
+            } else {
+                copy.append(text, start, end);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public TeeAppendable append(char c) throws IOException {
+        target.append(c);
+        if (copy != null) {
+            if (copy.length() + 1L > limit) {
+                copy = null;
+            } else {
+                copy.append(c);
+            }
+        }
+        return this;
+    }
+
+    /* The copy of everything appended, or null once it went over the limit. */
+    public StringBuilder getCopy() {
+        return copy;
+    }
+}
@@ -0,0 +1,87 @@
+package org.grammlex.v1;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/* A TextBuildListener writes the trace of a build to an Appendable: every
+   item of each new state before and after closure, and each transition.
+   The trace of a state is written when the state is processed, so a
+   Writer gets a large trace as it is made and never holds all of it.
+ */
+public class TextBuildListener extends BuildListener {
+    private final Grammar grammar;
+    private final Appendable out;
+    private final StringBuilder trace = new StringBuilder();
+
+    public TextBuildListener(Grammar grammar, Appendable out) {
+        this.grammar = grammar;
+        this.out = out;
+    }
+
+    @Override
+    public void startState(LR1Item item, LR1State state) {
+        trace.append("\nCreating initial state from item: ").append(item).append("\n");
+        trace.append("    state after closure:\n");
+        for (LR1Item stateItem : state.getItems()) {
+            trace.append("        item: ").append(stateItem).append("\n");
+        }
+        trace.append("\n");
+        LR1Builder.flush(trace, out);
+    }
+
+    @Override
+    public void processState(int stateNum, int transitions) {
+        trace.append("Processing transitions for state ").append(stateNum).append("\n");
+        if (transitions == 0) {
+            trace.append("   No new states. All terms are reduces.\n");
+        }
+    }
+
+    @Override
+    public void transition(int stateNum, int symbol, Set<LR1Item> kernel, LR1State target,
+                           int targetNum, int kind, int splitFrom) {
+        String term = grammar.getSymbols().getName(symbol);
+        trace.append("   Process transition from state ").append(stateNum)
+                .append(" for term ").append(term).append("\n");
+        trace.append("        New state before closure:\n");
+        for (LR1Item item : kernel) {
+            trace.append("            item: ").append(item).append("\n");
+        }
+        if (target != null) {
+            trace.append(kind == TO_MERGED ? "        Merged state after closure:\n"
+                    : "        New state after closure:\n");
+            for (LR1Item item : target.getItems()) {
+                trace.append("            item: ").append(item).append("\n");
+            }
+        }
+        trace.append("        Created transition from ").append(stateNum)
+                .append(" with ").append(term).append(" to ")
+                .append(kind == TO_EXISTING ? "existing" : kind == TO_NEW ? "new" : "merged")
+                .append(" state ").append(targetNum);
+        if (splitFrom != -1) {
+            trace.append(", split from state ").append(splitFrom);
+        }
+        trace.append("\n");
+    }
+
+    @Override
+    public void stateProcessed(int stateNum) {
+        trace.append("\n");
+        LR1Builder.flush(trace, out);
+    }
+
+    @Override
+    public void minimalStates(List<LR1State> states, int merged, int split, int removed) {
+        Set<Set<LR1Item>> cores = new HashSet<>();
+        for (LR1State state : states) {
+            cores.add(LR1Builder.lr0Core(state.getKernel()));
+        }
+        trace.append("Minimal LR(1): ").append(states.size()).append(" states, ")
+                .append(merged).append(" merged, ")
+                .append(split).append(" split, ")
+                .append(removed).append(" unreachable removed, LALR(1) has ")
+                .append(cores.size()).append(" states\n");
+        LR1Builder.flush(trace, out);
+    }
+}
@@ -1,14 +1,37 @@
 package org.grammlex.v1;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 
+/* Tool is the command line of Grammlex.
+
+   Everything a run shows or writes for a grammar is kept in a BuildCache
+   on disk, keyed by VERSION, the mode and the grammar text. When the cache
+   has everything the commands ask for, the grammar is not even parsed.
+   VERSION must change whenever the output for the same grammar does.
+   The stats of a build are the one content that is never cached, since
+   they time the build of this run.
+
+   Output is written to an Appendable as it is made, one state or row at a
+   time, and main streams it to stdout or to the file of --output. Only the
+   content types the commands ask for are made. A section is also kept for
+   the cache while the sections kept so far fit in the size of the cache,
+   so the text of a large automaton is never held in memory as a whole.
+ */
 public class Tool {
+    public static final String VERSION = "0.2";
     public static final String CMD_SHOW = "show";
+    public static final String CMD_SAVE = "save";
+    public static final String CMD_GENERATE = "generate";
     public static final String TYPE_GRAMMAR = "grammar";
     public static final String TYPE_RULES = "rules";
     public static final String TYPE_FIRST_SETS = "firstSets";
@@ -17,128 +40,338 @@ public class Tool {
     public static final String TYPE_CREATE_STATES = "createStates";
     public static final String TYPE_ACTION_TABLE = "actionTable";
     public static final String TYPE_GOTO_TABLE = "gotoTable";
+    public static final String TYPE_PARSE_TABLES = "parseTables";
+    public static final String TYPE_LEXER = "lexer";
+    public static final String TYPE_STATS = "stats";
+    public static final String TYPE_GLR_TABLES = "glrTables";
+    // The TableFile of the parse tables in Base64, cached but not shown
+    protected static final String TABLE_FILE = "tableFile";
+    public static final String OPTION_MODE = "--mode=";
+    public static final String OPTION_THREADS = "--threads=";
+    public static final String OPTION_PACKAGE = "--package=";
+    public static final String OPTION_NO_CACHE = "--no-cache";
+    public static final String OPTION_CACHE_DIR = "--cache-dir=";
+    public static final String OPTION_OUTPUT = "--output=";
+    public static final String DEFAULT_CONTENT_TYPES = "grammar,createStates,states";
+    public static final String JAVA_SUFFIX = ".java";
 
     protected static final Set<String> contentTypes = new HashSet<>(Arrays.asList(
             TYPE_GRAMMAR, TYPE_RULES,
             TYPE_FIRST_SETS, TYPE_FOLLOW_SETS,
             TYPE_STATES, TYPE_CREATE_STATES,
-            TYPE_ACTION_TABLE, TYPE_GOTO_TABLE
+            TYPE_ACTION_TABLE, TYPE_GOTO_TABLE,
+            TYPE_PARSE_TABLES, TYPE_LEXER,
+            TYPE_STATS, TYPE_GLR_TABLES
             ));
 
     public static void main(String[] args) throws IOException {
-        StringBuilder out = new StringBuilder();
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)); //NOSONAR
         //noinspection unused
         int throwaway = handleCommands(out, args); //NOSONAR
-        System.out.print(out); //NOSONAR
+        out.flush();
     }
 
-    public static int handleCommands(StringBuilder out, String[] args) throws IOException {
+    public static int handleCommands(Appendable out, String[] args) throws IOException {
         return handleCommands(out, args, 0);
     }
 
-    public static int handleCommands(StringBuilder out, String[] args, int currentArg) throws IOException {
+    public static int handleCommands(Appendable out, String[] args, int currentArg) throws IOException {
         Map<String, StringBuilder> cachedContent = new HashMap<>();
-        if (args.length < 1) {
+        String mode = LR1Builder.MODE_LR1;
+        int threads = 1;
+        String packageName = "";
+        boolean useCache = true;
+        Path cacheDir = BuildCache.getDefaultDir();
+        Path outputPath = null;
+        // Options come before the grammar file
+        while (currentArg < args.length && args[currentArg].startsWith("--")) {
+            if (args[currentArg].startsWith(OPTION_MODE)) {
+                mode = args[currentArg].substring(OPTION_MODE.length());
+            } else if (args[currentArg].startsWith(OPTION_THREADS)) {
+                threads = Integer.parseInt(args[currentArg].substring(OPTION_THREADS.length()));
+            } else if (args[currentArg].startsWith(OPTION_PACKAGE)) {
+                packageName = args[currentArg].substring(OPTION_PACKAGE.length());
+            } else if (args[currentArg].equals(OPTION_NO_CACHE)) {
+                useCache = false;
+            } else if (args[currentArg].startsWith(OPTION_CACHE_DIR)) {
+                cacheDir = Paths.get(args[currentArg].substring(OPTION_CACHE_DIR.length()));
+            } else if (args[currentArg].startsWith(OPTION_OUTPUT)) {
+                outputPath = Paths.get(args[currentArg].substring(OPTION_OUTPUT.length()));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[currentArg]);
+            }
+            currentArg++;
+        }
+        if (currentArg >= args.length) {
             throw new IllegalArgumentException("Missing grammar file argument");
         }
-        String grammarText = readFile(Paths.get(args[currentArg++]));
-        Grammar grammar = new Grammar(grammarText);
-        LR1Builder builder = new LR1Builder(grammar);
+        CharSequence grammarText = GrammarReader.readFile(Paths.get(args[currentArg++]));
+        if (threads < 1) {
+            throw new IllegalArgumentException("ERROR: Thread count must be at least 1: " + threads);
+        }
+        BuildCache cache = null;
+        String key = null;
+        long cacheLimit = 0;
+        if (useCache) {
+            cache = new BuildCache(cacheDir, BuildCache.DEFAULT_MAX_BYTES);
+            key = BuildCache.key(VERSION, mode, grammarText);
+            cacheLimit = cache.getMaxBytes();
+            Map<String, String> entry = cache.get(key);
+            if (entry != null) {
+                entry.forEach((name, text) -> cachedContent.put(name, new StringBuilder(text)));
+            }
+        }
+        int cachedCount = cachedContent.size();
 
-        if (currentArg >= args.length) {
-            currentArg = handleShowCommand(grammar, builder, cachedContent, args, currentArg, out);
+        Grammar grammar = null;
+        LR1Builder builder = null;
+        if (!cachedContent.keySet().containsAll(getNeededContent(args, currentArg))) {
+            grammar = new Grammar(grammarText);
+            builder = new LR1Builder(grammar, mode);
+            builder.setThreads(threads);
         }
-        while (currentArg < args.length) {
-            if (args[currentArg].equals(CMD_SHOW)) {
-                currentArg++;
-                currentArg = handleShowCommand(grammar, builder, cachedContent, args, currentArg, out);
-            } else {
-                throw new IllegalArgumentException("Unknown command: " + args[currentArg]);
+
+        Writer file = outputPath == null ? null : Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8);
+        Appendable target = file == null ? out : file;
+        try {
+            if (currentArg >= args.length) {
+                currentArg = handleShowCommand(grammar, builder, cachedContent, args, currentArg,
+                        target, cacheLimit);
+            }
+            while (currentArg < args.length) {
+                if (args[currentArg].equals(CMD_SHOW)) {
+                    currentArg++;
+                    currentArg = handleShowCommand(grammar, builder, cachedContent, args, currentArg,
+                            target, cacheLimit);
+                } else if (args[currentArg].equals(CMD_SAVE)) {
+                    currentArg++;
+                    currentArg = handleSaveCommand(grammar, builder, cachedContent, args, currentArg, target);
+                } else if (args[currentArg].equals(CMD_GENERATE)) {
+                    currentArg++;
+                    currentArg = handleGenerateCommand(grammar, builder, cachedContent, packageName,
+                            args, currentArg, target);
+                } else {
+                    throw new IllegalArgumentException("Unknown command: " + args[currentArg]);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+        }
+        Map<String, StringBuilder> newEntry = new HashMap<>(cachedContent);
+        newEntry.remove(TYPE_STATS);
+        if (cache != null && newEntry.size() > cachedCount) {
+            try {
+                cache.put(key, newEntry);
+            } catch (IOException e) {
+                // The cache only saves time, so a run does not fail without it
             }
-            currentArg++;
         }
         return currentArg;
     }
 
+    /* The content the commands need, which the cache may already have. */
+    protected static Set<String> getNeededContent(String[] args, int currentArg) {
+        Set<String> needed = new HashSet<>();
+        if (currentArg >= args.length) {
+            needed.addAll(Arrays.asList(DEFAULT_CONTENT_TYPES.split(",")));
+        }
+        for (int i = currentArg; i < args.length; i++) {
+            if (args[i].equals(CMD_SAVE) || args[i].equals(CMD_GENERATE)) {
+                needed.add(TABLE_FILE);
+            } else if (args[i].equals(CMD_SHOW)) {
+                if (i + 1 < args.length) {
+                    needed.addAll(Arrays.asList(args[i + 1].split(",")));
+                } else {
+                    needed.addAll(Arrays.asList(DEFAULT_CONTENT_TYPES.split(",")));
+                }
+            }
+        }
+        return needed;
+    }
+
     public static int handleShowCommand(Grammar grammar, LR1Builder builder,
                                         Map<String, StringBuilder> cachedContent,
-                                        String[] args, int currentArg, StringBuilder out) {
+                                        String[] args, int currentArg, Appendable out,
+                                        long cacheLimit) throws IOException {
         String contentTypes;
         if (currentArg >= args.length) {
-            contentTypes = "grammar,createStates,states";
+            contentTypes = DEFAULT_CONTENT_TYPES;
         } else {
             contentTypes = args[currentArg];
             currentArg++;
         }
         for (String contentType : contentTypes.split(",")) {
-            updateCachedContent(grammar, builder, cachedContent, contentType);
-            out.append(cachedContent.get(contentType));
+            writeContent(grammar, builder, cachedContent, contentType, out, cacheLimit);
         }
         return currentArg;
     }
 
-    public static void updateCachedContent(Grammar grammar, LR1Builder builder,
+    /* Save the parse tables in a TableFile. */
+    public static int handleSaveCommand(Grammar grammar, LR1Builder builder,
+                                        Map<String, StringBuilder> cachedContent,
+                                        String[] args, int currentArg, Appendable out)
+            throws IOException {
+        if (currentArg >= args.length) {
+            throw new IllegalArgumentException("Missing table file argument");
+        }
+        Path path = Paths.get(args[currentArg]);
+        TableFile.save(getParseTables(grammar, builder, cachedContent), path);
+        out.append("Saved parse tables to ").append(path.toString()).append(" (")
+                .append(Long.toString(Files.size(path))).append(" bytes)\n");
+        return currentArg + 1;
+    }
+
+    /* Write the parse tables as a Java class named after the file. */
+    public static int handleGenerateCommand(Grammar grammar, LR1Builder builder,
+                                            Map<String, StringBuilder> cachedContent, String packageName,
+                                            String[] args, int currentArg, Appendable out)
+            throws IOException {
+        if (currentArg >= args.length || !args[currentArg].endsWith(JAVA_SUFFIX)) {
+            throw new IllegalArgumentException("Missing .java file argument");
+        }
+        Path path = Paths.get(args[currentArg]);
+        String fileName = path.getFileName().toString();
+        String className = fileName.substring(0, fileName.length() - JAVA_SUFFIX.length());
+        StringBuilder source = new SourceGenerator(getParseTables(grammar, builder, cachedContent),
+                packageName, className)
+                .generate(new StringBuilder());
+        Files.write(path, source.toString().getBytes(StandardCharsets.UTF_8));
+        out.append("Generated ").append(path.toString()).append("\n");
+        return currentArg + 1;
+    }
+
+    /* Return the parse tables, from the cached TableFile if there is one. */
+    protected static ParseTables getParseTables(Grammar grammar, LR1Builder builder,
+                                                Map<String, StringBuilder> cachedContent) {
+        if (!cachedContent.containsKey(TABLE_FILE)) {
+            createStates(builder);
+            byte[] tableFile = TableFile.toBytes(builder.createParseTables());
+            cachedContent.put(TABLE_FILE, new StringBuilder(Base64.getEncoder().encodeToString(tableFile)));
+        }
+        byte[] tableFile = Base64.getDecoder().decode(cachedContent.get(TABLE_FILE).toString());
+        return TableFile.fromBuffer(ByteBuffer.wrap(tableFile));
+    }
+
+    /* Make sure the builder has its states. The text of the states may be
+       cached while the builder has none, so they are made again here.
+     */
+    protected static void createStates(LR1Builder builder) {
+        if (builder.getStates().isEmpty() && !builder.createStates()) {
+            throw new IllegalArgumentException("Grammar is not " + builder.getModeName() + "!");
+        }
+    }
+
+    /* A builder like the given one, for a build of its own. */
+    protected static LR1Builder copyBuilder(Grammar grammar, LR1Builder builder) {
+        LR1Builder copy = new LR1Builder(grammar, builder.getMode());
+        copy.setThreads(builder.getThreads());
+        return copy;
+    }
+
+    /* Write a content type to out, from the cached content if it is there.
+       Otherwise it is made as it is written, and kept in the cached content
+       if its text, with the cached content before it, fits in cacheLimit.
+     */
+    public static void writeContent(Grammar grammar, LR1Builder builder,
                                     Map<String, StringBuilder> cachedContent,
-                                    String contentType) {
+                                    String contentType, Appendable out, long cacheLimit)
+            throws IOException {
         if (!contentTypes.contains(contentType)) {
             throw new IllegalArgumentException(
                     "ERROR: grammlex: show: Unknown content type: " + contentType);
         }
-        if (!cachedContent.containsKey(contentType)) {
-            StringBuilder newContent;
-            switch (contentType) {
-                case TYPE_GRAMMAR:
-                    newContent = new StringBuilder();
-                    grammar.outputGrammar(newContent);
-                    cachedContent.put(contentType, newContent);
-                    break;
-
-                case TYPE_RULES:
-                    newContent = new StringBuilder();
-                    grammar.outputRules(newContent);
-                    cachedContent.put(contentType, newContent);
-                    break;
-
-                case TYPE_FIRST_SETS:
-                    newContent = new StringBuilder();
-                    grammar.outputFirstSets(newContent);
-                    cachedContent.put(contentType, newContent);
-                    break;
-
-                case TYPE_FOLLOW_SETS:
-                    newContent = new StringBuilder();
-                    grammar.outputFollowSets(newContent);
-                    cachedContent.put(contentType, newContent);
-                    break;
-
-                case TYPE_STATES:
-                case TYPE_CREATE_STATES:
-                case TYPE_ACTION_TABLE:
-                case TYPE_GOTO_TABLE:
-                    newContent = new StringBuilder();
-                    if (!builder.createStatesForCLR1(newContent)) {
-                        throw new IllegalArgumentException("Grammar is not LR(1)!");
-                    }
-                    cachedContent.put(TYPE_CREATE_STATES, newContent);
-
-                    newContent = builder.outputStates(new StringBuilder());
-                    cachedContent.put(TYPE_STATES, newContent);
-
-                    newContent = builder.outputActionTable(new StringBuilder());
-                    cachedContent.put(TYPE_ACTION_TABLE, newContent);
-
-                    cachedContent.put(TYPE_GOTO_TABLE,
-                            builder.outputGotoTable(new StringBuilder()));
-                    break;
-
-                default:
-                    break;
-            }
+        StringBuilder cached = cachedContent.get(contentType);
+        if (cached != null) {
+            out.append(cached);
+            return;
+        }
+        long limit = TYPE_STATS.equals(contentType) ? -1 : cacheLimit;
+        for (StringBuilder text : cachedContent.values()) {
+            limit -= text.length();
+        }
+        TeeAppendable tee = new TeeAppendable(out, limit);
+        outputContent(grammar, builder, cachedContent, contentType, tee);
+        if (tee.getCopy() != null) {
+            cachedContent.put(contentType, tee.getCopy());
         }
     }
 
-    public static String readFile(Path path) throws IOException {
-        byte[] encoded = Files.readAllBytes(path);
-        return new String(encoded, StandardCharsets.UTF_8);
+    /* Make a content type and write it to out. */
+    protected static void outputContent(Grammar grammar, LR1Builder builder,
+                                        Map<String, StringBuilder> cachedContent,
+                                        String contentType, Appendable out) throws IOException {
+        switch (contentType) {
+            case TYPE_GRAMMAR:
+                grammar.outputGrammar(out);
+                break;
+
+            case TYPE_RULES:
+                grammar.outputRules(out);
+                break;
+
+            case TYPE_FIRST_SETS:
+                grammar.outputFirstSets(out);
+                break;
+
+            case TYPE_FOLLOW_SETS:
+                grammar.outputFollowSets(out);
+                break;
+
+            case TYPE_CREATE_STATES:
+                // The trace is only made by a build, so a builder that
+                // already has its states builds them again for it
+                LR1Builder traced = builder.getStates().isEmpty() ? builder : copyBuilder(grammar, builder);
+                if (!traced.createStates(out)) {
+                    throw new IllegalArgumentException(
+                            "Grammar is not " + builder.getModeName() + "!");
+                }
+                break;
+
+            case TYPE_STATES:
+                createStates(builder);
+                builder.outputStates(out);
+                break;
+
+            case TYPE_ACTION_TABLE:
+                createStates(builder);
+                builder.outputActionTable(out);
+                break;
+
+            case TYPE_GOTO_TABLE:
+                createStates(builder);
+                builder.outputGotoTable(out);
+                break;
+
+            case TYPE_PARSE_TABLES:
+                out.append(getParseTables(grammar, builder, cachedContent).outputSummary(new StringBuilder()));
+                break;
+
+            case TYPE_STATS:
+                createStates(builder);
+                builder.outputStats(out);
+                break;
+
+            case TYPE_GLR_TABLES:
+                // A conflict does not stop GLR tables, so a builder without
+                // states builds them apart, keeping the error of TYPE_STATES
+                LR1Builder glrBuilder = builder;
+                if (builder.getStates().isEmpty()) {
+                    glrBuilder = copyBuilder(grammar, builder);
+                    glrBuilder.createStates();
+                }
+                out.append(glrBuilder.createGLRTables().outputSummary(new StringBuilder()));
+                break;
+
+            case TYPE_LEXER:
+                out.append(new LexerDfa(grammar).outputSummary(new StringBuilder()));
+                break;
+
+            default:
+                break;
+        }
     }
 }
@@ -8,6 +8,8 @@ public class ActionTest {
         Action action = new Action(Action.SHIFT, 0);
         assert(action.toString().equals("SHIFT(0)"));
         assert(action.getTypeAsString().equals("SHIFT"));
+        assert(action.getType() == Action.SHIFT);
+        assert(action.getOperand() == 0);
 
         action = new Action(Action.REDUCE, 0);
         assert(action.getTypeAsString().equals("REDUCE"));
@@ -15,6 +17,10 @@ public class ActionTest {
         action = new Action(Action.ACCEPT, 0);
         assert(action.getTypeAsString().equals("ACCEPT"));
 
+        action = new Action(Action.CONFLICT, 2);
+        assert(action.getTypeAsString().equals("CONFLICT"));
+        assert(action.toString().equals("CONFLICT(2)"));
+
         action = new Action(9, 0);
         assert(action.getTypeAsString().equals(""));
         assert(action.toString().equals(""));
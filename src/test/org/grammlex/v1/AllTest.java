@@ -5,12 +5,37 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+    SymbolTableTest.class,
     RuleTest.class,
     GrammarTest.class,
+    GrammarReaderTest.class,
     LR1ItemTest.class,
+    ItemPoolTest.class,
     LR1StateTest.class,
+    StateRegistryTest.class,
     LR1BuilderTest.class,
+    LALR1LookaheadsTest.class,
+    DigraphTest.class,
+    SuffixFirstTableTest.class,
     ActionTest.class,
+    PackedTableTest.class,
+    ParseTablesTest.class,
+    TableFileTest.class,
+    SourceGeneratorTest.class,
+    LazyParseTablesTest.class,
+    LRParserTest.class,
+    GLRTablesTest.class,
+    GLRParserTest.class,
+    StreamParserTest.class,
+    NfaTest.class,
+    LexerDfaTest.class,
+    ScannerTest.class,
+    BuildCacheTest.class,
+    TeeAppendableTest.class,
+    BuildListenerTest.class,
+    TextBuildListenerTest.class,
+    RecordingBuildListenerTest.class,
+    GrammarGeneratorTest.class,
     ToolTest.class,
 })
 public class AllTest {
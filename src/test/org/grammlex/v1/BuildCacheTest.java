@@ -0,0 +1,87 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+public class BuildCacheTest {
+
+    private static void deleteCache(BuildCache cache) throws IOException {
+        for (Path entry : cache.getEntries()) {
+            Files.delete(entry);
+        }
+        Files.delete(cache.getDir());
+    }
+
+    @Test
+    public void testBuildCacheKey() {
+        String key = BuildCache.key("0.2", "lr1", "s: A;");
+        assert (key.length() == 64);
+        assert (key.equals(BuildCache.key("0.2", "lr1", "s: A;")));
+        assert (!key.equals(BuildCache.key("0.2", "lalr", "s: A;")));
+        assert (!BuildCache.key("ab", "c").equals(BuildCache.key("a", "bc")));
+    }
+
+    @Test
+    public void testBuildCache() throws IOException {
+        BuildCache cache = new BuildCache(Files.createTempDirectory("grammlex"), 1000);
+        try {
+            assert (cache.get("missing") == null);
+            Map<String, String> texts = new HashMap<>();
+            texts.put("grammar", "s: A;\n");
+            texts.put("states", "État #0\n");
+            cache.put("k1", texts);
+            assert (cache.get("k1").equals(texts));
+
+            // A damaged entry is a miss
+            Path entry = cache.getDir().resolve("k1" + BuildCache.ENTRY_SUFFIX);
+            byte[] bytes = Files.readAllBytes(entry);
+            bytes[bytes.length - 1] ^= 1;
+            Files.write(entry, bytes);
+            assert (cache.get("k1") == null);
+            Files.write(entry, new byte[3]);
+            assert (cache.get("k1") == null);
+        } finally {
+            deleteCache(cache);
+        }
+    }
+
+    @Test
+    public void testBuildCacheEviction() throws IOException {
+        Map<String, String> texts = new HashMap<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("0123456789");
+        }
+        texts.put("states", text.toString());
+        long entrySize = BuildCache.encode(texts).length;
+        BuildCache cache = new BuildCache(Files.createTempDirectory("grammlex"), 2 * entrySize);
+        try {
+            cache.put("k1", texts);
+            cache.put("k2", texts);
+            // k1 was used last, so k2 is evicted when k3 comes
+            Path k1 = cache.getDir().resolve("k1" + BuildCache.ENTRY_SUFFIX);
+            Path k2 = cache.getDir().resolve("k2" + BuildCache.ENTRY_SUFFIX);
+            Files.setLastModifiedTime(k1, FileTime.fromMillis(1000));
+            Files.setLastModifiedTime(k2, FileTime.fromMillis(2000));
+            assert (cache.get("k1") != null);
+            cache.put("k3", texts);
+            assert (cache.getEntries().size() == 2);
+            assert (cache.get("k2") == null);
+            assert (cache.get("k1") != null);
+            assert (cache.get("k3") != null);
+        } finally {
+            deleteCache(cache);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuildCacheBadSize() {
+        new BuildCache(BuildCache.getDefaultDir(), -1);
+    }
+}
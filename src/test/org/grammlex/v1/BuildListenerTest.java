@@ -0,0 +1,49 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+public class BuildListenerTest {
+    private static final String EXPR_GRAMMAR =
+            "e: e PLUS t | t;\n" +
+            "t: t STAR f | f;\n" +
+            "f: LP e RP | ID;\n";
+
+    private static String outputTables(LR1Builder builder) {
+        StringBuilder out = new StringBuilder();
+        builder.outputStates(out);
+        builder.outputActionTable(out);
+        return builder.outputGotoTable(out).toString();
+    }
+
+    @Test
+    public void testBuildListener() {
+        // A build without a trace makes the same states and tables
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        for (String mode : new String[]{LR1Builder.MODE_LR1, LR1Builder.MODE_LALR1,
+                LR1Builder.MODE_SLR1, LR1Builder.MODE_PAGER}) {
+            LR1Builder traced = new LR1Builder(grammar, mode);
+            StringBuilder trace = new StringBuilder();
+            boolean tracedCreated = traced.createStates(trace);
+            assert (tracedCreated);
+            assert (trace.length() > 0);
+
+            LR1Builder untraced = new LR1Builder(grammar, mode);
+            boolean created = untraced.createStates();
+            assert (created);
+            assert (outputTables(untraced).equals(outputTables(traced)));
+
+            LR1Builder silent = new LR1Builder(grammar, mode);
+            created = silent.createStates(new BuildListener());
+            assert (created);
+            assert (outputTables(silent).equals(outputTables(traced)));
+        }
+    }
+
+    @Test
+    public void testBuildListenerNonLR1() {
+        Grammar grammar = new Grammar(
+                "A: a A a;\n" +
+                "A: epsilon;\n");
+        assert (!new LR1Builder(grammar).createStates());
+    }
+}
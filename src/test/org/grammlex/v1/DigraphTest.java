@@ -0,0 +1,31 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class DigraphTest {
+    @Test
+    public void testDigraph() {
+        // 0 -> 1 -> 2 -> 1 and 3 alone
+        List<BitSet> initial = new ArrayList<>();
+        List<List<Integer>> relation = new ArrayList<>();
+        for (int x = 0; x < 4; x++) {
+            BitSet set = new BitSet();
+            set.set(x);
+            initial.add(set);
+            relation.add(new ArrayList<>());
+        }
+        relation.get(0).add(1);
+        relation.get(1).add(2);
+        relation.get(2).add(1);
+
+        List<BitSet> sets = Digraph.compute(initial, relation);
+        assert (sets.get(0).toString().equals("{0, 1, 2}"));
+        assert (sets.get(1).toString().equals("{1, 2}"));
+        assert (sets.get(2).toString().equals("{1, 2}"));
+        assert (sets.get(3).toString().equals("{3}"));
+        // The initial sets are not modified
+        assert (initial.get(0).cardinality() == 1);
+    }
+}
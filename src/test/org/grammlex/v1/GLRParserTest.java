@@ -0,0 +1,181 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GLRParserTest {
+    private static GLRParser createParser(String text, String mode) {
+        Grammar grammar = new Grammar(text);
+        LR1Builder builder = new LR1Builder(grammar, mode);
+        builder.createStates(new StringBuilder());
+        return new GLRParser(builder.createGLRTables());
+    }
+
+    private static int[] tokens(GLRParser parser, String... names) {
+        GLRTables tables = parser.getTables();
+        int[] tokens = new int[names.length + 1];
+        for (int i = 0; i < names.length; i++) {
+            for (int symbol = 0; symbol < tables.getSymbolCount(); symbol++) {
+                if (tables.getSymbolName(symbol).equals(names[i])) {
+                    tokens[i] = symbol;
+                }
+            }
+        }
+        tokens[names.length] = tables.getEndSymbol();
+        return tokens;
+    }
+
+    private static boolean parse(GLRParser parser, int[] input) {
+        parser.reset();
+        int[] next = {0};
+        return parser.parse(() -> input[next[0]++]);
+    }
+
+    private static String[] repeat(String name, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = name;
+        }
+        return names;
+    }
+
+    @Test
+    public void testGLRParserNonLR1() {
+        // Not LR(1) in any mode, but unambiguous
+        for (String mode : new String[] {LR1Builder.MODE_LR1, LR1Builder.MODE_LALR1}) {
+            GLRParser parser = createParser("A: a A a;\nA: epsilon;\n", mode);
+            for (int count = 0; count <= 8; count++) {
+                boolean accepted = parse(parser, tokens(parser, repeat("a", count)));
+                assert (accepted == (count % 2 == 0));
+                assert (parser.getTreeCount() == (accepted ? 1 : 0));
+            }
+            boolean accepted = parse(parser, tokens(parser, "a", "a", "a", "a"));
+            assert (accepted);
+            assert (parser.outputForest(new StringBuilder()).toString().equals(
+                    "A[0,4]: a[0,1] A[1,3] a[3,4]\n" +
+                    "A[1,3]: a[1,2] A[2,2] a[2,3]\n" +
+                    "A[2,2]: epsilon\n"));
+        }
+    }
+
+    @Test
+    public void testGLRParserAmbiguous() {
+        GLRParser parser = createParser("e: e PLUS e;\ne: ID;\n", LR1Builder.MODE_LALR1);
+        boolean accepted = parse(parser, tokens(parser, "ID", "PLUS", "ID", "PLUS", "ID"));
+        assert (accepted);
+        assert (parser.getTreeCount() == 2);
+        int root = parser.getForestRoot();
+        assert (parser.getForestStart(root) == 0);
+        assert (parser.getForestEnd(root) == 5);
+        assert (parser.getAlternativeCount(root) == 2);
+        List<String> spans = new ArrayList<>();
+        for (int alternative = 0; alternative < 2; alternative++) {
+            assert (parser.getAlternativeRule(root, alternative) == 1);
+            int[] children = parser.getAlternativeChildren(root, alternative);
+            assert (children.length == 3);
+            spans.add(parser.getForestStart(children[0]) + "-" + parser.getForestEnd(children[0]));
+        }
+        assert (spans.contains("0-1"));
+        assert (spans.contains("0-3"));
+        assert (parser.getLevel() == 5);
+        assert (parser.getStackNodeCount() > parser.getLevel());
+        assert (parser.getAlternativeCount(parser.getAlternativeChildren(root, 0)[1]) == 0);
+
+        // The number of parses of n operands is a Catalan number, but the
+        // forest stays polynomial
+        long catalan = 1;
+        for (int n = 1; n <= 30; n++) {
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (i > 0) {
+                    names.add("PLUS");
+                }
+                names.add("ID");
+            }
+            accepted = parse(parser, tokens(parser, names.toArray(new String[0])));
+            assert (accepted);
+            assert (parser.getTreeCount() == catalan);
+            assert (parser.getForestNodeCount() <= 2 * names.size() * names.size());
+            catalan = catalan * 2 * (2 * n - 1) / (n + 1);
+        }
+
+        // Rejections give the level of the bad token
+        accepted = parse(parser, tokens(parser, "ID", "PLUS", "PLUS"));
+        assert (!accepted);
+        assert (parser.getStatus() == LRParser.REJECTED);
+        assert (parser.getErrorLevel() == 2);
+        accepted = parse(parser, tokens(parser, "ID", "PLUS"));
+        assert (!accepted);
+        assert (parser.getErrorLevel() == 2);
+        assert (parser.getForestRoot() == GLRParser.NO_NODE);
+        assert (parser.getTreeCount() == 0);
+    }
+
+    @Test
+    public void testGLRParserEpsilon() {
+        // Hidden left recursion through a nullable variable
+        GLRParser parser = createParser(
+                "s: a s b | x;\n" +
+                "a: epsilon;\n", LR1Builder.MODE_LALR1);
+        boolean accepted = parse(parser, tokens(parser, "x"));
+        assert (accepted);
+        accepted = parse(parser, tokens(parser, "x", "b", "b", "b"));
+        assert (accepted);
+        assert (parser.getTreeCount() == 1);
+        accepted = parse(parser, tokens(parser, "b", "x"));
+        assert (!accepted);
+
+        // A cycle makes infinitely many trees
+        parser = createParser("s: s | x;\n", LR1Builder.MODE_LALR1);
+        accepted = parse(parser, tokens(parser, "x"));
+        assert (accepted);
+        assert (parser.getTreeCount() == Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testGLRParserDeterministic() {
+        String text = "e: e PLUS t | t;\nt: t STAR f | f;\nf: LP e RP | ID;\n";
+        GLRParser parser = createParser(text, LR1Builder.MODE_LR1);
+        Grammar grammar = new Grammar(text);
+        LR1Builder builder = new LR1Builder(grammar);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        LRParser lrParser = new LRParser(builder.createParseTables());
+        String[][] inputs = {
+                {"ID"},
+                {"ID", "PLUS", "ID", "STAR", "ID"},
+                {"LP", "ID", "PLUS", "ID", "RP", "STAR", "ID"},
+                {"ID", "PLUS"},
+                {"LP", "ID"},
+        };
+        for (String[] names : inputs) {
+            int[] input = tokens(parser, names);
+            int[] next = {0};
+            boolean accepted = lrParser.parse(() -> input[next[0]++]);
+            lrParser.reset();
+            boolean glrAccepted = parse(parser, input);
+            assert (glrAccepted == accepted);
+            assert (parser.getTreeCount() == (accepted ? 1 : 0));
+        }
+        // One stack top on every token
+        int[] input = tokens(parser, "LP", "ID", "PLUS", "ID", "RP", "STAR", "ID");
+        parser.reset();
+        for (int i = 0; i < input.length - 1; i++) {
+            int status = parser.feed(input[i]);
+            assert (status == LRParser.NEED_MORE);
+            assert (parser.getStackTopCount() == 1);
+        }
+        int status = parser.feed(input[input.length - 1]);
+        assert (status == LRParser.ACCEPTED);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGLRParserBadAlternative() {
+        GLRParser parser = createParser("e: ID;\n", LR1Builder.MODE_LR1);
+        boolean accepted = parse(parser, tokens(parser, "ID"));
+        assert (accepted);
+        parser.getAlternativeRule(parser.getForestRoot(), 1);
+    }
+}
@@ -0,0 +1,64 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+public class GLRTablesTest {
+    @Test
+    public void testGLRTables() {
+        Grammar grammar = new Grammar(
+                "e: e PLUS e;\n" +
+                "e: ID;\n");
+        LR1Builder builder = new LR1Builder(grammar, LR1Builder.MODE_LALR1);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (!created);
+        GLRTables tables = builder.createGLRTables();
+        assert (tables.getStateCount() == builder.getStates().size());
+        assert (!tables.isDeterministic());
+        assert (tables.getConflictCount() == 1);
+        assert (tables.getConflictStateCount() == 1);
+
+        // The conflict is a shift and a reduce of e: e PLUS e on PLUS
+        int plus = grammar.getSymbols().getId("PLUS");
+        int conflictState = -1;
+        for (int state = 0; state < tables.getStateCount(); state++) {
+            if (GLRTables.isConflict(tables.getAction(state, plus))) {
+                conflictState = state;
+            }
+        }
+        assert (conflictState != -1);
+        int[] actions = tables.getConflictActions(tables.getAction(conflictState, plus));
+        assert (actions.length == 2);
+        assert (ParseTables.kindOf(actions[0]) == ParseTables.SHIFT);
+        assert (ParseTables.kindOf(actions[1]) == ParseTables.REDUCE);
+        assert (ParseTables.operandOf(actions[1]) == 1);
+        assert (tables.outputSummary(new StringBuilder()).toString()
+                .endsWith("Conflicts: 1 cells in 1 states\n"));
+
+        // An LRParser rejects at the conflict
+        LRParser parser = new LRParser(tables);
+        int[] input = {grammar.getSymbols().getId("ID"), plus, grammar.getSymbols().getId("ID"), plus};
+        int[] next = {0};
+        boolean accepted = parser.parse(() -> input[next[0]++]);
+        assert (!accepted);
+    }
+
+    @Test
+    public void testGLRTablesDeterministic() {
+        Grammar grammar = new Grammar(
+                "e: e PLUS t | t;\n" +
+                "t: ID;\n");
+        LR1Builder builder = new LR1Builder(grammar);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        GLRTables tables = builder.createGLRTables();
+        ParseTables parseTables = builder.createParseTables();
+        assert (tables.isDeterministic());
+        assert (tables.getConflictStateCount() == 0);
+        for (int state = 0; state < tables.getStateCount(); state++) {
+            for (int symbol = 0; symbol < tables.getSymbolCount(); symbol++) {
+                assert (tables.getAction(state, symbol) == parseTables.getAction(state, symbol));
+                assert (tables.getGoto(state, symbol) == parseTables.getGoto(state, symbol));
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+public class GrammarGeneratorTest {
+
+    private static String generate(long seed, int rules, double conflictRate) {
+        GrammarGenerator generator = new GrammarGenerator(seed);
+        generator.setRules(rules);
+        generator.setConflictRate(conflictRate);
+        return generator.generate(new StringBuilder()).toString();
+    }
+
+    @Test
+    public void testGrammarGenerator() {
+        String text = generate(1, 20, 0.0);
+        assert (text.equals(generate(1, 20, 0.0)));
+        assert (!text.equals(generate(2, 20, 0.0)));
+        assert (text.startsWith("r0: "));
+        assert (text.split("\n").length == 20);
+
+        Grammar grammar = new Grammar(text);
+        assert (grammar.getStartVariable().equals("r0"));
+        for (int variable = 0; variable < 20; variable++) {
+            assert (grammar.getVariables().contains("r" + variable));
+            // Every variable but r0 is used by a rule
+            assert (variable == 0 || text.matches("(?s).*:[^\\n]* r" + variable + "[ ;*+?].*"));
+        }
+    }
+
+    @Test
+    public void testGrammarGeneratorLR1() {
+        // Without conflicts every grammar is LR(1)
+        for (long seed = 0; seed < 20; seed++) {
+            LR1Builder builder = new LR1Builder(new Grammar(generate(seed, 30, 0.0)));
+            boolean created = builder.createStates(new StringBuilder());
+            assert (created);
+        }
+        // With them most are not
+        int conflicts = 0;
+        for (long seed = 0; seed < 20; seed++) {
+            LR1Builder builder = new LR1Builder(new Grammar(generate(seed, 30, 0.5)));
+            if (!builder.createStates(new StringBuilder())) {
+                conflicts++;
+            }
+        }
+        assert (conflicts > 10);
+    }
+
+    @Test
+    public void testGrammarGeneratorSettings() {
+        GrammarGenerator generator = new GrammarGenerator(7);
+        generator.setRules(12);
+        generator.setFanOut(1);
+        generator.setDepth(4);
+        generator.setModifierDensity(1.0);
+        String text = generator.generate(new StringBuilder()).toString();
+        // One alternative each, but for one more at the end of each level,
+        // and every term has a modifier
+        assert (text.split("\\|").length <= 5);
+        assert (text.contains("*") || text.contains("+") || text.contains("?"));
+        assert (generator.getLevel(0) == 0);
+        assert (generator.getLevel(1) == 1);
+        assert (generator.getLevel(11) == 4);
+        // Variables are only used by the level above them
+        for (String line : text.split("\n")) {
+            int variable = Integer.parseInt(line.substring(1, line.indexOf(':')));
+            for (String term : line.substring(line.indexOf(':') + 1).split("[ ;*+?]+")) {
+                if (term.startsWith("r")) {
+                    int used = Integer.parseInt(term.substring(1));
+                    assert (generator.getLevel(used) == generator.getLevel(variable) + 1);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGrammarGeneratorBadRate() {
+        new GrammarGenerator(1).setModifierDensity(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGrammarGeneratorBadRules() {
+        new GrammarGenerator(1).setRules(0);
+    }
+}
@@ -0,0 +1,112 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class GrammarReaderTest {
+    @Test
+    public void testGrammarReader() {
+        GrammarReader reader = new GrammarReader("s: a b* | c+;\nc: a? ;\n");
+        boolean found = reader.nextRule();
+        assert (found);
+        assert (reader.next() == GrammarReader.NAME);
+        assert (reader.getName().equals("s"));
+        assert (reader.next() == GrammarReader.COLON);
+        assert (reader.next() == GrammarReader.NAME);
+        String a = reader.getName();
+        assert (a.equals("a"));
+        assert (reader.getModifier() == 0);
+        assert (reader.next() == GrammarReader.NAME);
+        assert (reader.getName().equals("b*"));
+        assert (reader.getModifier() == '*');
+        assert (reader.getBaseName().equals("b"));
+        assert (reader.next() == GrammarReader.BAR);
+        assert (reader.next() == GrammarReader.NAME);
+        assert (reader.getModifier() == '+');
+        assert (reader.next() == GrammarReader.SEMICOLON);
+
+        found = reader.nextRule();
+        assert (found);
+        assert (reader.getRuleText().equals("c: a?"));
+        assert (reader.next() == GrammarReader.NAME);
+        assert (reader.next() == GrammarReader.COLON);
+        assert (reader.next() == GrammarReader.NAME);
+        // The same name is the same String
+        assert (reader.getBaseName() == a);
+        assert (reader.next() == GrammarReader.SEMICOLON);
+        found = reader.nextRule();
+        assert (!found);
+        assert (reader.next() == GrammarReader.END);
+        assert (reader.getNameCount() == 4);
+    }
+
+    @Test
+    public void testGrammarReaderSkips() {
+        GrammarReader reader = new GrammarReader(
+                "parser grammar X; // a comment\n" +
+                "options { tokenVocab = L; }\n" +
+                "@members {\n  int x() { return 1; }\n}\n" +
+                "/* a block\n   comment */ parser: A /* in a rule */ | B;\n");
+        boolean found = reader.nextRule();
+        assert (found);
+        assert (reader.next() == GrammarReader.NAME);
+        assert (reader.getName().equals("parser"));
+        assert (reader.next() == GrammarReader.COLON);
+        assert (reader.next() == GrammarReader.NAME);
+        assert (reader.next() == GrammarReader.BAR);
+        assert (reader.next() == GrammarReader.NAME);
+        assert (reader.getName().equals("B"));
+        assert (reader.next() == GrammarReader.SEMICOLON);
+        found = reader.nextRule();
+        assert (!found);
+    }
+
+    @Test
+    public void testGrammarReaderBody() {
+        GrammarReader reader = new GrammarReader("SEMI: ';' // the end\n  | [;]\n  ;\nX: 'x");
+        boolean found = reader.nextRule();
+        assert (found);
+        reader.next();
+        reader.next();
+        assert (reader.hasLexerBody());
+        assert (reader.readBody().equals("';'    | [;]"));
+        found = reader.nextRule();
+        assert (found);
+        reader.next();
+        reader.next();
+        assert (reader.readBody() == null);
+    }
+
+    @Test
+    public void testGrammarReaderBodyLines() {
+        // A line break between names separates them, but not in a literal or set
+        GrammarReader reader = new GrammarReader("ID: [a-z] LETTER\nDIGIT '\n' [\r\n];");
+        boolean found = reader.nextRule();
+        assert (found);
+        reader.next();
+        reader.next();
+        assert (reader.readBody().equals("[a-z] LETTER DIGIT '' []"));
+
+        Grammar grammar = new Grammar("s: ID;\nID: [a-z] LETTER\nDIGIT;\n"
+                + "fragment LETTER: [a-z];\nfragment DIGIT: [0-9];\n");
+        assert (new LexerDfa(grammar).getStateCount() > 0);
+    }
+
+    @Test
+    public void testGrammarReaderFile() throws IOException {
+        Path path = Files.createTempFile("grammar", ".g4");
+        try {
+            Files.write(path, "s: A • B;\n".getBytes(StandardCharsets.UTF_8));
+            CharSequence text = GrammarReader.readFile(path);
+            assert (text.toString().equals("s: A • B;\n"));
+            Grammar grammar = new Grammar(text);
+            assert (grammar.getTerminals().contains("•"));
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
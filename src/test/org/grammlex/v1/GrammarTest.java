@@ -2,6 +2,11 @@ package org.grammlex.v1;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 public class GrammarTest {
     @Test
     public void testGrammar() {
@@ -12,6 +17,7 @@ public class GrammarTest {
                 "map: ID COLON STRING NL;\n");
 
         assert (grammar.getFirstSets().get("document").contains("HEADER"));
+        assert (grammar.getPhaseNanos().keySet().toString().equals("[parse, first, follow]"));
         StringBuilder out = new StringBuilder();
         grammar.outputGrammar(out).append("\n");
         System.out.println(out.toString()); //NOSONAR
@@ -55,5 +61,105 @@ public class GrammarTest {
 
         rule = new Rule("S", new String[] {"FOOBAR"});
         assert(grammar.findRuleIndex(rule) == -1);
+
+        // The first of equal alternatives, and the same one of another grammar
+        grammar = new Grammar("S: A | B | A;");
+        Grammar edited = new Grammar("S: C | A | B | A;", grammar);
+        rule = new Rule("S", new String[] {"A"});
+        assert(grammar.findRuleIndex(rule) == 1);
+        assert(edited.findRuleIndex(grammar.getRules().get(1), grammar) == 2);
+        assert(edited.findRuleIndex(grammar.getRules().get(3), grammar) == 4);
+        assert(edited.findRuleIndex(grammar.getRules().get(2), grammar) == 3);
+    }
+
+    @Test
+    public void testGrammarRuleIndex() {
+        Grammar grammar = new Grammar("S: HEADER body;\nbody: epsilon | ID body;\n");
+        int body = grammar.getSymbols().getId("body");
+        assert (grammar.getRulesByVar(body).size() == 2);
+        assert (grammar.getRulesByVar(body).get(1).getTerms()[0].equals("ID"));
+
+        // Every rule with every dot position has its own LR(0) item number
+        Set<Integer> numbers = new HashSet<>();
+        for (Rule rule : grammar.getRules()) {
+            for (int dot = 0; dot <= rule.getSymbols().length; dot++) {
+                numbers.add(grammar.getLR0ItemNumber(rule, dot));
+            }
+        }
+        assert (numbers.size() == grammar.getLR0ItemCount());
+        assert (grammar.isNullable(body));
+    }
+
+    @Test
+    public void testGrammarLexerRules() {
+        Grammar grammar = new Grammar("ID: LETTER (LETTER | [0-9])*;\nlist: ID | list COMMA ID;\n" +
+                "COMMA: ',';\nfragment LETTER: [a-z];\nWS: ' ' -> skip;\nS: list;\n");
+        // Lexer rules may come first and upper case parser rules still work
+        assert (grammar.getStartVariable().equals("list"));
+        assert (grammar.getVariables().contains("S"));
+        assert (grammar.getLexerRules().get("COMMA").equals("','"));
+        assert (grammar.getLexerRules().get("WS").equals("' '"));
+        assert (grammar.isFragment("LETTER"));
+        assert (grammar.isSkipped("WS"));
+        assert (grammar.getSymbols().isTerminal(grammar.getSymbols().getId("ID")));
+        assert (grammar.getSymbols().getId("LETTER") == -1);
+        assert (grammar.getSymbols().getId("WS") == -1);
+    }
+
+    @Test
+    public void testGrammarLayout() {
+        // Rules may share a line or span lines, with comments anywhere
+        Grammar grammar = new Grammar("grammar G;\n" +
+                "s: a b* // the start\n" +
+                "   | c;  a: X; /* several\n" +
+                "   lines */ b: Y | ;\n" +
+                "c: a?;\n");
+        Grammar expected = new Grammar("s: a b* | c;\na: X;\nb: Y | epsilon;\nc: a?;\n");
+        assert (grammar.outputGrammar(new StringBuilder()).toString()
+                .equals(expected.outputGrammar(new StringBuilder()).toString()));
+        assert (grammar.getRules().equals(expected.getRules()));
+        assert (grammar.isNullable(grammar.getSymbols().getId("b")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGrammarMissingColon() {
+        new Grammar("s A B;");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGrammarColonInBody() {
+        new Grammar("s: A B\nt: C;");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGrammarLexerCommand() {
+        new Grammar("s: A;\nA: 'a' -> more;\n");
+    }
+
+    @Test
+    public void testGrammarEdit() {
+        String text = "s: a B | c;\n" +
+                "a: X a | Y;\n" +
+                "c: Z d;\n" +
+                "d: W | epsilon;\n";
+        Grammar previous = new Grammar(text);
+        // A new alternative of d, with a new terminal
+        Grammar grammar = new Grammar(text.replace("d: W", "d: V | W"), previous);
+        assert (grammar.findChangedVariables(previous).equals(new HashSet<>(Collections.singletonList("d"))));
+        assert (grammar.getAffectedVariables().equals(new HashSet<>(Arrays.asList("d", "c", "s", "S'"))));
+        assert (grammar.getFirstSets().get("c").equals(new HashSet<>(Collections.singletonList("Z"))));
+        assert (grammar.getFirstSets().get("d").equals(new HashSet<>(Arrays.asList("V", "W", Grammar.EPSILON))));
+
+        // The copied and computed sets are those of a new grammar
+        Grammar fresh = new Grammar(text.replace("d: W", "d: V | W"));
+        assert (grammar.getFirstSets().equals(fresh.getFirstSets()));
+        assert (grammar.getFollowSets().equals(fresh.getFollowSets()));
+        for (int id = 0; id < fresh.getSymbols().size(); id++) {
+            assert (grammar.getFirstSymbols(id).equals(fresh.getFirstSymbols(id)));
+            if (fresh.getSymbols().isVariable(id)) {
+                assert (grammar.getFollowSymbols(id).equals(fresh.getFollowSymbols(id)));
+            }
+        }
+        assert (new Grammar(text).getAffectedVariables() == null);
     }
 }
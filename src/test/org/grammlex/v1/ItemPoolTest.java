@@ -0,0 +1,88 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ItemPoolTest {
+    @Test
+    public void testInternLookahead() {
+        ItemPool pool = new ItemPool();
+        BitSet set = new BitSet();
+        set.set(3);
+        BitSet shared = pool.intern(set);
+        assert (shared.equals(set));
+        // The pool keeps a copy, so the caller may change its set
+        assert (shared != set);
+        set.set(5);
+        assert (!shared.get(5));
+
+        BitSet equal = new BitSet();
+        equal.set(3);
+        assert (pool.intern(equal) == shared);
+        assert (pool.intern(set) != shared);
+        assert (pool.getLookaheadCount() == 2);
+    }
+
+    @Test
+    public void testInternItem() {
+        Grammar grammar = new Grammar("s: A s | B;\n");
+        ItemPool pool = new ItemPool();
+        Rule rule = grammar.getRules().get(0);
+        BitSet lookahead = new BitSet();
+        lookahead.set(1);
+        LR1Item item = pool.intern(rule, 0, lookahead);
+        assert (item.getLookahead() != lookahead);
+        assert (item.getLookahead() == pool.intern(lookahead));
+        assert (pool.intern(new LR1Item(rule, 0, (BitSet) lookahead.clone())) == item);
+        assert (pool.intern(item) == item);
+        assert (pool.intern(rule, 1, lookahead) != item);
+        assert (pool.getItemCount() == 2);
+        assert (pool.getLookaheadCount() == 1);
+    }
+
+    @Test
+    public void testItemPoolStates() {
+        // The states of a build share a few items and fewer lookaheads
+        Grammar grammar = new Grammar(
+                "e: e PLUS t | t;\n" +
+                "t: t STAR f | f;\n" +
+                "f: LP e RP | ID;\n");
+        LR1Builder builder = new LR1Builder(grammar);
+        boolean created = builder.createStates();
+        assert (created);
+        Map<LR1Item, LR1Item> items = new HashMap<>();
+        Map<BitSet, BitSet> lookaheads = new HashMap<>();
+        int count = 0;
+        for (LR1State state : builder.getStates()) {
+            for (LR1Item item : state.getItems()) {
+                assert (items.computeIfAbsent(item, k -> item) == item);
+                assert (lookaheads.computeIfAbsent(item.getLookahead(), k -> item.getLookahead())
+                        == item.getLookahead());
+                count++;
+            }
+            for (LR1Item item : state.getKernel()) {
+                assert (items.computeIfAbsent(item, k -> item) == item);
+            }
+        }
+        assert (items.size() < count);
+        assert (lookaheads.size() * 5 < count);
+        // The pool of the build is not kept after it
+        assert (builder.getItemPool().getItemCount() == 0);
+        assert (builder.getItemPool().getLookaheadCount() == 0);
+    }
+
+    @Test
+    public void testItemPoolState() {
+        // A state made on its own has a pool of its own
+        Grammar grammar = new Grammar("s: s A | B;\n");
+        LR1Item start = new LR1Item(grammar.getRules().get(0), 0, new BitSet());
+        LR1State first = new LR1State(grammar, Collections.singleton(start));
+        LR1State second = new LR1State(grammar, Collections.singleton(start));
+        assert (first.getItems().equals(second.getItems()));
+        assert (first.getItems().get(1) != second.getItems().get(1));
+    }
+}
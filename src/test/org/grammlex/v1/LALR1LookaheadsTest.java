@@ -0,0 +1,35 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class LALR1LookaheadsTest {
+    @Test
+    public void testLALR1Lookaheads() {
+        // The classic grammar that is LALR(1) but not SLR(1)
+        Grammar grammar = new Grammar(
+                "s: l EQ r | r;\n" +
+                "l: STAR r | ID;\n" +
+                "r: l;\n");
+        LR1Builder builder = new LR1Builder(grammar, LR1Builder.MODE_LALR1);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        assert (builder.getStates().size() == 10);
+
+        // r: l • is reduced only on $ after s: l • EQ r, unlike with FOLLOW(r)
+        for (LR1State state : builder.getStates()) {
+            for (LR1Item item : state.getItems()) {
+                if (item.getVar().equals("s") && item.getDotPosition() == 1
+                        && item.getTerms().length == 3) {
+                    for (LR1Item other : state.getItems()) {
+                        if (other.getVar().equals("r")) {
+                            assert (grammar.getSymbols().getNames(other.getLookahead())
+                                    .equals(Collections.singletonList("$")));
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -2,7 +2,7 @@ package org.grammlex.v1;
 
 import org.junit.Test;
 
-import java.util.HashSet;
+import java.util.*;
 
 public class LR1BuilderTest {
     @Test
@@ -15,7 +15,7 @@ public class LR1BuilderTest {
 
         StringBuilder out = new StringBuilder();
         LR1Builder builder = new LR1Builder(grammar);
-        builder.createStatesForCLR1(out); //NOSONAR
+        builder.createStatesForCLR1(new TextBuildListener(grammar, out)); //NOSONAR
 
         int stateNum = 0;
         for (LR1State state : builder.getStates()) {
@@ -34,7 +34,7 @@ public class LR1BuilderTest {
 
         StringBuilder out = new StringBuilder();
         LR1Builder builder = new LR1Builder(grammar);
-        assert (!builder.createStatesForCLR1(out));
+        assert (!builder.createStatesForCLR1(new TextBuildListener(grammar, out)));
     }
 
     @Test
@@ -47,7 +47,7 @@ public class LR1BuilderTest {
 
         StringBuilder out = new StringBuilder();
         LR1Builder builder = new LR1Builder(grammar);
-        builder.createStatesForCLR1(out); //NOSONAR
+        builder.createStatesForCLR1(new TextBuildListener(grammar, out)); //NOSONAR
 
         int stateNum = 0;
         for (LR1State state : builder.getStates()) {
@@ -56,4 +56,237 @@ public class LR1BuilderTest {
         }
         assert (builder.findStateIndex(new LR1State(grammar, new HashSet<>())) == -1);
     }
+
+    @Test
+    public void testLR1BuilderModes() {
+        // LR(1) but not LALR(1): merging the states after A E and B E
+        // makes reducing e and f conflict.
+        Grammar grammar = new Grammar(
+                "s: A e C | A f D | B f C | B e D;\n" +
+                "e: E;\n" +
+                "f: E;\n");
+        assert (new LR1Builder(grammar).createStates(new StringBuilder()));
+        assert (!new LR1Builder(grammar, LR1Builder.MODE_LALR1).createStates(new StringBuilder()));
+        assert (!new LR1Builder(grammar, LR1Builder.MODE_SLR1).createStates(new StringBuilder()));
+
+        // LALR(1) but not SLR(1)
+        grammar = new Grammar(
+                "s: l EQ r | r;\n" +
+                "l: STAR r | ID;\n" +
+                "r: l;\n");
+        LR1Builder lr1 = new LR1Builder(grammar);
+        boolean lr1Created = lr1.createStates(new StringBuilder());
+        assert (lr1Created);
+        LR1Builder lalr = new LR1Builder(grammar, LR1Builder.MODE_LALR1);
+        boolean lalrCreated = lalr.createStates(new StringBuilder());
+        assert (lalrCreated);
+        assert (lalr.getStates().size() < lr1.getStates().size());
+        assert (lalr.getModeName().equals("LALR(1)"));
+        LR1Builder slr = new LR1Builder(grammar, LR1Builder.MODE_SLR1);
+        boolean slrCreated = slr.createStates(new StringBuilder());
+        assert (!slrCreated);
+        assert (slr.getModeName().equals("SLR(1)"));
+    }
+
+    @Test
+    public void testLR1BuilderStats() {
+        Grammar grammar = new Grammar(
+                "e: e PLUS t | t;\n" +
+                "t: t STAR f | f;\n" +
+                "f: LP e RP | ID;\n");
+        LR1Builder builder = new LR1Builder(grammar);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        assert (builder.getPhaseNanos().keySet().equals(new LinkedHashSet<>(Arrays.asList(
+                Grammar.PHASE_PARSE, Grammar.PHASE_FIRST, Grammar.PHASE_FOLLOW,
+                LR1Builder.PHASE_STATES, LR1Builder.PHASE_GOTO, LR1Builder.PHASE_ACTION))));
+        // Every transition makes a new state or finds one
+        int transitions = 0;
+        for (LR1State state : builder.getStates()) {
+            transitions += state.getTransitionCount();
+        }
+        assert (builder.getDuplicateKernelHits() == transitions - (builder.getStates().size() - 1));
+        assert (builder.getClosureIterations() >= builder.getStates().size());
+        // LR(1) makes the states of t, e and f twice, inside and outside LP RP
+        assert (builder.getStatesByVariable().get("t") == 10);
+        assert (builder.getStatesByVariable().get("e") == 9);
+        assert (builder.getStatesByVariable().get("f") == 8);
+
+        String stats = builder.outputStats(new StringBuilder()).toString();
+        assert (stats.startsWith("Build stats for LR(1):\nPhase times: parse "));
+        assert (stats.contains("\nStates: 22\n"));
+        assert (stats.contains("\nDuplicate kernel hits: " + builder.getDuplicateKernelHits() + "\n"));
+        assert (stats.contains("\nTop variables by states: t 10, e 9, f 8, S' 2\n"));
+
+        builder = new LR1Builder(grammar, LR1Builder.MODE_LALR1);
+        created = builder.createStates(new StringBuilder());
+        assert (created);
+        assert (builder.getPhaseNanos().containsKey(LR1Builder.PHASE_LOOKAHEADS));
+        assert (builder.outputStats(new StringBuilder()).toString().contains("\nStates: 12\n"));
+    }
+
+    @Test
+    public void testLR1BuilderSLR1() {
+        Grammar grammar = new Grammar(
+                "e: e PLUS t | t;\n" +
+                "t: t STAR f | f;\n" +
+                "f: LP e RP | ID;\n");
+        LR1Builder builder = new LR1Builder(grammar, LR1Builder.MODE_SLR1);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        assert (builder.getStates().size() == 12);
+        assert (builder.getMode().equals(LR1Builder.MODE_SLR1));
+    }
+
+    private static String outputBuild(LR1Builder builder) {
+        StringBuilder out = new StringBuilder();
+        out.append(builder.createStates(new StringBuilder())).append("\n");
+        builder.outputStates(out);
+        builder.outputActionTable(out);
+        return builder.outputGotoTable(out).toString();
+    }
+
+    @Test
+    public void testLR1BuilderPreviousBuild() {
+        for (String mode : Arrays.asList(LR1Builder.MODE_LR1, LR1Builder.MODE_LALR1,
+                LR1Builder.MODE_SLR1, LR1Builder.MODE_PAGER)) {
+            for (long seed = 0; seed < 5; seed++) {
+                GrammarGenerator generator = new GrammarGenerator(seed);
+                generator.setRules(30);
+                String text = generator.generate(new StringBuilder()).toString();
+                // Edit one rule with a new terminal and a new variable
+                String edited = text.replace("r20:", "r20: NEW extra |") + "extra: X | epsilon;\n";
+
+                Grammar previous = new Grammar(text);
+                LR1Builder previousBuilder = new LR1Builder(previous, mode);
+                boolean created = previousBuilder.createStates(new StringBuilder());
+                assert (created);
+                LR1Builder builder = new LR1Builder(new Grammar(edited, previous), mode);
+                builder.setPreviousBuild(previousBuilder);
+                builder.setThreads(seed % 2 == 0 ? 1 : 2);
+
+                // The same states and tables as a build from scratch
+                String output = outputBuild(builder);
+                assert (output.equals(outputBuild(new LR1Builder(new Grammar(edited), mode))));
+                assert (builder.getReusedStates() > builder.getStates().size() / 2);
+                assert (builder.getReusedStates() < builder.getStates().size());
+                assert (builder.outputStats(new StringBuilder()).toString().contains(
+                        "\nReused states: " + builder.getReusedStates() + " of a previous build\n"));
+            }
+        }
+    }
+
+    @Test
+    public void testLR1BuilderPreviousBuildDuplicateRule() {
+        // Reused items keep the alternative they had, not an equal one
+        String text = "s: r X | Y;\nr: r Z | r Z | W;\n";
+        Grammar previous = new Grammar(text);
+        LR1Builder previousBuilder = new LR1Builder(previous);
+        previousBuilder.createStates(new StringBuilder());
+        String edited = text.replace("| Y;", "| Y | V;");
+        LR1Builder builder = new LR1Builder(new Grammar(edited, previous));
+        builder.setPreviousBuild(previousBuilder);
+        assert (outputBuild(builder).equals(outputBuild(new LR1Builder(new Grammar(edited)))));
+        assert (builder.getReusedStates() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLR1BuilderPreviousBuildMode() {
+        Grammar grammar = new Grammar("e: e PLUS ID | ID;\n");
+        new LR1Builder(grammar).setPreviousBuild(new LR1Builder(grammar, LR1Builder.MODE_LALR1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLR1BuilderBadMode() {
+        new LR1Builder(new Grammar("S: HEADER;"), "foo");
+    }
+
+    @Test
+    public void testLR1BuilderPager() {
+        // Merging like LALR(1) would conflict, so one state is split
+        Grammar grammar = new Grammar(
+                "s: A e C | A f D | B f C | B e D;\n" +
+                "e: E;\n" +
+                "f: E;\n");
+        LR1Builder builder = new LR1Builder(grammar, LR1Builder.MODE_PAGER);
+        StringBuilder out = new StringBuilder();
+        boolean created = builder.createStates(out);
+        assert (created);
+        assert (builder.getStates().size() == 14);
+        assert (builder.getSplitStates() == 1);
+        assert (builder.getModeName().equals("LR(1)"));
+        assert (out.toString().contains("Minimal LR(1): 14 states, 0 merged, 1 split"));
+
+        // Without conflicts the states merge down to the LALR(1) size
+        grammar = new Grammar(
+                "e: e PLUS t | t;\n" +
+                "t: t STAR f | f;\n" +
+                "f: LP e RP | ID;\n");
+        LR1Builder lr1 = new LR1Builder(grammar);
+        boolean lr1Created = lr1.createStates(new StringBuilder());
+        assert (lr1Created);
+        builder = new LR1Builder(grammar, LR1Builder.MODE_PAGER);
+        created = builder.createStates(new StringBuilder());
+        assert (created);
+        assert (builder.getStates().size() == 12);
+        assert (lr1.getStates().size() == 22);
+        assert (builder.getMergedStates() > 0);
+        assert (builder.getSplitStates() == 0);
+    }
+
+    @Test
+    public void testLR1BuilderWeakCompatibility() {
+        Rule rule1 = new Rule("e", new String[]{"E"});
+        Rule rule2 = new Rule("f", new String[]{"E"});
+        BitSet c = new BitSet();
+        c.set(0);
+        BitSet d = new BitSet();
+        d.set(1);
+        Set<LR1Item> kernel1 = new HashSet<>();
+        kernel1.add(new LR1Item(rule1, 1, (BitSet) c.clone()));
+        kernel1.add(new LR1Item(rule2, 1, (BitSet) d.clone()));
+        Set<LR1Item> kernel2 = new HashSet<>();
+        kernel2.add(new LR1Item(rule1, 1, (BitSet) d.clone()));
+        kernel2.add(new LR1Item(rule2, 1, (BitSet) c.clone()));
+        assert (!LR1Builder.isWeaklyCompatible(kernel1, kernel2));
+        assert (LR1Builder.isWeaklyCompatible(kernel1, kernel1));
+
+        Set<LR1Item> merged = LR1Builder.mergeKernels(kernel1, kernel2);
+        for (LR1Item item : merged) {
+            assert (item.getLookahead().cardinality() == 2);
+        }
+    }
+
+    @Test
+    public void testLR1BuilderParallel() {
+        Grammar grammar = new Grammar(
+                "json: value;\n" +
+                "value: object | array | STRING | NUMBER | TRUE | FALSE | NULL;\n" +
+                "object: LB members? RB;\n" +
+                "members: pair | pair COMMA members;\n" +
+                "pair: STRING COLON value;\n" +
+                "array: LSB elements? RSB;\n" +
+                "elements: value | value COMMA elements;\n");
+        for (String mode : new String[]{LR1Builder.MODE_LR1, LR1Builder.MODE_LALR1}) {
+            LR1Builder sequential = new LR1Builder(grammar, mode);
+            StringBuilder sequentialOut = new StringBuilder();
+            boolean sequentialCreated = sequential.createStates(sequentialOut);
+            assert (sequentialCreated);
+            sequential.outputStates(sequentialOut);
+            sequential.outputActionTable(sequentialOut);
+            sequential.outputGotoTable(sequentialOut);
+
+            LR1Builder parallel = new LR1Builder(grammar, mode);
+            parallel.setThreads(4);
+            StringBuilder parallelOut = new StringBuilder();
+            boolean parallelCreated = parallel.createStates(parallelOut);
+            assert (parallelCreated);
+            parallel.outputStates(parallelOut);
+            parallel.outputActionTable(parallelOut);
+            parallel.outputGotoTable(parallelOut);
+
+            // The trace, the state numbers and the tables are all the same
+            assert (parallelOut.toString().equals(sequentialOut.toString()));
+        }
+    }
 }
@@ -1,15 +1,14 @@
 package org.grammlex.v1;
 
 import org.junit.Test;
-import java.util.HashSet;
+import java.util.BitSet;
 
 public class LR1ItemTest {
     @Test
     public void testLR1Item() {
         Rule rule = new Rule("document",
                 new String[] {"BOM?","HEADER","value+","TRAILER"});
-	LR1Item testItem = new LR1Item(rule.getVar(), rule.getTerms(),
-					0, new HashSet<>());
+	LR1Item testItem = new LR1Item(rule, 0, new BitSet());
         assert(testItem.getVar().equals("document"));
     }
 }
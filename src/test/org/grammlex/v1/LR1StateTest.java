@@ -1,5 +1,6 @@
 package org.grammlex.v1;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Set;
 import org.junit.Test;
@@ -14,12 +15,13 @@ public class LR1StateTest {
                 "map: ID COLON STRING NL;\n");
         Rule firstRule = grammar.getRules().get(0);
 
-        LR1Item testItem = new LR1Item(firstRule.getVar(), firstRule.getTerms(),
-                            0, new HashSet<>());
+        LR1Item testItem = new LR1Item(firstRule, 0, new BitSet());
         Set<LR1Item> coreItems = new HashSet<>();
         coreItems.add(testItem);
 
         LR1State state = new LR1State(grammar, coreItems);
+        // Every item is processed at least once
+        assert (state.getClosureIterations() >= state.getItems().size());
         for (LR1Item item : state.getItems()) {
             System.out.println("Item: " + item); //NOSONAR
         }
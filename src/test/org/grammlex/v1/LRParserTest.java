@@ -0,0 +1,94 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LRParserTest {
+    private static final String EXPR_GRAMMAR =
+            "e: e PLUS t | t;\n" +
+            "t: t STAR f | f;\n" +
+            "f: LP e RP | ID;\n";
+
+    private static ParseTables createTables(Grammar grammar) {
+        LR1Builder builder = new LR1Builder(grammar, LR1Builder.MODE_LALR1);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        return builder.createParseTables();
+    }
+
+    private static int[] tokens(Grammar grammar, String... names) {
+        int[] tokens = new int[names.length + 1];
+        for (int i = 0; i < names.length; i++) {
+            tokens[i] = grammar.getSymbols().getId(names[i]);
+        }
+        tokens[names.length] = grammar.getSymbols().getEndSymbol();
+        return tokens;
+    }
+
+    @Test
+    public void testLRParser() {
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        LRParser parser = new LRParser(createTables(grammar));
+        List<Integer> reduces = new ArrayList<>();
+        parser.setReduceAction(reduces::add);
+
+        int[] input = tokens(grammar, "ID", "PLUS", "ID", "STAR", "ID");
+        int[] next = {0};
+        boolean accepted = parser.parse(() -> input[next[0]++]);
+        assert (accepted);
+        assert (parser.getStatus() == LRParser.ACCEPTED);
+        assert (next[0] == input.length);
+        // The last reduce is e: e PLUS t, rule 1
+        assert (reduces.get(reduces.size() - 1) == 1);
+        assert (grammar.getRules().get(reduces.get(0)).toString().equals("f: ID;"));
+    }
+
+    @Test
+    public void testLRParserReject() {
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        LRParser parser = new LRParser(createTables(grammar));
+        int[] input = tokens(grammar, "ID", "PLUS", "RP");
+        int status = LRParser.NEED_MORE;
+        for (int i = 0; status == LRParser.NEED_MORE; i++) {
+            status = parser.feed(input[i]);
+        }
+        assert (status == LRParser.REJECTED);
+        assert (parser.getErrorToken() == grammar.getSymbols().getId("RP"));
+        assert (parser.getErrorState() >= 0);
+        // Tokens after a rejection are ignored
+        assert (parser.feed(input[0]) == LRParser.REJECTED);
+        // A variable or an unknown id is not a token
+        parser.reset();
+        assert (parser.feed(grammar.getSymbols().getId("e")) == LRParser.REJECTED);
+        parser.reset();
+        assert (parser.feed(-1) == LRParser.REJECTED);
+    }
+
+    @Test
+    public void testLRParserReset() {
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        LRParser parser = new LRParser(createTables(grammar));
+        int[] shifts = {0};
+        parser.setShiftAction(token -> shifts[0]++);
+
+        // Deep nesting grows the stack, and the parser is reused after reset
+        int depth = 100;
+        String[] names = new String[2 * depth + 1];
+        for (int i = 0; i < depth; i++) {
+            names[i] = "LP";
+            names[depth + 1 + i] = "RP";
+        }
+        names[depth] = "ID";
+        int[] input = tokens(grammar, names);
+        for (int round = 0; round < 3; round++) {
+            parser.reset();
+            assert (parser.getDepth() == 1);
+            int[] next = {0};
+            boolean accepted = parser.parse(() -> input[next[0]++]);
+            assert (accepted);
+        }
+        assert (shifts[0] == 3 * names.length);
+    }
+}
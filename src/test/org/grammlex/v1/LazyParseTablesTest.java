@@ -0,0 +1,98 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class LazyParseTablesTest {
+    private static final String EXPR_GRAMMAR =
+            "e: e PLUS t | t;\n" +
+            "t: t STAR f | f;\n" +
+            "f: LP e RP | ID;\n";
+
+    private static int[] tokens(Grammar grammar, String... names) {
+        int[] tokens = new int[names.length + 1];
+        for (int i = 0; i < names.length; i++) {
+            tokens[i] = grammar.getSymbols().getId(names[i]);
+        }
+        tokens[names.length] = grammar.getSymbols().getEndSymbol();
+        return tokens;
+    }
+
+    private static List<Integer> parse(ParseTables tables, int[] input) {
+        LRParser parser = new LRParser(tables);
+        List<Integer> reduces = new ArrayList<>();
+        parser.setReduceAction(reduces::add);
+        int[] next = {0};
+        if (!parser.parse(() -> input[next[0]++])) {
+            return null;
+        }
+        return reduces;
+    }
+
+    @Test
+    public void testLazyParseTables() {
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        LazyParseTables tables = new LazyParseTables(grammar);
+        assert (tables.getStateCount() == 1);
+        assert (tables.getBuiltStateCount() == 0);
+
+        // Only the states of the input are built
+        int[] input = tokens(grammar, "ID", "PLUS", "ID");
+        LR1Builder builder = new LR1Builder(grammar);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        ParseTables eagerTables = builder.createParseTables();
+        assert (parse(tables, input).equals(parse(eagerTables, input)));
+        assert (tables.getBuiltStateCount() < eagerTables.getStateCount());
+        assert (tables.getBuiltStateCount() <= tables.getStateCount());
+
+        // The parenthesized states are built when an input needs them
+        int built = tables.getBuiltStateCount();
+        input = tokens(grammar, "LP", "ID", "STAR", "ID", "RP", "PLUS", "ID");
+        assert (parse(tables, input).equals(parse(eagerTables, input)));
+        assert (tables.getBuiltStateCount() > built);
+        assert (tables.getStateCount() <= eagerTables.getStateCount());
+
+        // Rejections match too
+        input = tokens(grammar, "ID", "PLUS", "RP");
+        assert (parse(tables, input) == null);
+        assert (parse(eagerTables, input) == null);
+    }
+
+    @Test
+    public void testLazyParseTablesThreads() throws Exception {
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        LazyParseTables tables = new LazyParseTables(grammar);
+        int[] input = tokens(grammar, "LP", "ID", "PLUS", "LP", "ID", "RP", "RP", "STAR", "ID");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Integer>>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> parse(tables, input)));
+            }
+            List<Integer> expected = results.get(0).get();
+            assert (expected != null);
+            for (Future<List<Integer>> result : results) {
+                assert (expected.equals(result.get()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // Each state was built once
+        assert (tables.getBuiltStateCount() <= tables.getStateCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLazyParseTablesConflict() {
+        Grammar grammar = new Grammar(
+                "A: a A a;\n" +
+                "A: epsilon;\n");
+        LazyParseTables tables = new LazyParseTables(grammar);
+        parse(tables, tokens(grammar, "a", "a"));
+    }
+}
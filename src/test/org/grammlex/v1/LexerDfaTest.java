@@ -0,0 +1,97 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+public class LexerDfaTest {
+    static final String JSON_GRAMMAR =
+            "value: STRING | NUMBER | TRUE | obj | arr;\n" +
+            "obj: LB members RB | LB RB;\n" +
+            "members: members COMMA pair | pair;\n" +
+            "pair: STRING COLON value;\n" +
+            "arr: LS values RS | LS RS;\n" +
+            "values: values COMMA value | value;\n" +
+            "TRUE: 'true';\n" +
+            "STRING: '\"' (~[\"\\\\] | '\\\\' .)* '\"';\n" +
+            "NUMBER: '-'? DIGIT+ ('.' DIGIT+)?;\n" +
+            "fragment DIGIT: [0-9];\n" +
+            "LB: '{';\n" +
+            "RB: '}';\n" +
+            "LS: '[';\n" +
+            "RS: ']';\n" +
+            "COMMA: ',';\n" +
+            "COLON: ':';\n" +
+            "WS: [ \\t\\r\\n]+ -> skip;\n";
+
+    /* Run the DFA over the whole text and return the token it accepts. */
+    private static int accept(LexerDfa dfa, String text) {
+        int state = dfa.getStartState();
+        for (char c : text.toCharArray()) {
+            state = dfa.getNextState(state, dfa.getClass(c));
+            if (state == LexerDfa.NO_STATE) {
+                return LexerDfa.NO_TOKEN;
+            }
+        }
+        return dfa.getAccept(state);
+    }
+
+    @Test
+    public void testLexerDfa() {
+        Grammar grammar = new Grammar(JSON_GRAMMAR);
+        LexerDfa dfa = new LexerDfa(grammar);
+        SymbolTable symbols = grammar.getSymbols();
+        assert (accept(dfa, "true") == symbols.getId("TRUE"));
+        assert (accept(dfa, "tru") == LexerDfa.NO_TOKEN);
+        assert (accept(dfa, "-12.5") == symbols.getId("NUMBER"));
+        assert (accept(dfa, "\"a\\\"b\"") == symbols.getId("STRING"));
+        assert (accept(dfa, " \n") == LexerDfa.SKIP);
+        assert (accept(dfa, "{") == symbols.getId("LB"));
+        assert (accept(dfa, "x") == LexerDfa.NO_TOKEN);
+    }
+
+    @Test
+    public void testLexerDfaClasses() {
+        LexerDfa dfa = new LexerDfa(new Grammar(JSON_GRAMMAR));
+        // All digits act alike, and so do all chars no rule names
+        assert (dfa.getClass('0') == dfa.getClass('9'));
+        assert (dfa.getClass('x') == dfa.getClass('€'));
+        assert (dfa.getClass('0') != dfa.getClass('x'));
+        assert (dfa.getClassCount() < 30);
+    }
+
+    @Test
+    public void testLexerDfaMinimized() {
+        // Both alternatives end the same way and share their states
+        Grammar grammar = new Grammar("s: A;\nA: 'ab' | 'cb' | 'db';\n");
+        LexerDfa dfa = new LexerDfa(grammar);
+        assert (dfa.getStateCount() == 3);
+        assert (dfa.getClassCount() == 5);
+        StringBuilder out = new StringBuilder();
+        dfa.outputSummary(out);
+        assert (out.toString().contains("DFA states: 3"));
+    }
+
+    @Test
+    public void testLexerDfaPriority() {
+        // The keyword comes first, so it wins over the identifier
+        Grammar grammar = new Grammar("s: IF | ID;\nIF: 'if';\nID: [a-z]+;\n");
+        LexerDfa dfa = new LexerDfa(grammar);
+        assert (accept(dfa, "if") == grammar.getSymbols().getId("IF"));
+        assert (accept(dfa, "iff") == grammar.getSymbols().getId("ID"));
+    }
+
+    @Test
+    public void testLexerDfaErrors() {
+        try {
+            new LexerDfa(new Grammar("s: A;\nA: 'a'*;\n"));
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            assert (e.getMessage().contains("empty string"));
+        }
+        try {
+            new LexerDfa(new Grammar("s: A;\n"));
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            assert (e.getMessage().contains("no lexer rules"));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class NfaTest {
+
+    /* Return whether the rule matches the whole text, by simulating the Nfa. */
+    private static boolean matches(String rule, String text) {
+        Map<String, String> definitions = new HashMap<>();
+        definitions.put("R", rule);
+        return matches(definitions, text);
+    }
+
+    private static boolean matches(Map<String, String> definitions, String text) {
+        Nfa nfa = new Nfa();
+        int[] fragment = nfa.addRule("R", definitions);
+        BitSet current = new BitSet();
+        current.set(fragment[0]);
+        current = LexerDfa.closure(nfa, current);
+        for (char c : text.toCharArray()) {
+            BitSet next = new BitSet();
+            for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1)) {
+                for (int[] edge : nfa.getEdges(s)) {
+                    if (edge[0] != Nfa.EPSILON && edge[0] <= c && c <= edge[1]) {
+                        next.set(edge[2]);
+                    }
+                }
+            }
+            current = LexerDfa.closure(nfa, next);
+        }
+        return current.get(fragment[1]);
+    }
+
+    @Test
+    public void testNfaLiterals() {
+        assert (matches("'if'", "if"));
+        assert (!matches("'if'", "i"));
+        assert (matches("'a' 'b'", "ab"));
+        assert (matches("'\\n'", "\n"));
+        assert (matches("'\\''", "'"));
+        assert (matches("'\\u0041'", "A"));
+        assert (matches("'a'..'c'", "b"));
+        assert (!matches("'a'..'c'", "d"));
+    }
+
+    @Test
+    public void testNfaSets() {
+        assert (matches("[a-z_]+", "ab_c"));
+        assert (!matches("[a-z_]+", ""));
+        assert (matches("[\\]\\-]", "]"));
+        assert (matches("[\\]\\-]", "-"));
+        assert (matches("~[\"\\\\]*", "abc"));
+        assert (!matches("~[\"\\\\]*", "a\"c"));
+        assert (matches("~'x'", "y"));
+        assert (!matches("~'x'", "x"));
+        assert (matches(".", "￿"));
+    }
+
+    @Test
+    public void testNfaOperators() {
+        assert (matches("'a' ('b' | 'c')* 'd'?", "abcbc"));
+        assert (matches("'a' ('b' | 'c')* 'd'?", "ad"));
+        assert (!matches("'a' ('b' | 'c')* 'd'?", "add"));
+        assert (matches("('x' |)", ""));
+        assert (matches("'a'+", "aaa"));
+    }
+
+    @Test
+    public void testNfaReferences() {
+        Map<String, String> definitions = new HashMap<>();
+        definitions.put("R", "DIGIT+ ('.' DIGIT+)?");
+        definitions.put("DIGIT", "[0-9]");
+        assert (matches(definitions, "3.14"));
+        assert (!matches(definitions, "3."));
+    }
+
+    private static void assertRejected(Map<String, String> definitions) {
+        try {
+            new Nfa().addRule("R", definitions);
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            assert (e.getMessage().startsWith("ERROR: "));
+        }
+    }
+
+    @Test
+    public void testNfaErrors() {
+        Map<String, String> definitions = new HashMap<>();
+        definitions.put("R", "'a' R?");
+        assertRejected(definitions);
+        definitions.put("R", "UNKNOWN");
+        assertRejected(definitions);
+        definitions.put("R", "'/*' .*? '*/'");
+        assertRejected(definitions);
+        definitions.put("R", "('a'");
+        assertRejected(definitions);
+        definitions.put("R", "~'ab'");
+        assertRejected(definitions);
+        definitions.put("R", "''");
+        assertRejected(definitions);
+    }
+
+    @Test
+    public void testNfaComplement() {
+        List<int[]> ranges = new ArrayList<>();
+        ranges.add(new int[]{'b', 'c'});
+        ranges.add(new int[]{0, 'a'});
+        List<int[]> result = Nfa.complement(ranges);
+        assert (result.size() == 1);
+        assert (result.get(0)[0] == 'd' && result.get(0)[1] == Nfa.MAX_CHAR);
+    }
+}
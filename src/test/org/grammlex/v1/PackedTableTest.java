@@ -0,0 +1,61 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PackedTableTest {
+    @Test
+    public void testPackedTable() {
+        // Columns 0 and 3 are equal, rows 1 and 2 are equal
+        List<int[]> rows = new ArrayList<>();
+        rows.add(new int[]{5, 0, 7, 5, 0});
+        rows.add(new int[]{0, 9, 0, 0, 0});
+        rows.add(new int[]{0, 9, 0, 0, 0});
+        rows.add(new int[]{0, 0, 0, 0, 0});
+        rows.add(new int[]{1, 0, 0, 1, 2});
+        PackedTable table = new PackedTable(rows, 5);
+        assert (table.getClassCount() == 4);
+        assert (table.getColumnClass(0) == table.getColumnClass(3));
+        assert (table.getDistinctRowCount() == 4);
+        for (int row = 0; row < rows.size(); row++) {
+            for (int column = 0; column < 5; column++) {
+                assert (table.get(row, column) == rows.get(row)[column]);
+            }
+        }
+        assert (table.getFillRatio() > 0 && table.getFillRatio() <= 1);
+        assert (table.getSizeInBytes() > 0);
+    }
+
+    @Test
+    public void testPackedTableSparse() {
+        Random random = new Random(7);
+        List<int[]> rows = new ArrayList<>();
+        for (int row = 0; row < 200; row++) {
+            int[] values = new int[60];
+            for (int column = 0; column < 60; column++) {
+                if (random.nextInt(10) == 0) {
+                    values[column] = 1 + random.nextInt(50);
+                }
+            }
+            rows.add(values);
+        }
+        PackedTable table = new PackedTable(rows, 60);
+        for (int row = 0; row < rows.size(); row++) {
+            for (int column = 0; column < 60; column++) {
+                assert (table.get(row, column) == rows.get(row)[column]);
+            }
+        }
+        // Overlaying the rows takes far less than a full int per cell
+        assert (table.getSizeInBytes() < table.getUnpackedSizeInBytes() / 2);
+    }
+
+    @Test
+    public void testPackedTableEmpty() {
+        PackedTable table = new PackedTable(new ArrayList<>(), 3);
+        assert (table.getVectorLength() == 0);
+        assert (table.getFillRatio() == 1.0);
+    }
+}
@@ -0,0 +1,70 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+public class ParseTablesTest {
+    @Test
+    public void testParseTables() {
+        Grammar grammar = new Grammar(
+                "e: e PLUS t | t;\n" +
+                "t: t STAR f | f;\n" +
+                "f: LP e RP | ID;\n");
+        LR1Builder builder = new LR1Builder(grammar, LR1Builder.MODE_LALR1);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        ParseTables tables = builder.createParseTables();
+        SymbolTable symbols = grammar.getSymbols();
+        assert (tables.getStateCount() == 12);
+        assert (tables.getSymbolCount() == symbols.size());
+
+        // Every cell is the same as in the unpacked tables
+        for (int state = 0; state < tables.getStateCount(); state++) {
+            for (int symbol = 0; symbol < symbols.size(); symbol++) {
+                if (symbols.isTerminal(symbol)) {
+                    Action action = builder.actionTable.get(state)[symbol];
+                    int packed = tables.getAction(state, symbol);
+                    if (action == null) {
+                        assert (packed == ParseTables.ERROR);
+                    } else {
+                        assert (packed == ParseTables.packAction(action));
+                    }
+                } else {
+                    assert (tables.getGoto(state, symbol) == builder.gotoTable.get(state)[symbol]);
+                }
+            }
+        }
+
+        // The rules and names of the symbols come with the tables
+        for (int rule = 0; rule < tables.getRuleCount(); rule++) {
+            int[] ruleSymbols = grammar.getRules().get(rule).getSymbols();
+            assert (tables.getRuleLength(rule) == ruleSymbols.length);
+            for (int i = 0; i < ruleSymbols.length; i++) {
+                assert (tables.getRuleSymbol(rule, i) == ruleSymbols[i]);
+            }
+        }
+        for (int symbol = 0; symbol < symbols.size(); symbol++) {
+            assert (tables.getSymbolName(symbol).equals(symbols.getName(symbol)));
+            assert (tables.isTerminal(symbol) == symbols.isTerminal(symbol));
+        }
+
+        int accept = tables.getAction(tables.getGoto(0, symbols.getId("e")), tables.getEndSymbol());
+        assert (ParseTables.kindOf(accept) == ParseTables.ACCEPT);
+        int shift = tables.getAction(0, symbols.getId("ID"));
+        assert (ParseTables.kindOf(shift) == ParseTables.SHIFT);
+
+        // e: e PLUS t is rule 1
+        assert (tables.getRuleVar(1) == symbols.getId("e"));
+        assert (tables.getRuleLength(1) == 3);
+        assert (tables.getRuleCount() == grammar.getRules().size());
+        assert (tables.getSizeInBytes() > 0);
+        assert (tables.outputSummary(new StringBuilder()).toString().contains("Goto table: 12 states"));
+    }
+
+    @Test
+    public void testParseTablesPack() {
+        int action = ParseTables.pack(ParseTables.REDUCE, 1000);
+        assert (ParseTables.kindOf(action) == ParseTables.REDUCE);
+        assert (ParseTables.operandOf(action) == 1000);
+        assert (ParseTables.pack(ParseTables.SHIFT, 0) != ParseTables.ERROR);
+    }
+}
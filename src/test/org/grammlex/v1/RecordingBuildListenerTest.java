@@ -0,0 +1,70 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+public class RecordingBuildListenerTest {
+    private static final String EXPR_GRAMMAR =
+            "e: e PLUS t | t;\n" +
+            "t: t STAR f | f;\n" +
+            "f: LP e RP | ID;\n";
+
+    @Test
+    public void testRecordingBuildListener() {
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        LR1Builder builder = new LR1Builder(grammar);
+        RecordingBuildListener recorder = new RecordingBuildListener();
+        boolean created = builder.createStates(recorder);
+        assert (created);
+
+        // Each state is processed once, in order
+        int stateCount = builder.getStates().size();
+        assert (recorder.getProcessedStates().size() == stateCount);
+        for (int i = 0; i < stateCount; i++) {
+            assert (recorder.getProcessedStates().get(i) == i);
+            LR1State state = builder.getStates().get(i);
+            assert (recorder.getClosureSize(i) == state.getItems().size());
+        }
+        assert (recorder.getClosureSize(stateCount) == -1);
+
+        // The transitions are those of the states
+        int transitions = 0;
+        int newStates = 0;
+        for (LR1State state : builder.getStates()) {
+            transitions += state.getTransitionCount();
+        }
+        assert (recorder.getTransitionCount() == transitions);
+        for (int i = 0; i < recorder.getTransitionCount(); i++) {
+            LR1State state = builder.getStates().get(recorder.getTransitionFrom(i));
+            int target = state.getTransition(recorder.getTransitionSymbol(i));
+            assert (recorder.getTransitionTarget(i) == target);
+            assert (recorder.getTransitionKind(i) != BuildListener.TO_MERGED);
+            assert (recorder.getTransitionSplitFrom(i) == -1);
+            if (recorder.getTransitionKind(i) == BuildListener.TO_NEW) {
+                newStates++;
+            }
+        }
+        assert (newStates == stateCount - 1);
+    }
+
+    @Test
+    public void testRecordingBuildListenerPager() {
+        // Merging like LALR(1) would conflict, so one state is split
+        Grammar grammar = new Grammar(
+                "s: A e C | A f D | B f C | B e D;\n" +
+                "e: E;\n" +
+                "f: E;\n");
+        LR1Builder builder = new LR1Builder(grammar, LR1Builder.MODE_PAGER);
+        RecordingBuildListener recorder = new RecordingBuildListener();
+        boolean created = builder.createStates(recorder);
+        assert (created);
+        int splits = 0;
+        for (int i = 0; i < recorder.getTransitionCount(); i++) {
+            if (recorder.getTransitionSplitFrom(i) != -1) {
+                assert (recorder.getTransitionKind(i) == BuildListener.TO_NEW);
+                splits++;
+            }
+        }
+        assert (splits == builder.getSplitStates());
+        assert (splits == 1);
+    }
+}
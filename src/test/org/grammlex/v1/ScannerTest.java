@@ -0,0 +1,71 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScannerTest {
+
+    private static List<String> scan(Scanner scanner, SymbolTable symbols) {
+        List<String> tokens = new ArrayList<>();
+        while (true) {
+            int token = scanner.nextToken();
+            if (token == symbols.getEndSymbol()) {
+                return tokens;
+            }
+            tokens.add(token == Scanner.ERROR ? "?" : symbols.getName(token) + "=" + scanner.getTokenText());
+        }
+    }
+
+    @Test
+    public void testScanner() {
+        Grammar grammar = new Grammar(LexerDfaTest.JSON_GRAMMAR);
+        Scanner scanner = new Scanner(new LexerDfa(grammar));
+        scanner.reset("{\"a\": [1, -2.5, true]}");
+        assert (scan(scanner, grammar.getSymbols()).toString().equals(
+                "[LB={, STRING=\"a\", COLON=:, LS=[, NUMBER=1, COMMA=,, NUMBER=-2.5, COMMA=,, TRUE=true, RS=], RB=}]"));
+        assert (scanner.getTokenStart() == 22 && scanner.getTokenEnd() == 22);
+        // The end of input keeps giving the end symbol
+        assert (scanner.nextToken() == grammar.getSymbols().getEndSymbol());
+    }
+
+    @Test
+    public void testScannerError() {
+        Grammar grammar = new Grammar(LexerDfaTest.JSON_GRAMMAR);
+        Scanner scanner = new Scanner(new LexerDfa(grammar));
+        // The longest match backs up to the last accepting state
+        scanner.reset("1. x");
+        assert (scan(scanner, grammar.getSymbols()).toString().equals("[NUMBER=1, ?, ?]"));
+    }
+
+    @Test
+    public void testScannerByteBuffer() {
+        Grammar grammar = new Grammar(LexerDfaTest.JSON_GRAMMAR);
+        Scanner scanner = new Scanner(new LexerDfa(grammar));
+        ByteBuffer bytes = ByteBuffer.wrap("xx[true]".getBytes(StandardCharsets.ISO_8859_1));
+        bytes.position(2);
+        scanner.reset(bytes);
+        assert (scan(scanner, grammar.getSymbols()).toString().equals("[LS=[, TRUE=true, RS=]]"));
+        assert (bytes.position() == 2);
+    }
+
+    @Test
+    public void testScannerParser() {
+        Grammar grammar = new Grammar(LexerDfaTest.JSON_GRAMMAR);
+        LR1Builder builder = new LR1Builder(grammar, LR1Builder.MODE_LALR1);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        LRParser parser = new LRParser(builder.createParseTables());
+        Scanner scanner = new Scanner(new LexerDfa(grammar));
+        scanner.reset("{\"a\": [1, {}, []], \"b\": true}");
+        boolean accepted = parser.parse(scanner);
+        assert (accepted);
+        scanner.reset("{\"a\" 1}");
+        parser.reset();
+        accepted = parser.parse(scanner);
+        assert (!accepted);
+    }
+}
@@ -0,0 +1,124 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class SourceGeneratorTest {
+
+    private static ParseTables createTables(String grammarText) {
+        LR1Builder builder = new LR1Builder(new Grammar(grammarText), LR1Builder.MODE_LR1);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        return builder.createParseTables();
+    }
+
+    /* Compile the generated source and return the class. */
+    private static Class<?> compile(Path dir, String className, StringBuilder source) throws Exception {
+        Path file = dir.resolve(className + ".java");
+        Files.write(file, source.toString().getBytes(StandardCharsets.UTF_8));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int result = compiler.run(null, null, errors, "-d", dir.toString(), file.toString());
+        assert (result == 0) : errors;
+        URLClassLoader loader = new URLClassLoader(new URL[]{dir.toUri().toURL()});
+        return loader.loadClass("gen." + className);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testSourceGenerator() throws Exception {
+        ParseTables tables = createTables(LexerDfaTest.JSON_GRAMMAR);
+        StringBuilder source = new SourceGenerator(tables, "gen", "JsonTables").generate(new StringBuilder());
+        assert (source.toString().contains("public static final int STRING = "));
+        assert (source.toString().contains("public static final int V_VALUE = "));
+        assert (source.toString().contains("public static final int EOF = "));
+
+        Path dir = Files.createTempDirectory("grammlex");
+        try {
+            Class<?> generated = compile(dir, "JsonTables", source);
+            Method action = generated.getMethod("action", int.class, int.class);
+            Method gotoState = generated.getMethod("gotoState", int.class, int.class);
+            Method ruleVar = generated.getMethod("ruleVar", int.class);
+            Method ruleLength = generated.getMethod("ruleLength", int.class);
+            Method symbolName = generated.getMethod("symbolName", int.class);
+            for (int state = 0; state < tables.getStateCount(); state++) {
+                for (int symbol = 0; symbol < tables.getSymbolCount(); symbol++) {
+                    assert ((int) action.invoke(null, state, symbol) == tables.getAction(state, symbol));
+                    assert ((int) gotoState.invoke(null, state, symbol) == tables.getGoto(state, symbol));
+                }
+            }
+            for (int rule = 0; rule < tables.getRuleCount(); rule++) {
+                assert ((int) ruleVar.invoke(null, rule) == tables.getRuleVar(rule));
+                assert ((int) ruleLength.invoke(null, rule) == tables.getRuleLength(rule));
+            }
+            for (int symbol = 0; symbol < tables.getSymbolCount(); symbol++) {
+                assert (symbolName.invoke(null, symbol).equals(tables.getSymbolName(symbol)));
+            }
+            int string = generated.getField("STRING").getInt(null);
+            assert (tables.getSymbolName(string).equals("STRING"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testSourceGeneratorFieldNames() throws Exception {
+        // Terminals named like the fields of the class, or like a suffixed name
+        ParseTables tables = createTables("s: ERROR SHIFT | ACCEPT | ACTION_ROWS | EOF | ERROR_1;");
+        StringBuilder source = new SourceGenerator(tables, "gen", "FieldTables").generate(new StringBuilder());
+        Path dir = Files.createTempDirectory("grammlex");
+        try {
+            Class<?> generated = compile(dir, "FieldTables", source);
+            assert (generated.getField("ERROR").getInt(null) == ParseTables.ERROR);
+            assert (generated.getField("ACCEPT").getInt(null) == ParseTables.ACCEPT);
+            for (int symbol = 0; symbol < tables.getSymbolCount(); symbol++) {
+                String name = tables.getSymbolName(symbol);
+                if (name.equals("ERROR") || name.equals("SHIFT") || name.equals("ACCEPT")) {
+                    assert (generated.getField(name + "_" + symbol).getInt(null) == symbol);
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testSourceGeneratorNames() {
+        assert (SourceGenerator.constantName("$", true).equals("EOF"));
+        assert (SourceGenerator.constantName("ID", true).equals("ID"));
+        assert (SourceGenerator.constantName("document_repeat", false).equals("V_DOCUMENT_REPEAT"));
+        assert (SourceGenerator.constantName("S'", false).equals("V_S_"));
+        assert (SourceGenerator.constantName("1X", true).equals("_1X"));
+
+        StringBuilder literal = new StringBuilder();
+        SourceGenerator.appendLiteral(literal, "a\"\\\né");
+        assert (literal.toString().equals("\"a\\\"\\\\\\012\\u00e9\""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSourceGeneratorBadClass() {
+        new SourceGenerator(createTables("s: A;"), "gen", "Bad-Name");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSourceGeneratorBadPackage() {
+        new SourceGenerator(createTables("s: A;"), "gen..x", "Tables");
+    }
+}
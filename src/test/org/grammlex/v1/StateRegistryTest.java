@@ -0,0 +1,78 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+public class StateRegistryTest {
+    @Test
+    public void testStateRegistry() {
+        Grammar grammar = new Grammar(
+                "S: document*;\n" +
+                "document: BOM? HEADER value+ TRAILER;\n" +
+                "value: map;\n" +
+                "map: ID COLON STRING NL;\n");
+        Rule firstRule = grammar.getRules().get(0);
+        BitSet lookahead = new BitSet();
+        lookahead.set(grammar.getSymbols().getEndSymbol());
+        Set<LR1Item> kernel = new HashSet<>();
+        kernel.add(new LR1Item(firstRule, 0, lookahead));
+
+        StateRegistry registry = new StateRegistry();
+        assert (registry.find(kernel) == null);
+        LR1State state = new LR1State(grammar, kernel);
+        int id = registry.add(state);
+        assert (id == 0);
+        assert (state.getId() == 0);
+        assert (registry.size() == 1);
+        assert (registry.get(0) == state);
+
+        // An equal kernel built from new items finds the same state
+        Set<LR1Item> sameKernel = new HashSet<>();
+        sameKernel.add(new LR1Item(firstRule, 0, (BitSet) lookahead.clone()));
+        assert (registry.find(sameKernel) == state);
+
+        Set<LR1Item> otherKernel = new HashSet<>();
+        otherKernel.add(new LR1Item(firstRule, 1, (BitSet) lookahead.clone()));
+        assert (registry.find(otherKernel) == null);
+    }
+
+    @Test
+    public void testStateRegistryRemoveUnreachable() {
+        Grammar grammar = new Grammar(
+                "S: document*;\n" +
+                "document: BOM? HEADER value+ TRAILER;\n" +
+                "value: map;\n" +
+                "map: ID COLON STRING NL;\n");
+        LR1Builder builder = new LR1Builder(grammar);
+        builder.createStatesForCLR1(BuildListener.NONE); //NOSONAR
+        StateRegistry registry = new StateRegistry();
+        for (LR1State state : builder.getStates()) {
+            registry.add(state);
+        }
+        int removed = registry.removeUnreachable();
+        assert (removed == 0);
+
+        // Drop the transitions into state 1, which is only reached from 0 and 4
+        SymbolTable symbols = grammar.getSymbols();
+        registry.get(0).removeTransition(symbols.getId("BOM"));
+        registry.get(4).removeTransition(symbols.getId("BOM"));
+        removed = registry.removeUnreachable();
+        assert (removed == 1);
+        assert (registry.size() == 16);
+        for (int id = 0; id < registry.size(); id++) {
+            assert (registry.get(id).getId() == id);
+            assert (registry.find(registry.get(id).getKernel()) == registry.get(id));
+        }
+        // State 2 moved down to 1
+        assert (registry.get(0).getTransition(symbols.getId("BOM_opt")) == 1);
+
+        LR1State first = registry.get(0);
+        LR1State replacement = new LR1State(grammar, first.getKernel());
+        registry.replace(0, replacement);
+        assert (replacement.getId() == 0);
+        assert (registry.find(first.getKernel()) == replacement);
+    }
+}
@@ -0,0 +1,92 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+
+public class StreamParserTest {
+    private static final String STREAM_GRAMMAR =
+            "stream: stream document | epsilon;\n" +
+            "document: BOM? HEADER value+ TRAILER;\n" +
+            "value: map;\n" +
+            "map: ID COLON STRING NL;\n";
+
+    private static LRParser createParser(Grammar grammar) {
+        LR1Builder builder = new LR1Builder(grammar);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        return new LRParser(builder.createParseTables());
+    }
+
+    private static int[] tokens(Grammar grammar, String... names) {
+        int[] tokens = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            tokens[i] = grammar.getSymbols().getId(names[i]);
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testStreamParser() throws InterruptedException, ExecutionException {
+        Grammar grammar = new Grammar(STREAM_GRAMMAR);
+        LRParser parser = createParser(grammar);
+        int documentRule = grammar.getRulesByVar(grammar.getSymbols().getId("document")).get(0).getIndex();
+        List<Integer> documents = new ArrayList<>();
+        parser.setReduceAction(rule -> {
+            if (rule == documentRule) {
+                documents.add(rule);
+            }
+        });
+        StreamParser streamParser = new StreamParser(parser, 2);
+
+        // Deliver on the submitting thread so the test can follow each chunk
+        SubmissionPublisher<int[]> publisher = new SubmissionPublisher<>(Runnable::run, 4);
+        publisher.subscribe(streamParser);
+        assert (publisher.estimateMinimumDemand() == 2);
+        int maxDepth = 0;
+        for (int document = 0; document < 50; document++) {
+            // One document split across chunks at arbitrary places
+            publisher.submit(tokens(grammar, "HEADER", "ID"));
+            publisher.submit(tokens(grammar, "COLON", "STRING", "NL", "ID", "COLON"));
+            publisher.submit(tokens(grammar, "STRING", "NL", "TRAILER"));
+            maxDepth = Math.max(maxDepth, parser.getDepth());
+            // A document is reduced once the token after it arrives
+            assert (documents.size() == document);
+            assert (publisher.estimateMinimumDemand() == 2);
+        }
+        publisher.close();
+        assert (streamParser.getResult().get());
+        assert (documents.size() == 50);
+        // The stack does not grow with the number of documents
+        assert (maxDepth < 10);
+    }
+
+    @Test
+    public void testStreamParserReject() throws InterruptedException, ExecutionException {
+        Grammar grammar = new Grammar(STREAM_GRAMMAR);
+        StreamParser streamParser = new StreamParser(createParser(grammar));
+        int status = streamParser.push(tokens(grammar, "HEADER", "TRAILER"), 0, 2);
+        assert (status == LRParser.REJECTED);
+        assert (!streamParser.getResult().get());
+        assert (streamParser.end() == LRParser.REJECTED);
+    }
+
+    @Test
+    public void testStreamParserError() {
+        Grammar grammar = new Grammar(STREAM_GRAMMAR);
+        StreamParser streamParser = new StreamParser(createParser(grammar));
+        SubmissionPublisher<int[]> publisher = new SubmissionPublisher<>(Runnable::run, 4);
+        publisher.subscribe(streamParser);
+        publisher.closeExceptionally(new IllegalStateException("closed"));
+        assert (streamParser.getResult().isCompletedExceptionally());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStreamParserBadPrefetch() {
+        Grammar grammar = new Grammar(STREAM_GRAMMAR);
+        new StreamParser(createParser(grammar), 0); //NOSONAR
+    }
+}
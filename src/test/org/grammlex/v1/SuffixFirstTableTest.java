@@ -0,0 +1,42 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+public class SuffixFirstTableTest {
+    @Test
+    public void testSuffixFirstTable() {
+        Grammar grammar = new Grammar(
+                "s: a b END;\n" +
+                "a: epsilon | A;\n" +
+                "b: epsilon | B;\n");
+        SuffixFirstTable table = grammar.getSuffixFirstTable();
+        SymbolTable symbols = grammar.getSymbols();
+        Rule rule = grammar.getRules().get(1);
+        assert (rule.getVar().equals("s"));
+
+        assert (symbols.getNames(table.getFirst(rule, 0)).equals(Arrays.asList("A", "B", "END")));
+        assert (symbols.getNames(table.getFirst(rule, 1)).equals(Arrays.asList("B", "END")));
+        assert (symbols.getNames(table.getFirst(rule, 2)).equals(Collections.singletonList("END")));
+        assert (table.getFirst(rule, 3).isEmpty());
+        assert (!table.isNullable(rule, 0));
+        assert (!table.isNullable(rule, 2));
+        assert (table.isNullable(rule, 3));
+
+        // The epsilon rule of a has an empty suffix at its start
+        Rule aRule = grammar.getRulesByVar(symbols.getId("a")).get(0);
+        assert (table.isNullable(aRule, 0));
+
+        // addFirst adds to the set and the table is not changed by it
+        BitSet first = new BitSet();
+        first.set(symbols.getEndSymbol());
+        boolean nullable = table.addFirst(rule, 1, first);
+        assert (!nullable);
+        assert (symbols.getNames(first).equals(Arrays.asList("$", "B", "END")));
+        first.clear();
+        assert (table.getFirst(rule, 1).cardinality() == 2);
+    }
+}
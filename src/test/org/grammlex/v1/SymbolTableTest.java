@@ -0,0 +1,40 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class SymbolTableTest {
+    @Test
+    public void testSymbolTable() {
+        SymbolTable symbols = new SymbolTable(Arrays.asList("ID", "COMMA"),
+                Arrays.asList("list", "item"));
+        assert (symbols.size() == 5);
+        // Ids follow the order of the names
+        assert (symbols.getName(0).equals("$"));
+        assert (symbols.getId("COMMA") < symbols.getId("ID"));
+        assert (symbols.getId("item") < symbols.getId("list"));
+        assert (symbols.getEndSymbol() == symbols.getId("$"));
+        assert (symbols.isTerminal(symbols.getId("ID")));
+        assert (symbols.isTerminal(symbols.getEndSymbol()));
+        assert (symbols.isVariable(symbols.getId("list")));
+        assert (symbols.getId("missing") == -1);
+
+        int[] ids = symbols.getIds(new String[]{"item", "COMMA", "list"});
+        assert (symbols.getName(ids[0]).equals("item"));
+        assert (symbols.getName(ids[2]).equals("list"));
+        assert (symbols.getIds(new String[]{"epsilon"}).length == 0);
+
+        BitSet set = new BitSet();
+        set.set(symbols.getId("ID"));
+        set.set(symbols.getEndSymbol());
+        assert (symbols.getNames(set).equals(Arrays.asList("$", "ID")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSymbolTableUnknownSymbol() {
+        SymbolTable symbols = new SymbolTable(Arrays.asList("ID"), Arrays.asList("list"));
+        symbols.getIds(new String[]{"list", "NUM"});
+    }
+}
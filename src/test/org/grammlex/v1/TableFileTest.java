@@ -0,0 +1,114 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TableFileTest {
+    private static final String EXPR_GRAMMAR =
+            "e: e PLUS t | t;\n" +
+            "t: t STAR f | f;\n" +
+            "f: LP e RP | ID;\n";
+
+    private static ParseTables createTables(Grammar grammar) {
+        LR1Builder builder = new LR1Builder(grammar, LR1Builder.MODE_LR1);
+        boolean created = builder.createStates(new StringBuilder());
+        assert (created);
+        return builder.createParseTables();
+    }
+
+    private static void assertSameTables(ParseTables expected, ParseTables actual) {
+        assert (actual.getStateCount() == expected.getStateCount());
+        assert (actual.getSymbolCount() == expected.getSymbolCount());
+        assert (actual.getEndSymbol() == expected.getEndSymbol());
+        assert (actual.getRuleCount() == expected.getRuleCount());
+        assert (actual.getSizeInBytes() == expected.getSizeInBytes());
+        for (int state = 0; state < expected.getStateCount(); state++) {
+            for (int symbol = 0; symbol < expected.getSymbolCount(); symbol++) {
+                assert (actual.getAction(state, symbol) == expected.getAction(state, symbol));
+                assert (actual.getGoto(state, symbol) == expected.getGoto(state, symbol));
+            }
+        }
+        for (int symbol = 0; symbol < expected.getSymbolCount(); symbol++) {
+            assert (actual.getSymbolName(symbol).equals(expected.getSymbolName(symbol)));
+            assert (actual.isTerminal(symbol) == expected.isTerminal(symbol));
+        }
+        for (int rule = 0; rule < expected.getRuleCount(); rule++) {
+            assert (actual.getRuleVar(rule) == expected.getRuleVar(rule));
+            assert (actual.getRuleLength(rule) == expected.getRuleLength(rule));
+            for (int i = 0; i < expected.getRuleLength(rule); i++) {
+                assert (actual.getRuleSymbol(rule, i) == expected.getRuleSymbol(rule, i));
+            }
+        }
+    }
+
+    @Test
+    public void testTableFile() throws IOException {
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        ParseTables tables = createTables(grammar);
+        Path path = Files.createTempFile("grammlex", ".tables");
+        try {
+            TableFile.save(tables, path);
+            ParseTables loaded = TableFile.load(path);
+            assertSameTables(tables, loaded);
+
+            // The loaded tables parse
+            LRParser parser = new LRParser(loaded);
+            SymbolTable symbols = grammar.getSymbols();
+            int[] input = {symbols.getId("ID"), symbols.getId("STAR"), symbols.getId("ID"),
+                    symbols.getEndSymbol()};
+            int[] next = {0};
+            boolean accepted = parser.parse(() -> input[next[0]++]);
+            assert (accepted);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testTableFileBuffer() {
+        ParseTables tables = createTables(new Grammar(EXPR_GRAMMAR));
+        byte[] bytes = TableFile.toBytes(tables);
+        assert (bytes.length % 4 == 0);
+        // The tables can start anywhere in a buffer
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 3);
+        buffer.position(3);
+        buffer.put(bytes);
+        buffer.position(3);
+        assertSameTables(tables, TableFile.fromBuffer(buffer));
+    }
+
+    private static void assertRejected(byte[] bytes, String message) {
+        try {
+            TableFile.fromBuffer(ByteBuffer.wrap(bytes));
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            assert (e.getMessage().startsWith("ERROR: " + message));
+        }
+    }
+
+    @Test
+    public void testTableFileErrors() {
+        byte[] bytes = TableFile.toBytes(createTables(new Grammar(EXPR_GRAMMAR)));
+
+        byte[] badMagic = bytes.clone();
+        badMagic[0] = 'X';
+        assertRejected(badMagic, "Not a table file");
+        assertRejected(new byte[4], "Not a table file");
+
+        byte[] badVersion = bytes.clone();
+        badVersion[7] = (byte) (TableFile.VERSION + 1);
+        assertRejected(badVersion, "Unsupported table file version");
+
+        byte[] corrupt = bytes.clone();
+        corrupt[bytes.length - 1] ^= 1;
+        assertRejected(corrupt, "Table file checksum mismatch");
+
+        byte[] truncated = new byte[bytes.length - 4];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertRejected(truncated, "Truncated table file");
+    }
+}
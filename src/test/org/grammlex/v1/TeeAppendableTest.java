@@ -0,0 +1,29 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+public class TeeAppendableTest {
+    @Test
+    public void testTeeAppendable() throws IOException {
+        StringWriter target = new StringWriter();
+        TeeAppendable tee = new TeeAppendable(target, 8);
+        tee.append("abc").append('d').append("xefgx", 1, 4).append(null, 0, 1);
+        assert (target.toString().equals("abcdefgn"));
+        assert (tee.getCopy().toString().equals("abcdefgn"));
+
+        // The copy is dropped past the limit, but the target gets everything
+        tee.append('!');
+        assert (tee.getCopy() == null);
+        tee.append("more").append('.');
+        assert (target.toString().equals("abcdefgn!more."));
+        assert (tee.getCopy() == null);
+
+        tee = new TeeAppendable(target, 3);
+        tee.append(null);
+        assert (tee.getCopy() == null);
+        assert (target.toString().endsWith("null"));
+    }
+}
@@ -0,0 +1,74 @@
+package org.grammlex.v1;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TextBuildListenerTest {
+    private static final String EXPR_GRAMMAR =
+            "e: e PLUS t | t;\n" +
+            "t: t STAR f | f;\n" +
+            "f: LP e RP | ID;\n";
+
+    @Test
+    public void testTextBuildListener() {
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        StringBuilder out = new StringBuilder();
+        LR1Builder builder = new LR1Builder(grammar);
+        boolean created = builder.createStates(new TextBuildListener(grammar, out));
+        assert (created);
+        String trace = out.toString();
+        assert (trace.startsWith("\nCreating initial state from item: "));
+        assert (trace.contains("    state after closure:\n        item: "));
+        assert (trace.contains("Processing transitions for state 0\n"));
+        assert (trace.contains("Processing transitions for state 21\n"));
+        assert (trace.contains("   No new states. All terms are reduces.\n"));
+        assert (trace.contains("   Process transition from state 0 for term ID\n"));
+        assert (trace.contains("        New state before closure:\n            item: "));
+        assert (trace.contains(" to new state 1\n"));
+        assert (trace.contains(" to existing state "));
+        assert (!trace.contains("Merged state"));
+
+        // createStates(Appendable) writes the same trace
+        StringBuilder appendableOut = new StringBuilder();
+        boolean appendableCreated = new LR1Builder(grammar).createStates(appendableOut);
+        assert (appendableCreated);
+        assert (appendableOut.toString().equals(trace));
+    }
+
+    @Test
+    public void testTextBuildListenerPager() {
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        StringBuilder out = new StringBuilder();
+        LR1Builder builder = new LR1Builder(grammar, LR1Builder.MODE_PAGER);
+        boolean created = builder.createStates(out);
+        assert (created);
+        String trace = out.toString();
+        assert (trace.contains("        Merged state after closure:\n"));
+        assert (trace.contains(" to merged state "));
+        assert (trace.endsWith("Minimal LR(1): 12 states, " + builder.getMergedStates()
+                + " merged, 0 split, 0 unreachable removed, LALR(1) has 12 states\n"));
+    }
+
+    @Test
+    public void testTextBuildListenerStreaming() {
+        // The trace is written one state at a time
+        Grammar grammar = new Grammar(EXPR_GRAMMAR);
+        List<String> writes = new ArrayList<>();
+        StringWriter writer = new StringWriter() {
+            @Override
+            public StringWriter append(CharSequence csq) {
+                writes.add(csq.toString());
+                return super.append(csq);
+            }
+        };
+        LR1Builder builder = new LR1Builder(grammar);
+        boolean created = builder.createStates(writer);
+        assert (created);
+        assert (writes.size() == 1 + builder.getStates().size());
+        assert (writes.get(1).startsWith("Processing transitions for state 0\n"));
+        assert (writes.get(1).endsWith("\n\n"));
+    }
+}
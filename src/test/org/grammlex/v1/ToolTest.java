@@ -1,14 +1,38 @@
 package org.grammlex.v1;
 
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Test;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 
 public class ToolTest {
     private static final String TEST_FILE = "../../examples/mfield.g4";
     private static final String TEST_FILE_NON_LR1 = "../../examples/nonlr1.g4";
     private static final String MISSING_FILE = "../../examples/_missing.g4";
     private static final String RULE_1 = "1: S: document_repeat;";
+    private static Path cacheDir;
+
+    @BeforeClass
+    public static void setUpCache() throws IOException {
+        // Keep the tests out of the user's cache
+        cacheDir = Files.createTempDirectory("grammlex");
+        System.setProperty(BuildCache.DIR_PROPERTY, cacheDir.toString());
+    }
+
+    @AfterClass
+    public static void tearDownCache() throws IOException {
+        System.clearProperty(BuildCache.DIR_PROPERTY);
+        for (Path entry : new BuildCache(cacheDir, 0).getEntries()) {
+            Files.delete(entry);
+        }
+        Files.delete(cacheDir);
+    }
 
     @Test
     public void testToolMainOpenGrammar() throws IOException {
@@ -103,4 +127,245 @@ public class ToolTest {
                 new String[] {TEST_FILE_NON_LR1, "show", "actionTable"});
 
     }
+
+    @Test
+    public void testToolModeLALR1() throws IOException {
+        // LALR(1) merges the 57 canonical LR(1) states of json.g4 into 27
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out,
+                new String[] {"--mode=lalr", "../../examples/json.g4", "show", "states"});
+        assert(out.toString().contains("State #26"));
+        assert(!out.toString().contains("State #27"));
+        StringBuilder lr1 = new StringBuilder();
+        Tool.handleCommands(lr1,
+                new String[] {"../../examples/json.g4", "show", "states"});
+        assert(lr1.toString().contains("State #56"));
+    }
+
+    @Test
+    public void testToolParseTables() throws IOException {
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out, new String[] {TEST_FILE, "show", "parseTables"});
+        assert(out.toString().startsWith("Action table: 17 states"));
+        assert(out.toString().contains("fill ratio"));
+    }
+
+    @Test
+    public void testToolLexer() throws IOException {
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out, new String[] {"../../examples/json.g4", "show", "lexer"});
+        assert(out.toString().startsWith("Lexer rules: 15\n"));
+        assert(out.toString().contains("DFA states: "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToolNoLexer() throws IOException {
+        // The test grammar has no lexer rules
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out, new String[] {TEST_FILE, "show", "lexer"});
+    }
+
+    @Test
+    public void testToolSave() throws IOException {
+        Path path = Files.createTempFile("grammlex", ".tables");
+        try {
+            StringBuilder out = new StringBuilder();
+            Tool.handleCommands(out, new String[] {TEST_FILE, "save", path.toString()});
+            assert(out.toString().startsWith("Saved parse tables to "));
+            assert(TableFile.load(path).getStateCount() == 17);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testToolGenerate() throws IOException {
+        Path dir = Files.createTempDirectory("grammlex");
+        Path path = dir.resolve("MfieldTables.java");
+        try {
+            StringBuilder out = new StringBuilder();
+            Tool.handleCommands(out, new String[] {"--package=gen", TEST_FILE, "generate", path.toString()});
+            assert(out.toString().startsWith("Generated "));
+            String source = GrammarReader.readFile(path).toString();
+            assert(source.startsWith("package gen;"));
+            assert(source.contains("public final class MfieldTables {"));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToolGenerateMissingFile() throws IOException {
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out, new String[] {TEST_FILE, "generate", "Tables.txt"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToolSaveMissingFile() throws IOException {
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out, new String[] {TEST_FILE, "save"});
+    }
+
+    @Test
+    public void testToolThreads() throws IOException {
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out, new String[] {"--no-cache", TEST_FILE, "show", "states,actionTable"});
+        StringBuilder parallelOut = new StringBuilder();
+        Tool.handleCommands(parallelOut,
+                new String[] {"--no-cache", "--threads=4", TEST_FILE, "show", "states,actionTable"});
+        assert(out.toString().equals(parallelOut.toString()));
+    }
+
+    @Test
+    public void testToolCache() throws IOException {
+        Path dir = Files.createTempDirectory("grammlex");
+        String cacheOption = "--cache-dir=" + dir;
+        try {
+            StringBuilder out = new StringBuilder();
+            Tool.handleCommands(out, new String[] {cacheOption, TEST_FILE, "show", "rules,states"});
+            BuildCache cache = new BuildCache(dir, BuildCache.DEFAULT_MAX_BYTES);
+            assert(cache.getEntries().size() == 1);
+
+            // A hit gives the same output, and the cached tables can be saved
+            StringBuilder cachedOut = new StringBuilder();
+            Path tableFile = dir.resolve("tables.bin");
+            Tool.handleCommands(cachedOut,
+                    new String[] {cacheOption, TEST_FILE, "show", "rules,states", "save", tableFile.toString()});
+            assert(cachedOut.toString().startsWith(out.toString()));
+            assert(TableFile.load(tableFile).getStateCount() == 17);
+            Files.delete(tableFile);
+
+            // Another mode is another entry
+            Tool.handleCommands(new StringBuilder(),
+                    new String[] {cacheOption, "--mode=lalr", TEST_FILE, "show", "states"});
+            assert(cache.getEntries().size() == 2);
+
+            // The cached content is used as it is, without building the grammar
+            String key = BuildCache.key(Tool.VERSION, LR1Builder.MODE_LR1,
+                    GrammarReader.readFile(Paths.get(TEST_FILE)));
+            Map<String, String> texts = new HashMap<>();
+            texts.put(Tool.TYPE_GRAMMAR, "cached grammar\n");
+            cache.put(key, texts);
+            out.setLength(0);
+            Tool.handleCommands(out, new String[] {cacheOption, TEST_FILE, "show", "grammar"});
+            assert(out.toString().equals("cached grammar\n"));
+
+            // Without the cache the grammar is built
+            out.setLength(0);
+            Tool.handleCommands(out, new String[] {"--no-cache", cacheOption, TEST_FILE, "show", "grammar"});
+            assert(out.toString().startsWith("Extended Rules:"));
+        } finally {
+            for (Path entry : new BuildCache(dir, 0).getEntries()) {
+                Files.delete(entry);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testToolStats() throws IOException {
+        Path dir = Files.createTempDirectory("grammlex");
+        String cacheOption = "--cache-dir=" + dir;
+        try {
+            StringBuilder out = new StringBuilder();
+            Tool.handleCommands(out, new String[] {cacheOption, TEST_FILE, "show", "states"});
+
+            // Stats are made by a build even when its states are cached
+            out.setLength(0);
+            Tool.handleCommands(out, new String[] {cacheOption, TEST_FILE, "show", "stats"});
+            assert(out.toString().startsWith("Build stats for LR(1):\n"));
+            assert(out.toString().contains("\nStates: 17\n"));
+            BuildCache cache = new BuildCache(dir, BuildCache.DEFAULT_MAX_BYTES);
+            String key = BuildCache.key(Tool.VERSION, LR1Builder.MODE_LR1,
+                    GrammarReader.readFile(Paths.get(TEST_FILE)));
+            assert(cache.get(key).containsKey(Tool.TYPE_STATES));
+            assert(!cache.get(key).containsKey(Tool.TYPE_STATS));
+        } finally {
+            for (Path entry : new BuildCache(dir, 0).getEntries()) {
+                Files.delete(entry);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testToolOutputFile() throws IOException {
+        Path path = Files.createTempFile("grammlex", ".txt");
+        try {
+            StringBuilder out = new StringBuilder();
+            Tool.handleCommands(out, new String[] {"--no-cache", TEST_FILE, "show", "rules,states"});
+            StringBuilder fileOut = new StringBuilder();
+            Tool.handleCommands(fileOut,
+                    new String[] {"--no-cache", "--output=" + path, TEST_FILE, "show", "rules,states"});
+            assert(fileOut.length() == 0);
+            assert(GrammarReader.readFile(path).toString().equals(out.toString()));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testToolCacheRequested() throws IOException {
+        Path dir = Files.createTempDirectory("grammlex");
+        String cacheOption = "--cache-dir=" + dir;
+        try {
+            // Only the requested content is made and cached
+            StringBuilder out = new StringBuilder();
+            Tool.handleCommands(out, new String[] {cacheOption, TEST_FILE, "show", "states"});
+            BuildCache cache = new BuildCache(dir, BuildCache.DEFAULT_MAX_BYTES);
+            String key = BuildCache.key(Tool.VERSION, LR1Builder.MODE_LR1,
+                    GrammarReader.readFile(Paths.get(TEST_FILE)));
+            assert(cache.get(key).containsKey(Tool.TYPE_STATES));
+            assert(!cache.get(key).containsKey(Tool.TYPE_ACTION_TABLE));
+            assert(!cache.get(key).containsKey(Tool.TYPE_CREATE_STATES));
+
+            // The trace asked for after the states comes from a build of its own
+            StringBuilder traceOut = new StringBuilder();
+            Tool.handleCommands(traceOut, new String[] {"--no-cache", TEST_FILE, "show", "createStates"});
+            StringBuilder bothOut = new StringBuilder();
+            Tool.handleCommands(bothOut, new String[] {cacheOption, TEST_FILE, "show", "states,createStates"});
+            assert(bothOut.toString().equals(out.toString() + traceOut));
+
+            // A cache too small for a section streams it without keeping it
+            Map<String, StringBuilder> cachedContent = new HashMap<>();
+            Grammar grammar = new Grammar(GrammarReader.readFile(Paths.get(TEST_FILE)));
+            StringBuilder smallOut = new StringBuilder();
+            Tool.writeContent(grammar, new LR1Builder(grammar), cachedContent, Tool.TYPE_STATES, smallOut, 100);
+            assert(smallOut.toString().equals(out.toString()));
+            assert(cachedContent.isEmpty());
+        } finally {
+            for (Path entry : new BuildCache(dir, 0).getEntries()) {
+                Files.delete(entry);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testToolGLRTables() throws IOException {
+        // A grammar that is not LR(1) still has GLR tables
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out, new String[] {"--no-cache", TEST_FILE_NON_LR1, "show", "glrTables"});
+        assert(out.toString().startsWith("Action table: "));
+        assert(out.toString().endsWith("Conflicts: 2 cells in 2 states\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToolBadThreads() throws IOException {
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out, new String[] {"--threads=0", TEST_FILE});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToolBadOption() throws IOException {
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out, new String[] {"--foo", TEST_FILE});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToolModeMissingFile() throws IOException {
+        StringBuilder out = new StringBuilder();
+        Tool.handleCommands(out, new String[] {"--mode=slr"});
+    }
 }